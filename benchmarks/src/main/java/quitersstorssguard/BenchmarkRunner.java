@@ -0,0 +1,37 @@
+package quitersstorssguard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Entry point of the benchmark jar. Runs JMH with its usual command line, but writes the results as JSON to
+ * {@code jmh-result.json} unless {@code -rf}/{@code -rff} are given explicitly, so runs can be archived and compared.
+ */
+public class BenchmarkRunner {
+
+	private static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+
+	public static void main(String[] args) throws Exception {
+		List<String> arguments = new ArrayList<>(Arrays.asList(args));
+
+		if (!arguments.contains("-rf")) {
+			arguments.add("-rf");
+			arguments.add("json");
+		}
+
+		if (!arguments.contains("-rff")) {
+			arguments.add("-rff");
+			arguments.add(DEFAULT_RESULT_FILE);
+		}
+
+		org.openjdk.jmh.Main.main(arguments.toArray(String[]::new));
+	}
+
+
+	private BenchmarkRunner() {
+	}
+
+}
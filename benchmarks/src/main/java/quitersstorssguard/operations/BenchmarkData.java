@@ -0,0 +1,99 @@
+package quitersstorssguard.operations;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import quitersstorssguard.records.ArticleBatch;
+import quitersstorssguard.records.Store_QuiteRssFeed;
+
+
+/**
+ * Deterministic synthetic rows and throw-away RSSGuard databases shared by the benchmarks, so they run offline and
+ * without any real user database.
+ */
+final class BenchmarkData {
+
+	private static final String[] AUTHORS = { "", "John Doe", "Jane Roe", "Editorial team", "news@example.org" };
+
+	// Tables written by the migrator, as in an empty RSSGuard database (schema_version=10)
+	private static final String[] RSSGUARD_TABLES = {
+			"""
+			CREATE TABLE Categories (id INTEGER PRIMARY KEY, parent_id INTEGER NOT NULL, ordr INTEGER NOT NULL, title VARCHAR(100) NOT NULL,
+			  description TEXT, date_created BIGINT, icon BLOB, account_id INTEGER NOT NULL, custom_id TEXT)""",
+			"""
+			CREATE TABLE Feeds (id INTEGER PRIMARY KEY, ordr INTEGER NOT NULL, title TEXT NOT NULL, description TEXT, date_created BIGINT,
+			  icon BLOB, category INTEGER NOT NULL, source TEXT, update_type INTEGER NOT NULL, update_interval INTEGER NOT NULL DEFAULT 900,
+			  is_off INTEGER NOT NULL DEFAULT 0, is_quiet INTEGER NOT NULL DEFAULT 0, is_rtl INTEGER NOT NULL DEFAULT 0,
+			  add_any_datetime_articles INTEGER NOT NULL DEFAULT 0, datetime_to_avoid BIGINT NOT NULL DEFAULT 0,
+			  keep_article_customize INTEGER NOT NULL DEFAULT 0, keep_article_count INTEGER NOT NULL DEFAULT 0,
+			  keep_unread_articles INTEGER NOT NULL DEFAULT 0, keep_starred_articles INTEGER NOT NULL DEFAULT 0,
+			  recycle_articles INTEGER NOT NULL DEFAULT 0, open_articles INTEGER NOT NULL DEFAULT 0, account_id INTEGER NOT NULL,
+			  custom_id TEXT NOT NULL, custom_data TEXT)""",
+			"""
+			CREATE TABLE Messages (id INTEGER PRIMARY KEY, is_read INTEGER NOT NULL DEFAULT 0, is_important INTEGER NOT NULL DEFAULT 0,
+			  is_deleted INTEGER NOT NULL DEFAULT 0, is_pdeleted INTEGER NOT NULL DEFAULT 0, feed TEXT NOT NULL, title TEXT NOT NULL,
+			  url TEXT, author TEXT, date_created BIGINT NOT NULL, contents TEXT, enclosures TEXT, score REAL NOT NULL DEFAULT 0,
+			  account_id INTEGER NOT NULL, custom_id TEXT, custom_hash TEXT, labels TEXT NOT NULL DEFAULT '.')""" };
+
+
+	static ArticleBatch articles(int count, long seed) {
+		Random random = new Random(seed);
+		ArticleBatch batch = new ArticleBatch(count);
+
+		for (int i = 1; i <= count; i++) {
+			String link = "https://example.org/" + random.nextInt(500) + "/posts/" + i;
+			batch.add(AUTHORS[random.nextInt(AUTHORS.length)], "<p>" + "Lorem ipsum dolor sit amet. ".repeat(5 + random.nextInt(60)) + "</p>",
+					link, 1_600_000_000_000L + random.nextInt(1_000_000_000), 1 + random.nextInt(200), i, 0, random.nextInt(20) == 0 ? 1 : 0,
+					random.nextInt(2), "Article " + i, link);
+		}
+
+		return batch;
+	}
+
+
+	static List<Store_QuiteRssFeed> feeds(int count, long seed) {
+		Random random = new Random(seed);
+		List<Store_QuiteRssFeed> feeds = new ArrayList<>(count);
+
+		for (int i = 1; i <= count; i++) {
+			byte[] icon = new byte[random.nextInt(4096)];
+			random.nextBytes(icon);
+			feeds.add(new Store_QuiteRssFeed(i, 0, i, "Feed " + i, "Description of feed " + i, 1_600_000_000_000L, "https://example.org/" + i + "/rss.xml",
+					icon, 0, 0, 1));
+		}
+
+		return feeds;
+	}
+
+
+	static Path createRssGuardDatabase() throws IOException, SQLException {
+		Path file = Files.createTempFile("rssguard-benchmark-", ".db");
+
+		try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file);
+				Statement stmt = connection.createStatement()) {
+			for (String table : RSSGUARD_TABLES)
+				stmt.execute(table);
+		}
+
+		return file;
+	}
+
+
+	static void deleteDatabase(Path file) throws IOException {
+		Files.deleteIfExists(file);
+		Files.deleteIfExists(Path.of(file + "-journal"));
+	}
+
+
+	private BenchmarkData() {
+	}
+
+}
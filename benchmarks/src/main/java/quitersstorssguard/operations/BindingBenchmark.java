@@ -0,0 +1,85 @@
+package quitersstorssguard.operations;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import quitersstorssguard.records.ArticleBatch;
+import quitersstorssguard.records.Store_QuiteRssFeed;
+import quitersstorssguard.utils.Miscellaneous;
+
+
+/**
+ * Cost of binding one row to the RSSGuard insert statements, as done by {@code insertArticles} and {@code insertFeeds},
+ * without executing them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BindingBenchmark {
+
+	private static final int ROWS = 1024;
+
+	private Path database;
+	private Connection connection;
+	private PreparedStatement articleStatement;
+	private PreparedStatement feedStatement;
+	private ArticleBatch articles;
+	private List<Store_QuiteRssFeed> feeds;
+	private int row;
+
+
+	@Setup
+	public void setUp() throws Exception {
+		database = BenchmarkData.createRssGuardDatabase();
+		connection = DriverManager.getConnection("jdbc:sqlite:" + database);
+		articleStatement = connection.prepareStatement(Miscellaneous.readFileFromResources("resources/insert_rssguard_messages.sql"));
+		feedStatement = connection.prepareStatement(Miscellaneous.readFileFromResources("resources/insert_rssguard_feeds.sql"));
+		articles = BenchmarkData.articles(ROWS, 42);
+		feeds = BenchmarkData.feeds(ROWS, 42);
+	}
+
+
+	@TearDown
+	public void tearDown() throws Exception {
+		articleStatement.close();
+		feedStatement.close();
+		connection.close();
+		BenchmarkData.deleteDatabase(database);
+	}
+
+
+	@Benchmark
+	public PreparedStatement bindArticle() throws Exception {
+		row = (row + 1) & (ROWS - 1);
+		DatabaseManager.bindArticle(articleStatement, articles, row);
+		return articleStatement;
+	}
+
+
+	@Benchmark
+	public PreparedStatement bindFeed() throws Exception {
+		row = (row + 1) & (ROWS - 1);
+		DatabaseManager.bindFeed(feedStatement, feeds.get(row));
+		return feedStatement;
+	}
+
+}
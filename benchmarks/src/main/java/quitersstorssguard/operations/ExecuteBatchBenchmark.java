@@ -0,0 +1,108 @@
+package quitersstorssguard.operations;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.sqlite.SQLiteConfig;
+
+import quitersstorssguard.records.ArticleBatch;
+import quitersstorssguard.utils.Miscellaneous;
+
+
+/**
+ * Time to write one committed article batch into a temporary RSSGuard file, for several combinations of
+ * {@code ARTICLE_BATCH_SIZE} (rows per commit) and {@code INSERT_BATCH_SIZE} (rows per {@code executeBatch}). The target
+ * uses the same pragmas as the migrator's target connection.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ExecuteBatchBenchmark {
+
+	@Param({ "1000", "5000", "20000" })
+	public int articleBatchSize;
+
+	@Param({ "500", "2000", "5000" })
+	public int insertBatchSize;
+
+	private Path database;
+	private Connection connection;
+	private PreparedStatement insertStatement;
+	private ArticleBatch articles;
+
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		database = BenchmarkData.createRssGuardDatabase();
+
+		SQLiteConfig config = new SQLiteConfig();
+		config.setPragma(SQLiteConfig.Pragma.CACHE_SIZE, "20000");
+		config.setPragma(SQLiteConfig.Pragma.TEMP_STORE, "MEMORY");
+		config.setPragma(SQLiteConfig.Pragma.LOCKING_MODE, "EXCLUSIVE");
+		config.setPragma(SQLiteConfig.Pragma.SYNCHRONOUS, "OFF");
+		config.setPragma(SQLiteConfig.Pragma.JOURNAL_MODE, "OFF");
+
+		connection = DriverManager.getConnection("jdbc:sqlite:" + database, config.toProperties());
+		insertStatement = connection.prepareStatement(Miscellaneous.readFileFromResources("resources/insert_rssguard_messages.sql"));
+		articles = BenchmarkData.articles(articleBatchSize, 42);
+	}
+
+
+	// Keeps primary keys free and the file size stable between invocations
+	@Setup(Level.Invocation)
+	public void emptyMessages() throws Exception {
+		try (Statement stmt = connection.createStatement()) {
+			stmt.execute("DELETE FROM Messages");
+		}
+	}
+
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		insertStatement.close();
+		connection.close();
+		BenchmarkData.deleteDatabase(database);
+	}
+
+
+	@Benchmark
+	public int[] insertCommittedBatch() throws Exception {
+		connection.setAutoCommit(false);
+
+		int[] counts = null;
+		for (int row = 0; row < articles.size(); row++) {
+			DatabaseManager.bindArticle(insertStatement, articles, row);
+			insertStatement.addBatch();
+
+			if ((row + 1) % insertBatchSize == 0)
+				counts = insertStatement.executeBatch();
+		}
+
+		counts = insertStatement.executeBatch();
+		connection.commit();
+		connection.setAutoCommit(true);
+		return counts;
+	}
+
+}
@@ -0,0 +1,72 @@
+package quitersstorssguard.records;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Cost of materializing one decoded row: immutable records versus the reusable {@link ArticleBatch} columns.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RecordConstructionBenchmark {
+
+	public String author = "John Doe";
+	public String description = "<p>" + "Lorem ipsum dolor sit amet, consectetur adipiscing elit. ".repeat(20) + "</p>";
+	public String guid = "https://example.org/posts/123456";
+	public String title = "An article title";
+	public String link = "https://example.org/posts/123456";
+	public byte[] icon = new byte[1024];
+
+	private ArticleBatch batch;
+	private int id;
+
+
+	@Setup
+	public void setUp() {
+		batch = new ArticleBatch(5000);
+	}
+
+
+	@Benchmark
+	public Store_QuiteRSS storeQuiteRss() {
+		return new Store_QuiteRSS(author, description, guid, 1651820889000L, 7, ++id, 0, 0, 1, title, link);
+	}
+
+
+	@Benchmark
+	public Store_QuiteRSS storeQuiteRssWithNulls() {
+		return new Store_QuiteRSS(null, null, null, 1651820889000L, 7, ++id, 0, 0, 1, null, null);
+	}
+
+
+	@Benchmark
+	public Store_QuiteRssFeed storeQuiteRssFeed() {
+		return new Store_QuiteRssFeed(3, 1, ++id, title, description, 1651820889000L, link, icon, 0, 0, 1);
+	}
+
+
+	@Benchmark
+	public int articleBatchAdd() {
+		if (batch.isFull())
+			batch.clear();
+
+		batch.add(author, description, guid, 1651820889000L, 7, ++id, 0, 0, 1, title, link);
+		return batch.size();
+	}
+
+}
@@ -0,0 +1,69 @@
+package quitersstorssguard.utils;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Per-value cost of the conversions applied to every QuiteRSS row.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MiscellaneousBenchmark {
+
+	@State(Scope.Thread)
+	public static class Dates {
+		// Local time (news.received), UTC with fraction, and a shape only java.time understands
+		@Param({ "2022-05-06T07:08:09", "2022-05-06T07:08:09.123Z", "2022-05-06t07:08" })
+		public String dateTime;
+	}
+
+
+	public String paddedTitle = "   \tSome feed title with surrounding white space \n  ";
+	public String cleanTitle = "Some feed title without surrounding white space";
+
+
+	@Benchmark
+	public long convertToTimestamp(Dates dates) {
+		return Miscellaneous.convertToTimestamp(dates.dateTime);
+	}
+
+
+	@Benchmark
+	public long convertToTimestampWithJavaTime(Dates dates) {
+		return Miscellaneous.convertToTimestampWithJavaTime(dates.dateTime);
+	}
+
+
+	@Benchmark
+	public String stripToEmptyPadded() {
+		return Miscellaneous.stripToEmpty(paddedTitle);
+	}
+
+
+	@Benchmark
+	public String stripToEmptyClean() {
+		return Miscellaneous.stripToEmpty(cleanTitle);
+	}
+
+
+	@Benchmark
+	public String stripToEmptyNull() {
+		return Miscellaneous.stripToEmpty(null);
+	}
+
+}
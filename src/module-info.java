@@ -18,5 +18,7 @@ module quitersstorssguard {
 	// ------------------------------
 	requires org.xerial.sqlitejdbc;
 	requires java.compiler;
+	requires jdk.management;
+	requires jdk.jfr;
 
 }
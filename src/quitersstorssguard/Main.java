@@ -1,31 +1,178 @@
 package quitersstorssguard;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 import quitersstorssguard.operations.DatabaseManager;
+import quitersstorssguard.operations.DuplicateArticleFilter;
+import quitersstorssguard.operations.MigrationOptions;
+import quitersstorssguard.operations.MigrationPlanner;
+import quitersstorssguard.operations.NewsSnapshot;
+import quitersstorssguard.operations.NewsSnapshotWriter;
+import quitersstorssguard.operations.PostLoadCompactor;
+import quitersstorssguard.operations.PragmaProfile;
+import quitersstorssguard.operations.SyntheticDatabaseGenerator;
 
 
 public class Main {
 
+	private static final Duration SHUTDOWN_GRACE_PERIOD = Duration.ofMinutes(2); // Time given to the in-flight batches on Ctrl+C or SIGTERM
+
+
 	public static void main(String[] args) {
 
 		// --------------------------
 		// Arguments
 		// --------------------------
-		if (args.length != 2) {
+		MigrationOptions options = new MigrationOptions();
+		List<String> paths = new ArrayList<>();
+		boolean generate = false;
+		boolean exportSnapshot = false;
+		long articleCount = 1_000_000;
+		int feedCount = 0;
+		long seed = 1;
+		boolean plan = false;
+		Path planPath = null;
+
+		List<String> arguments = new ArrayList<>();
+		try {
+			for (String arg : args) {
+				if (arg.startsWith("--use-plan="))
+					arguments.addAll(0, MigrationPlanner.readOptions(Paths.get(arg.substring(arg.indexOf('=') + 1)))); // Before the command line, which overrides them
+				else
+					arguments.add(arg);
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			System.err.println("Error: Cannot read the plan: " + e.getMessage());
+			System.exit(1);
+		}
+
+		for (String arg : arguments) {
+			if (!arg.startsWith("--")) {
+				paths.add(arg);
+				continue;
+			}
+
+			String name = arg.contains("=") ? arg.substring(0, arg.indexOf('=')) : arg;
+			String value = arg.contains("=") ? arg.substring(arg.indexOf('=') + 1) : "";
+
+			try {
+				switch (name) {
+					case "--serial" -> options.setPipelined(false);
+					case "--pipelined" -> options.setPipelined(true);
+					case "--shards" -> options.setShards(Integer.parseInt(value));
+					case "--resume" -> options.setResume(true);
+					case "--crash-safe" -> options.setPragmaProfile(PragmaProfile.BALANCED);
+					case "--profile" -> options.setPragmaProfile(PragmaProfile.parse(value));
+					case "--pragma" -> options.setTargetPragma(pragmaName(value), pragmaValue(value));
+					case "--source-pragma" -> options.setSourcePragma(pragmaName(value), pragmaValue(value));
+					case "--delta" -> options.setDelta(true);
+					case "--page-size" -> options.setPageSize(Integer.parseInt(value.replace("_", "")));
+					case "--fetch-size" -> options.setFetchSize(Integer.parseInt(value));
+					case "--batch-size" -> options.setBatchSize(Integer.parseInt(value.replace("_", "")));
+					case "--commit-latency" -> options.setCommitLatency(Duration.ofMillis(Long.parseLong(value)));
+					case "--batch-memory" -> options.setBatchByteBudget(Long.parseLong(value) * 1024 * 1024);
+					case "--cache-size" -> options.setTargetPragma("cache_size", Long.toString(-Long.parseLong(value) * 1024)); // Negative: KB
+					case "--mmap-size" -> {
+						options.setSourcePragma("mmap_size", Long.toString(Long.parseLong(value) * 1024 * 1024));
+						options.setTargetPragma("mmap_size", Long.toString(Long.parseLong(value) * 1024 * 1024));
+					}
+					case "--bulk-load" -> options.setBulkLoad(true);
+					case "--in-engine" -> options.setInEngine(true);
+					case "--shadow" -> options.setShadow(true);
+					case "--extract-images" -> options.setExtractImages(true).setImageDirectory(value.isEmpty() ? null : Paths.get(value).toAbsolutePath());
+					case "--slim-html" -> options.setSlimHtmlThreads(value.isEmpty() ? Math.max(1, Runtime.getRuntime().availableProcessors() / 2) : Integer.parseInt(value));
+					case "--optimize-icons" -> options.setIconSize(value.isEmpty() ? 64 : Integer.parseInt(value));
+					case "--dedup" -> options.setDedupScope(parseDedupScope(value));
+					case "--no-verify" -> options.setVerify(false);
+					case "--compact" -> options.setCompactMode(PostLoadCompactor.Mode.parse(value));
+					case "--quiet" -> options.setQuiet(true);
+					case "--report" -> options.setReportPath(Paths.get(value).toAbsolutePath());
+					case "--export-ndjson" -> options.addExportPath(Paths.get(value).toAbsolutePath());
+					case "--plan" -> {
+						plan = true;
+						planPath = value.isEmpty() ? null : Paths.get(value).toAbsolutePath();
+					}
+					case "--generate" -> generate = true;
+					case "--export-snapshot" -> exportSnapshot = true;
+					case "--articles" -> articleCount = Long.parseLong(value.replace("_", ""));
+					case "--feeds" -> feedCount = Integer.parseInt(value);
+					case "--seed" -> seed = Long.parseLong(value);
+					default -> throw new IllegalArgumentException("Unknown option " + arg);
+				}
+			} catch (IllegalArgumentException e) {
+				System.err.println("Error: " + (e instanceof NumberFormatException ? "Invalid number in " + arg : e.getMessage()));
+				printUsage();
+				System.exit(1);
+			}
+		}
+
+		if (!options.isPipelined() && options.getShards() > 1) {
+			System.err.println("Error: --serial cannot be combined with --shards");
+			System.exit(1);
+		}
+
+		if (options.isDelta() && (options.isResume() || options.getShards() > 1 || options.isBulkLoad() || options.isInEngine() || options.isShadow())) {
+			System.err.println("Error: --delta cannot be combined with --resume, --shards, --bulk-load, --in-engine or --shadow");
+			System.exit(1);
+		}
+
+		if (options.isInEngine() && (options.getShards() > 1 || !options.isPipelined() || options.isExtractImages() || options.getSlimHtmlThreads() > 0
+				|| options.getIconSize() > 0 || options.getDedupScope() != null)) {
+			System.err.println("Error: --in-engine cannot be combined with --shards, --serial, --extract-images, --slim-html, --optimize-icons or --dedup");
+			System.exit(1);
+		}
+
+		if (!options.getExportPaths().isEmpty() && (options.isDelta() || options.isResume() || options.isInEngine())) {
+			System.err.println("Error: --export-ndjson cannot be combined with --delta, --resume or --in-engine, the export must see every article");
+			System.exit(1);
+		}
+
+		if (options.isShadow() && options.isCrashSafe()) {
+			System.err.println("Error: --shadow cannot be combined with a journaled profile (--crash-safe, --profile=safe or balanced), the original database is never written before the end");
+			System.exit(1);
+		}
+
+		if (paths.size() < 2 || (generate || exportSnapshot) && paths.size() != 2) {
 			printUsage();
 			System.exit(1);
 		}
 
+		if (paths.size() > 2 && (options.isDelta() || options.isInEngine() || options.getShards() > 1 || !options.isPipelined())) {
+			System.err.println("Error: several QuiteRSS databases cannot be merged with --delta, --in-engine, --shards or --serial");
+			System.exit(1);
+		}
+
+		if (generate) {
+			generateDatabases(Paths.get(paths.get(0)), Paths.get(paths.get(1)), articleCount, feedCount, seed);
+			return;
+		}
+
+		if (exportSnapshot) {
+			exportSnapshot(Paths.get(paths.get(0)).toAbsolutePath(), Paths.get(paths.get(1)).toAbsolutePath());
+			return;
+		}
+
 		// Validate input paths
-		Path quiteRssPath = Paths.get(args[0]);
-		Path rssGuardPath = Paths.get(args[1]);
+		List<Path> quiteRssPaths = paths.subList(0, paths.size() - 1).stream().map(Paths::get).toList();
+		Path rssGuardPath = Paths.get(paths.get(paths.size() - 1));
 
-		if (!Files.isReadable(quiteRssPath)) {
-			System.err.println("Error: Cannot read QuiteRSS database at " + quiteRssPath);
+		for (Path quiteRssPath : quiteRssPaths) {
+			if (!Files.isReadable(quiteRssPath)) {
+				System.err.println("Error: Cannot read QuiteRSS database at " + quiteRssPath);
+				System.exit(1);
+			}
+		}
+
+		if (quiteRssPaths.stream().map(path -> path.toAbsolutePath().normalize()).distinct().count() < quiteRssPaths.size()) {
+			System.err.println("Error: The same QuiteRSS database is given more than once");
 			System.exit(1);
 		}
 
@@ -34,11 +181,22 @@ public class Main {
 			System.exit(1);
 		}
 
+		boolean fromSnapshot = NewsSnapshot.isSnapshot(quiteRssPaths.get(0));
+		if (fromSnapshot && (quiteRssPaths.size() > 1 || plan || options.isDelta() || options.isInEngine() || options.getShards() > 1)) {
+			System.err.println("Error: a snapshot cannot be merged, nor read with --plan, --delta, --in-engine or --shards");
+			System.exit(1);
+		}
+
+		if (plan) {
+			planMigration(quiteRssPaths, rssGuardPath, options, planPath != null ? planPath : Paths.get(rssGuardPath + ".plan.json").toAbsolutePath());
+			return;
+		}
+
 
 		// --------------------------
 		// Database migration
 		// --------------------------
-		final String quiteRSS_DB_URL = "jdbc:sqlite:" + quiteRssPath.toString();
+		final List<String> quiteRSS_DB_URLs = quiteRssPaths.stream().map(path -> "jdbc:sqlite:" + path).toList();
 		final String rssGuard_DB_URL = "jdbc:sqlite:" + rssGuardPath.toString();
 
 
@@ -48,21 +206,35 @@ public class Main {
 		System.out.println("Name	: QuiteRSS to RSSGuard Database Migrator");
 		System.out.println("Version	: v1.0");
 		System.out.println("Date	: 16-06-2025 (17h47)");
-		System.out.println("Source	: " + quiteRssPath);
+		quiteRssPaths.forEach(quiteRssPath -> System.out.println("Source	: " + quiteRssPath));
 		System.out.println("Destination : " + rssGuardPath);
+		System.out.println("Mode	: " + (options.isInEngine() ? "in-engine" : options.isPipelined() ? "pipelined" : "serial") + (options.getShards() > 1 ? ", " + options.getShards() + " shards" : "")
+				+ (quiteRssPaths.size() > 1 ? ", merging " + quiteRssPaths.size() + " databases" : "")
+				+ (options.isBulkLoad() ? ", bulk load" : "") + (options.isShadow() ? ", shadow copy" : "") + ", " + options.getPragmaProfile().label() + " profile" + (options.isCrashSafe() ? " (crash-safe)" : "") + (options.isResume() ? ", resuming" : "") + (options.isDelta() ? ", delta sync" : "")
+				+ (fromSnapshot ? ", from snapshot" : "")
+				+ (options.getExportPaths().isEmpty() ? "" : ", " + options.getExportPaths().size() + " NDJSON export(s)"));
 		System.out.println("");
 
 		System.out.println("--------------------------------------------------------------------------------------------");
 		System.out.println("--------------------------------------- Processing -----------------------------------------");
 		System.out.println("--------------------------------------------------------------------------------------------");
 
-		try (DatabaseManager databaseManager = new DatabaseManager(quiteRSS_DB_URL, rssGuard_DB_URL)) {
-			List<String> elapsedTimes = databaseManager.performFullMigration();
+		try (DatabaseManager databaseManager = new DatabaseManager(quiteRSS_DB_URLs, rssGuard_DB_URL, options)) {
+			Thread shutdownHook = new Thread(() -> stopMigration(databaseManager), "migration-shutdown");
+			Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+			List<String> elapsedTimes = options.isDelta() ? databaseManager.performDeltaSync() : databaseManager.performFullMigration();
 
 			System.out.println("--------------------------------------------------------------------------------------------");
 			elapsedTimes.forEach(System.out::println);
 			System.out.println("--------------------------------------------------------------------------------------------");
 
+			try {
+				Runtime.getRuntime().removeShutdownHook(shutdownHook);
+			} catch (IllegalStateException e) {
+				// The JVM is already shutting down, the hook waits for the close below
+			}
+
 		} catch (Exception e) {
 			System.err.println("\nERROR: Migration failed");
 			System.err.println("Reason: " + e.getMessage());
@@ -72,13 +244,143 @@ public class Main {
 	}
 
 
+	/**
+	 * Runs on Ctrl+C or SIGTERM: lets the migration commit the batches already read, together with their checkpoint,
+	 * and keeps the JVM alive until the RSSGuard database is closed cleanly.
+	 */
+	private static void stopMigration(DatabaseManager databaseManager) {
+		if (!databaseManager.requestStop())
+			return; // Migration already over
+
+		System.err.println("\nInterrupted, finishing the current batch (run again with --resume to continue) ...");
+
+		try {
+			if (!databaseManager.awaitClose(SHUTDOWN_GRACE_PERIOD))
+				System.err.println("Warning: RSS Guard database was not closed within " + SHUTDOWN_GRACE_PERIOD.toSeconds() + " s");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	private static void generateDatabases(Path quiteRssPath, Path rssGuardPath, long articleCount, int feedCount, long seed) {
+		System.out.println("--------------------------------------------------------------------------------------------");
+		System.out.println("Generating a synthetic QuiteRSS database (" + articleCount + " articles, seed " + seed + ") ...");
+
+		try {
+			new SyntheticDatabaseGenerator(articleCount, feedCount, seed).generate(quiteRssPath, rssGuardPath).forEach(System.out::println);
+		} catch (Exception e) {
+			System.err.println("\nERROR: Generation failed");
+			System.err.println("Reason: " + e.getMessage());
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+
+	private static void exportSnapshot(Path quiteRssPath, Path snapshotPath) {
+		System.out.println("--------------------------------------------------------------------------------------------");
+		System.out.println("Exporting " + quiteRssPath + " to a snapshot ...");
+
+		try {
+			new NewsSnapshotWriter(quiteRssPath, snapshotPath).export().forEach(System.out::println);
+		} catch (Exception e) {
+			System.err.println("\nERROR: Export failed");
+			System.err.println("Reason: " + e.getMessage());
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+
+	private static void planMigration(List<Path> quiteRssPaths, Path rssGuardPath, MigrationOptions options, Path planPath) {
+		System.out.println("--------------------------------------------------------------------------------------------");
+		System.out.println("Planning the migration of " + quiteRssPaths.size() + " QuiteRSS database(s) ...");
+
+		try {
+			MigrationPlanner planner = new MigrationPlanner(quiteRssPaths, rssGuardPath, options).plan();
+			planner.describe().forEach(System.out::println);
+			Files.writeString(planPath, planner.toJson(), StandardCharsets.UTF_8);
+			System.out.println("Plan		: " + planPath + " (run with --use-plan=" + planPath + ")");
+		} catch (Exception e) {
+			System.err.println("\nERROR: Planning failed");
+			System.err.println("Reason: " + e.getMessage());
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+
+	private static String pragmaName(String value) {
+		if (!value.contains("="))
+			throw new IllegalArgumentException("Pragmas are given as NAME=VALUE, got '" + value + "'");
+		return value.substring(0, value.indexOf('=')).strip().toLowerCase(Locale.ROOT);
+	}
+
+
+	private static String pragmaValue(String value) {
+		return value.substring(value.indexOf('=') + 1).strip();
+	}
+
+
+	private static DuplicateArticleFilter.Scope parseDedupScope(String value) {
+		return switch (value) {
+			case "", "feed" -> DuplicateArticleFilter.Scope.FEED;
+			case "global" -> DuplicateArticleFilter.Scope.GLOBAL;
+			default -> throw new IllegalArgumentException("--dedup takes 'feed' or 'global', got '" + value + "'");
+		};
+	}
+
+
 	private static void printUsage() {
-		System.out.println("Usage: java -jar migrator.jar <QuiteRSS_DB_Path> <RSSGuard_DB_Path>");
+		System.out.println("Usage: java -jar migrator.jar [options] <QuiteRSS_DB_Path> [<QuiteRSS_DB_Path> ...] <RSSGuard_DB_Path>");
+		System.out.println("       java -jar migrator.jar --generate [--articles=N] [--feeds=N] [--seed=N] <QuiteRSS_DB_Path> <RSSGuard_DB_Path>");
+		System.out.println("       java -jar migrator.jar --export-snapshot <QuiteRSS_DB_Path> <Snapshot_Path>");
+		System.out.println("\nOptions:");
+		System.out.println("  --pipelined   Read and write articles on two overlapping threads (default)");
+		System.out.println("  --serial      Read and write articles one batch after the other on a single thread");
+		System.out.println("  --shards=N    Read articles through N parallel read-only connections (default 1)");
+		System.out.println("  --page-size=N Read articles in pages of N rows, each a short read transaction (default 20000, 0 = one cursor)");
+		System.out.println("  --fetch-size=N Fetch size hint given to the JDBC driver for article queries (default: driver default)");
+		System.out.println("  --batch-size=N Fixed number of articles per commit (default 0 = adaptive, sized from the commit latency)");
+		System.out.println("  --commit-latency=MS Time an adaptive article batch should take to insert and commit (default 250)");
+		System.out.println("  --batch-memory=MB Upper bound of the article data held by one batch (default 32)");
+		System.out.println("  --cache-size=MB Page cache of the RSSGuard connection (default: profile's)");
+		System.out.println("  --mmap-size=MB Map up to MB of each database into memory instead of reading it (default: profile's)");
+		System.out.println("  --plan[=PATH] Measure the QuiteRSS databases, predict time, memory & disk, and write the recommended settings to PATH");
+		System.out.println("                (default: <RSSGuard_DB_Path>.plan.json) instead of migrating");
+		System.out.println("  --use-plan=PATH Apply the settings of a plan, before the options of the command line");
+		System.out.println("  --quiet       Report progress as machine-readable 'progress key=value ...' lines");
+		System.out.println("  --export-ndjson=PATH Also write the categories, feeds and articles to PATH as NDJSON, gzip-compressed when PATH ends");
+		System.out.println("                with .gz, from the same read of QuiteRSS (repeatable)");
+		System.out.println("  --report=PATH Write the run's stage latencies, throughput and heap samples to PATH.json and PATH.prom");
+		System.out.println("  --bulk-load   Drop RSSGuard indexes & triggers and skip foreign key checks while loading, rebuild and check them at the end");
+		System.out.println("  --in-engine   Attach QuiteRSS to the RSSGuard database and copy every table with INSERT ... SELECT inside SQLite");
+		System.out.println("  --extract-images[=DIR] Store base64 images embedded in articles once per content in DIR (default: next to the RSSGuard database) and link them");
+		System.out.println("  --slim-html[=N] Strip scripts, styles, comments, tracking pixels and whitespace runs from articles on N threads (default: half the cores)");
+		System.out.println("  --optimize-icons[=PX] Share identical feed icons, drop corrupt ones and downscale those larger than PX (default 64)");
+		System.out.println("  --dedup[=feed|global] Skip articles already written with the same GUID (or link without GUID), in the same feed (default) or any feed");
+		System.out.println("  --no-verify   Skip the comparison of every migrated article with QuiteRSS at the end of a full migration");
+		System.out.println("  --compact=auto|skip|incremental|rebuild Compaction after a full migration: measured from free pages & fragmentation (default),");
+		System.out.println("                none, free pages released in place, or a compacted copy renamed over the database");
+		System.out.println("  --shadow      Migrate into a copy next to the RSSGuard database, then check it and swap it in atomically");
+		System.out.println("  --profile=safe|balanced|turbo SQLite settings of both databases: durable and unmapped, crash-safe WAL with memory maps,");
+		System.out.println("                or unjournaled (default turbo)");
+		System.out.println("  --pragma=NAME=VALUE Override one pragma of the profile on the RSSGuard connection (repeatable)");
+		System.out.println("  --source-pragma=NAME=VALUE Override one pragma of the profile on the QuiteRSS connections (repeatable)");
+		System.out.println("  --crash-safe  Same as --profile=balanced: journal the RSSGuard database (WAL, synchronous NORMAL) so a crash cannot corrupt it");
+		System.out.println("  --resume      Continue an interrupted migration from the checkpoint stored in the RSSGuard database");
+		System.out.println("  --delta       Only carry over new feeds and articles and changed flags since the last migration or delta sync");
+		System.out.println("  --generate    Create a synthetic QuiteRSS database and an empty RSSGuard database for load tests");
+		System.out.println("                (--articles=N, default 1000000; --feeds=N, default articles/2000; --seed=N, default 1)");
+		System.out.println("  --export-snapshot Write the feeds and articles of a QuiteRSS database to a checksummed columnar file, which can then");
+		System.out.println("                be given in place of the QuiteRSS database to migrate without SQLite reads");
 		System.out.println("\nExample:");
 		System.out.println("  java -jar migrator.jar /path/to/quiterss.db /path/to/rssguard.db");
 		System.out.println("\nNotes:");
 		System.out.println("  1. QuiteRSS database must exist and be readable");
 		System.out.println("  2. RSSGuard database directory must be writable");
+		System.out.println("  3. Several QuiteRSS databases are merged into the RSSGuard database, read in parallel");
 	}
 
 
@@ -0,0 +1,144 @@
+package quitersstorssguard.operations;
+
+import java.time.Duration;
+
+import quitersstorssguard.records.ArticleBatch;
+import quitersstorssguard.utils.Miscellaneous;
+
+
+/**
+ * Decides when an article batch is complete, from the measured cost of writing the previous ones.
+ * <p>
+ * The writer reports how long {@code executeBatch} and {@code commit} took for every batch. The controller keeps a
+ * smoothed cost per row and sets the row limit of the next batches so that one commit takes about the target
+ * latency: batches of small articles grow, batches of large ones shrink, never by more than a factor of two at once.
+ * Independently of the row limit, a batch is complete as soon as its bound columns reach the byte budget. The memory
+ * held by the batches in flight is therefore bounded by their number times that budget, whatever the articles.
+ * <p>
+ * {@link #isComplete(ArticleBatch)} is called by the reader threads and {@link #recordCommit(int, long, long)} by the
+ * single writer thread.
+ */
+public class AdaptiveBatchController {
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************* Constants ********************************************************************
+	// **************************************************************************************************************************************************
+	public static final int MIN_ROWS = 250;
+	public static final int MAX_ROWS = 20_000; // Capacity of every ArticleBatch buffer
+
+	private static final double SMOOTHING = 0.3; // Weight of the last batch in the cost per row
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private final boolean adaptive;
+	private final long targetNanos;
+	private final long byteBudget;
+
+	private volatile int rowLimit;
+	private double nanosPerRow = -1;
+
+	private long batches;
+	private long rows;
+	private int smallestLimit;
+	private int largestLimit;
+	private long byteCappedBatches;
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @param initialRows   Row limit of the first batches, or of all batches when {@code adaptive} is {@code false}.
+	 * @param adaptive      {@code false} to keep {@code initialRows} for the whole run.
+	 * @param targetLatency Time one {@code executeBatch} plus {@code commit} should take.
+	 * @param byteBudget    Maximum size of the bound columns of one batch (the last row may overshoot it).
+	 */
+	public AdaptiveBatchController(int initialRows, boolean adaptive, Duration targetLatency, long byteBudget) {
+		this.adaptive = adaptive;
+		this.targetNanos = targetLatency.toNanos();
+		this.byteBudget = byteBudget;
+		this.rowLimit = clamp(initialRows);
+		this.smallestLimit = rowLimit;
+		this.largestLimit = rowLimit;
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @return {@code true} when {@code batch} should be handed over now.
+	 */
+	public boolean isComplete(ArticleBatch batch) {
+		return batch.size() >= rowLimit || batch.byteSize() >= byteBudget || batch.isFull();
+	}
+
+
+	/**
+	 * Feeds back the cost of writing one batch and adjusts the row limit of the next ones.
+	 *
+	 * @param batchRows  Rows of the batch.
+	 * @param batchBytes Size of its bound columns.
+	 * @param nanos      Time spent in {@code executeBatch} and {@code commit}.
+	 */
+	public void recordCommit(int batchRows, long batchBytes, long nanos) {
+		if (batchRows == 0)
+			return;
+
+		batches++;
+		rows += batchRows;
+		if (batchBytes >= byteBudget)
+			byteCappedBatches++;
+
+		int currentLimit = rowLimit;
+		if (!adaptive || batchRows < currentLimit / 2 && batchBytes < byteBudget / 2)
+			return; // Tail of a key range, its fixed commit cost would skew the estimate
+
+		double lastNanosPerRow = (double) nanos / batchRows;
+		nanosPerRow = nanosPerRow < 0 ? lastNanosPerRow : SMOOTHING * lastNanosPerRow + (1 - SMOOTHING) * nanosPerRow;
+
+		int nextLimit = clamp((int) Math.max(Math.min(targetNanos / nanosPerRow, currentLimit * 2.0), currentLimit / 2.0));
+		rowLimit = nextLimit;
+		smallestLimit = Math.min(smallestLimit, nextLimit);
+		largestLimit = Math.max(largestLimit, nextLimit);
+	}
+
+
+	public int getRowLimit() {
+		return rowLimit;
+	}
+
+
+	public long getByteBudget() {
+		return byteBudget;
+	}
+
+
+	/**
+	 * @return Summary for the migration log, to be called once the writer has finished.
+	 */
+	public String describe() {
+		if (batches == 0)
+			return "  - Batch sizes\t: no article batch written";
+
+		return String.format("  - Batch sizes\t: %s, %d to %d articles (last %d, average %d), %d of %d batch(es) capped at %s",
+				adaptive ? "adaptive" : "fixed", smallestLimit, largestLimit, rowLimit, rows / batches,
+				byteCappedBatches, batches, Miscellaneous.bytesToHumanReadable(byteBudget));
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Helpers *********************************************************************
+	// **************************************************************************************************************************************************
+	private static int clamp(int rows) {
+		return Math.max(MIN_ROWS, Math.min(MAX_ROWS, rows));
+	}
+
+
+}
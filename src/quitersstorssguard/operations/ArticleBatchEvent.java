@@ -0,0 +1,50 @@
+package quitersstorssguard.operations;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+
+/**
+ * Flight Recorder event emitted by the writer for every article batch, its duration covering binding, {@code executeBatch}
+ * and {@code commit}. Costs nothing unless a recording is running, e.g. with
+ * {@code -XX:StartFlightRecording=filename=migration.jfr}.
+ */
+@Name("quitersstorssguard.ArticleBatch")
+@Label("Article Batch")
+@Category({ "QuiteRSS Migration" })
+@Description("One batch of articles written to the RSSGuard database")
+@StackTrace(false)
+final class ArticleBatchEvent extends Event {
+
+	@Label("Key Range")
+	int range;
+
+	@Label("Rows")
+	int rows;
+
+	@Label("Bound Bytes")
+	@DataAmount
+	long bytes;
+
+	@Label("Last News Id")
+	long lastId;
+
+	@Label("Bind")
+	@Timespan
+	long bindNanos;
+
+	@Label("Execute Batch")
+	@Timespan
+	long executeNanos;
+
+	@Label("Commit")
+	@Timespan
+	long commitNanos;
+
+}
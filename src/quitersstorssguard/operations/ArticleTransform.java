@@ -0,0 +1,34 @@
+package quitersstorssguard.operations;
+
+import java.io.IOException;
+
+import quitersstorssguard.records.ArticleBatch;
+
+
+/**
+ * Rewrites the articles of a batch after they were read from QuiteRSS and before they are written to RSSGuard.
+ * <p>
+ * Transforms run on the reader side, once per complete batch, so their cost overlaps with the writer. With sharded
+ * reads several reader threads call {@link #apply(ArticleBatch)} at the same time: implementations must be thread-safe.
+ */
+public interface ArticleTransform {
+
+	/**
+	 * Rewrites the rows of {@code batch} in place.
+	 */
+	void apply(ArticleBatch batch) throws IOException;
+
+
+	/**
+	 * @return Summary for the migration log, to be called once every batch went through.
+	 */
+	String describe();
+
+
+	/**
+	 * Releases the threads or files held by the transform, once the migration is over.
+	 */
+	default void close() {
+	}
+
+}
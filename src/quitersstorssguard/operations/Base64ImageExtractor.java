@@ -0,0 +1,147 @@
+package quitersstorssguard.operations;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+import quitersstorssguard.records.ArticleBatch;
+import quitersstorssguard.utils.Miscellaneous;
+
+
+/**
+ * Moves the base64 images embedded in article descriptions ({@code data:image/...;base64,...} URIs) into an
+ * {@link ImageStore} and points the HTML at the stored files instead.
+ * <p>
+ * Descriptions are scanned as plain text, without building a DOM: any {@code data:image/} URI in base64 is replaced,
+ * whether it sits in an {@code src}, a {@code srcset} or a style. The URI is rewritten to the {@code file:} URI of the
+ * stored image, which RSSGuard displays like the original. Descriptions without any embedded image are left as the
+ * same instance; the others are copied once, without the image text.
+ */
+public class Base64ImageExtractor implements ArticleTransform {
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************* Constants ********************************************************************
+	// **************************************************************************************************************************************************
+	private static final String DATA_URI_PREFIX = "data:image/";
+	private static final String BASE64_MARKER = ";base64,";
+	private static final int MAX_MEDIA_TYPE_LENGTH = 100; // "data:image/svg+xml;charset=utf-8;base64," and the like
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private final ImageStore store;
+	private final LongAdder images = new LongAdder();
+	private final LongAdder articles = new LongAdder();
+	private final LongAdder charsRemoved = new LongAdder();
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @param directory Root of the image store.
+	 */
+	public Base64ImageExtractor(Path directory) {
+		this.store = new ImageStore(directory);
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	@Override
+	public void apply(ArticleBatch batch) throws IOException {
+		for (int row = 0; row < batch.size(); row++) {
+			String description = batch.description(row);
+			String extracted = extract(description);
+
+			if (extracted != description) {
+				batch.setDescription(row, extracted);
+				articles.increment();
+				charsRemoved.add(description.length() - extracted.length());
+			}
+		}
+	}
+
+
+	/**
+	 * @return {@code html} with every embedded base64 image replaced by the URI of its stored copy, or {@code html}
+	 *         itself when there is none.
+	 */
+	public String extract(String html) throws IOException {
+		StringBuilder rewritten = null;
+		int copied = 0; // End of the part of html already in rewritten
+		int from = 0;
+		int start;
+
+		while ((start = html.indexOf(DATA_URI_PREFIX, from)) >= 0) {
+			from = start + DATA_URI_PREFIX.length();
+
+			int comma = html.indexOf(',', from);
+			if (comma < 0 || comma - start > MAX_MEDIA_TYPE_LENGTH || !html.regionMatches(true, comma + 1 - BASE64_MARKER.length(), BASE64_MARKER, 0, BASE64_MARKER.length()))
+				continue;
+
+			int end = comma + 1;
+			while (end < html.length() && isBase64(html.charAt(end)))
+				end++;
+
+			String uri = store.store(html, comma + 1, end, extension(html, from));
+			from = end;
+			if (uri == null)
+				continue;
+
+			if (rewritten == null)
+				rewritten = new StringBuilder(html.length() - (end - start));
+			rewritten.append(html, copied, start).append(uri);
+			copied = end;
+			images.increment();
+		}
+
+		if (rewritten == null)
+			return html;
+
+		return rewritten.append(html, copied, html.length()).toString();
+	}
+
+
+	@Override
+	public String describe() {
+		return String.format("  - Images\t: %,d base64 image(s) extracted from %,d article(s), %,d new file(s) (%s) in %s, descriptions %s smaller",
+				images.sum(), articles.sum(), store.getFilesWritten(), Miscellaneous.bytesToHumanReadable(store.getBytesWritten()),
+				store.getDirectory(), Miscellaneous.bytesToHumanReadable(charsRemoved.sum()));
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Helpers *********************************************************************
+	// **************************************************************************************************************************************************
+	private static boolean isBase64(char c) {
+		return c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '+' || c == '/' || c == '=';
+	}
+
+
+	/**
+	 * @return File extension for the image subtype starting at {@code from}, e.g. {@code png}, {@code jpg} or {@code svg}.
+	 */
+	private static String extension(String html, int from) {
+		int end = from;
+		while (end < html.length() && (Character.isLetterOrDigit(html.charAt(end)) || html.charAt(end) == '-' || html.charAt(end) == '.'))
+			end++;
+
+		String subtype = html.substring(from, end).toLowerCase(Locale.ROOT);
+		String extension = switch (subtype) {
+			case "jpeg", "pjpeg" -> "jpg";
+			case "x-icon", "vnd.microsoft.icon" -> "ico";
+			default -> subtype.replaceAll("[^a-z0-9]", ""); // svg+xml stops at '+' already
+		};
+		return extension.isEmpty() ? "img" : extension;
+	}
+
+
+}
@@ -0,0 +1,241 @@
+package quitersstorssguard.operations;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import quitersstorssguard.operations.DatabaseManager.BatchProcessor;
+import quitersstorssguard.utils.Miscellaneous;
+
+
+/**
+ * Two-stage hand-off between the thread(s) reading the QuiteRSS database and a dedicated writer thread.
+ * <p>
+ * Batches submitted through {@link #processBatch(Object)} are copied into a bounded queue and written by the downstream
+ * {@link BatchProcessor} on the writer thread, so the source connection keeps decoding rows while the target connection
+ * runs {@code executeBatch} and {@code commit}. When the writer falls behind the queue fills up and the readers block
+ * (backpressure), which keeps the number of batches held in memory bounded.
+ * <p>
+ * The copies are taken from a pool of buffers that the writer gives back once a batch is committed, so after warm-up
+ * no batch buffer is allocated any more. {@link #processBatch(Object)} may be called from several threads at once.
+ *
+ * @param <B> Type of a batch buffer.
+ */
+public class BatchPipeline<B> implements BatchProcessor<B>, AutoCloseable {
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************* Constants ********************************************************************
+	// **************************************************************************************************************************************************
+	private static final long POLL_INTERVAL_MS = 100;
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private final Object endOfStream = new Object(); // Compared by identity
+	private final BlockingQueue<Object> queue;
+	private final Queue<B> freeBuffers = new ConcurrentLinkedQueue<>();
+	private final Supplier<B> bufferFactory;
+	private final BiConsumer<B, B> copier;
+	private final BatchProcessor<B> writer;
+	private final Thread writerThread;
+
+	private final LongAdder readerStallNanos = new LongAdder();
+	private final LongAdder writerStallNanos = new LongAdder();
+
+	private volatile Throwable writerFailure;
+	private volatile long writerAllocatedBytes = -1;
+	private boolean finished;
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * Creates the pipeline and starts its writer thread.
+	 *
+	 * @param name          Name of the writer thread.
+	 * @param capacity      Maximum number of batches waiting between the two stages.
+	 * @param bufferFactory Creates an empty batch buffer when the pool has none available.
+	 * @param copier        Copies a submitted batch (first argument) into a pooled buffer (second argument).
+	 * @param writer        Downstream processor, only ever invoked from the writer thread.
+	 */
+	public BatchPipeline(String name, int capacity, Supplier<B> bufferFactory, BiConsumer<B, B> copier, BatchProcessor<B> writer) {
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.bufferFactory = bufferFactory;
+		this.copier = copier;
+		this.writer = writer;
+		this.writerThread = new Thread(this::runWriter, name);
+		this.writerThread.start();
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * Hands a copy of the batch over to the writer stage, blocking while the queue is full. The caller is free to reuse
+	 * {@code batch} as soon as this method returns.
+	 */
+	@Override
+	public void processBatch(B batch) throws SQLException {
+		B buffer = freeBuffers.poll();
+		if (buffer == null)
+			buffer = bufferFactory.get(); // Bounded by the queue capacity plus the number of readers and the writer
+
+		copier.accept(batch, buffer);
+		enqueue(buffer);
+	}
+
+
+	/**
+	 * Signals the end of the stream, waits for the writer to drain the queue and rethrows its failure, if any.
+	 */
+	public void finish() throws SQLException {
+		if (finished)
+			return;
+
+		enqueue(endOfStream);
+		finished = true;
+
+		try {
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for the writer stage", e);
+		}
+
+		rethrowWriterFailure();
+	}
+
+
+	/**
+	 * @return Time the reader spent blocked on a full queue, i.e. waiting for the writer.
+	 */
+	public Duration getReaderStall() {
+		return Duration.ofNanos(readerStallNanos.sum());
+	}
+
+
+	/**
+	 * @return Time the writer spent blocked on an empty queue, i.e. waiting for the reader.
+	 */
+	public Duration getWriterStall() {
+		return Duration.ofNanos(writerStallNanos.sum());
+	}
+
+
+	/**
+	 * @return Bytes allocated by the writer thread, or {@code -1} until it has finished or when unsupported by the JVM.
+	 */
+	public long getWriterAllocatedBytes() {
+		return writerAllocatedBytes;
+	}
+
+
+	public String describeStalls() {
+		return String.format("  - Pipeline stalls\t: reader waited %s on writer, writer waited %s on reader",
+				Miscellaneous.durationToHumanReadable(getReaderStall()),
+				Miscellaneous.durationToHumanReadable(getWriterStall()));
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Helpers *********************************************************************
+	// **************************************************************************************************************************************************
+	private void enqueue(Object batch) throws SQLException {
+		rethrowWriterFailure();
+
+		long start = System.nanoTime();
+		try {
+			while (!queue.offer(batch, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS))
+				rethrowWriterFailure(); // Never block forever on a writer that has died
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while handing a batch to the writer stage", e);
+		} finally {
+			readerStallNanos.add(System.nanoTime() - start);
+		}
+	}
+
+
+	@SuppressWarnings("unchecked")
+	private void runWriter() {
+		long allocatedBefore = Miscellaneous.currentThreadAllocatedBytes();
+
+		try {
+			while (true) {
+				long start = System.nanoTime();
+				Object item = queue.take();
+				writerStallNanos.add(System.nanoTime() - start);
+
+				if (item == endOfStream) {
+					if (allocatedBefore >= 0)
+						writerAllocatedBytes = Miscellaneous.currentThreadAllocatedBytes() - allocatedBefore;
+					return;
+				}
+
+				B batch = (B) item;
+				writer.processBatch(batch);
+				freeBuffers.offer(batch);
+			}
+
+		} catch (InterruptedException e) {
+			writerFailure = e;
+			Thread.currentThread().interrupt();
+		} catch (Throwable t) {
+			writerFailure = t;
+		} finally {
+			queue.clear(); // Unblocks a reader waiting on a full queue
+		}
+	}
+
+
+	private void rethrowWriterFailure() throws SQLException {
+		Throwable failure = writerFailure;
+		if (failure == null)
+			return;
+
+		if (failure instanceof SQLException e)
+			throw e;
+
+		throw new SQLException("Writer stage failed: " + failure.getMessage(), failure);
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Overrrides ********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * Stops the writer without waiting for pending batches. Only has an effect when {@link #finish()} was not reached,
+	 * typically because the reader failed.
+	 */
+	@Override
+	public void close() {
+		if (finished)
+			return;
+
+		finished = true;
+		writerThread.interrupt();
+
+		try {
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,180 @@
+package quitersstorssguard.operations;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Takes the secondary indexes and triggers of the RSSGuard tables filled by a migration out of the way during the bulk
+ * load, and puts them back afterwards.
+ * <p>
+ * Keeping an index up to date costs a B-tree insert per row and index, in id order for the table but in random order
+ * for the index; building it once at the end sorts all its keys in one pass instead. Triggers would fire once per
+ * inserted row. The definitions taken out are saved in the {@value #TABLE_NAME} table of the same database, in the
+ * transaction that drops them, so an interrupted or crashed migration still knows what to rebuild when resumed.
+ * Indexes SQLite creates itself for {@code UNIQUE} and {@code PRIMARY KEY} constraints cannot be dropped and stay.
+ */
+public class BulkLoadSchema {
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************* Constants ********************************************************************
+	// **************************************************************************************************************************************************
+	public static final String TABLE_NAME = "QuiteRssMigrationSchema";
+
+	private static final String LOADED_TABLES = "'messages', 'feeds', 'categories'";
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private final Connection targetConnection;
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @param targetConnection Connection to the RSSGuard database.
+	 */
+	public BulkLoadSchema(Connection targetConnection) {
+		this.targetConnection = targetConnection;
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * Saves and drops the secondary indexes and triggers of {@code Messages}, {@code Feeds} and {@code Categories}, in
+	 * one transaction. Objects saved by an earlier, interrupted run are kept.
+	 *
+	 * @return Number of indexes and triggers dropped by this call.
+	 */
+	public int suspend() throws SQLException {
+		List<String[]> objects = new ArrayList<>(); // type, name, sql
+
+		try (Statement stmt = targetConnection.createStatement();
+				ResultSet rs = stmt.executeQuery("SELECT type, name, sql FROM sqlite_master WHERE type IN ('index', 'trigger') AND sql IS NOT NULL"
+						+ " AND lower(tbl_name) IN (" + LOADED_TABLES + ")")) {
+			while (rs.next())
+				objects.add(new String[] { rs.getString(1), rs.getString(2), rs.getString(3) });
+		}
+
+		try {
+			targetConnection.setAutoCommit(false);
+
+			try (Statement stmt = targetConnection.createStatement()) {
+				stmt.execute("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (name TEXT PRIMARY KEY, type TEXT NOT NULL, sql TEXT NOT NULL)");
+			}
+
+			try (PreparedStatement save = targetConnection.prepareStatement("INSERT OR REPLACE INTO " + TABLE_NAME + " (name, type, sql) VALUES (?, ?, ?)");
+					Statement drop = targetConnection.createStatement()) {
+				for (String[] object : objects) {
+					save.setString(1, object[1]);
+					save.setString(2, object[0]);
+					save.setString(3, object[2]);
+					save.executeUpdate();
+					drop.execute("DROP " + object[0].toUpperCase() + " " + quote(object[1]));
+				}
+			}
+
+			targetConnection.commit();
+			return objects.size();
+		} catch (SQLException e) {
+			targetConnection.rollback();
+			throw e;
+		} finally {
+			targetConnection.setAutoCommit(true);
+		}
+	}
+
+
+	/**
+	 * @return {@code true} when indexes or triggers dropped for a bulk load still have to be rebuilt.
+	 */
+	public boolean isSuspended() throws SQLException {
+		try (Statement stmt = targetConnection.createStatement();
+				ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = '" + TABLE_NAME + "'")) {
+			return rs.next() && rs.getInt(1) > 0;
+		}
+	}
+
+
+	/**
+	 * Recreates every saved index, each in one pass over the loaded table, then every saved trigger, and removes the
+	 * saved definitions, in one transaction.
+	 *
+	 * @return Number of indexes and triggers rebuilt.
+	 */
+	public int restore() throws SQLException {
+		List<String> definitions = new ArrayList<>();
+
+		try (Statement stmt = targetConnection.createStatement();
+				ResultSet rs = stmt.executeQuery("SELECT sql FROM " + TABLE_NAME + " ORDER BY type = 'trigger', name")) { // Indexes first
+			while (rs.next())
+				definitions.add(rs.getString(1));
+		}
+
+		try {
+			targetConnection.setAutoCommit(false);
+
+			try (Statement stmt = targetConnection.createStatement()) {
+				for (String definition : definitions)
+					stmt.execute(definition);
+
+				stmt.execute("DROP TABLE " + TABLE_NAME);
+			}
+
+			targetConnection.commit();
+			return definitions.size();
+		} catch (SQLException e) {
+			targetConnection.rollback();
+			throw e;
+		} finally {
+			targetConnection.setAutoCommit(true);
+		}
+	}
+
+
+	/**
+	 * Runs {@code PRAGMA foreign_key_check} over the whole database, needed once rows were inserted with foreign key
+	 * enforcement off.
+	 *
+	 * @throws SQLException Listing the first violations, if there is any.
+	 */
+	public void checkForeignKeys() throws SQLException {
+		List<String> violations = new ArrayList<>();
+		int count = 0;
+
+		try (Statement stmt = targetConnection.createStatement();
+				ResultSet rs = stmt.executeQuery("PRAGMA foreign_key_check")) {
+			while (rs.next()) {
+				if (count++ < 10)
+					violations.add(rs.getString(1) + " rowid " + rs.getLong(2) + " -> " + rs.getString(3));
+			}
+		}
+
+		if (count > 0)
+			throw new SQLException("RSS Guard database has " + count + " foreign key violation(s) after the bulk load: " + String.join(", ", violations)
+					+ (count > violations.size() ? ", ..." : ""));
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Helpers *********************************************************************
+	// **************************************************************************************************************************************************
+	private static String quote(String identifier) {
+		return "\"" + identifier.replace("\"", "\"\"") + "\"";
+	}
+
+
+}
@@ -1,5 +1,8 @@
 package quitersstorssguard.operations;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -9,22 +12,36 @@ import java.sql.Statement;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.sqlite.SQLiteConfig;
 
+import quitersstorssguard.records.ArticleBatch;
+import quitersstorssguard.records.SourceIdMapping;
 import quitersstorssguard.records.SqlitePragmaSettings;
-import quitersstorssguard.records.Store_QuiteRSS;
 import quitersstorssguard.records.Store_QuiteRssFeed;
+import quitersstorssguard.utils.IntIntMap;
 import quitersstorssguard.utils.Miscellaneous;
+import quitersstorssguard.utils.StringCache;
 
 
 
 public class DatabaseManager implements AutoCloseable {
 
 	@FunctionalInterface
-	public interface BatchProcessor<T> {
-		void processBatch(List<T> batch) throws SQLException;
+	public interface BatchProcessor<B> {
+		void processBatch(B batch) throws SQLException;
+	}
+
+	// Categories and feeds read one after the other, null after the last one
+	@FunctionalInterface
+	private interface FeedCursor {
+		Store_QuiteRssFeed next() throws SQLException;
 	}
 
 
@@ -32,24 +49,53 @@ public class DatabaseManager implements AutoCloseable {
 	// ******************************************************************* Constants ********************************************************************
 	// **************************************************************************************************************************************************
 	private static final String LOAD_QUITERSS_FEEDS_QUERY = Miscellaneous.readFileFromResources("resources/load_quiterss_feeds.sql");
-	private static final String LOAD_QUITERSS_NEWS_QUERY = Miscellaneous.readFileFromResources("resources/load_quiterss_news.sql");
+	private static final String COUNT_QUITERSS_NEWS_QUERY = Miscellaneous.readFileFromResources("resources/count_quiterss_news.sql");
+	private static final String COUNT_QUITERSS_FEEDS_QUERY = "SELECT COUNT(*) FROM feeds WHERE id > ?";
+	private static final String LOAD_QUITERSS_FEED_IDS_QUERY = Miscellaneous.readFileFromResources("resources/load_quiterss_feed_ids.sql");
+	private static final String ARTICLE_ID_RANGE_QUERY = "SELECT COALESCE(MIN(id), 1), COALESCE(MAX(id), 0) FROM news";
 	private static final String INSERT_RSSGUARD_CATEGORIES_QUERY = Miscellaneous.readFileFromResources("resources/insert_rssguard_categories.sql");
 	private static final String INSERT_RSSGUARD_FEEDS_QUERY = Miscellaneous.readFileFromResources("resources/insert_rssguard_feeds.sql");
 	private static final String INSERT_RSSGUARD_MESSAGES_QUERY = Miscellaneous.readFileFromResources("resources/insert_rssguard_messages.sql");
 
+	private static final String JDBC_SQLITE_PREFIX = "jdbc:sqlite:";
+
 	private static final int FEED_BATCH_SIZE = 2000;  // Process feeds in chunks of 2000
-	private static final int ARTICLE_BATCH_SIZE = 5000; // Process articles in chunks of 5000
+	private static final int ARTICLE_BATCH_SIZE = 5000; // First batch size, then adapted to the commit latency
 	private static final int INSERT_BATCH_SIZE = 2000;
+	static final int PIPELINE_QUEUE_CAPACITY = 4; // Article batches waiting between the reader and the writer
+	private static final int AUTHOR_CACHE_SIZE = 4096; // Distinct author names kept as shared instances per reader
+	private static final Duration PROGRESS_INTERVAL = Duration.ofSeconds(2);
 
 
 	// **************************************************************************************************************************************************
 	// ****************************************************************** Declarations ******************************************************************
 	// **************************************************************************************************************************************************
 	private final String quiteRSS_DB_URL;
+	private final List<String> quiteRSS_DB_URLs; // Several when merging QuiteRSS databases, the first one being quiteRSS_DB_URL
 	private final String rssGuard_DB_URL;
+	private final MigrationOptions options;
 	private Connection sourceConnection;
+	private final List<Connection> sourceConnections = new ArrayList<>(); // One per QuiteRSS database, sourceConnection first
+	private final IntIntMap[] sourceFeedIds; // RSSGuard id of every category & feed of each QuiteRSS database, when merging
+	private SourceIdMapping[] sourceMappings; // Known once the article ranges are planned, when merging
 	private Connection targetConnection;
 	private SqlitePragmaSettings originalPragmaSettings;
+	private MigrationCheckpoint checkpoint;
+	private BulkLoadSchema bulkLoadSchema;
+	private InEngineMigrator inEngine;
+	private ShadowDatabase shadow;
+	private NewsSnapshot snapshot; // Read in place of the QuiteRSS database, see NewsSnapshotWriter
+	private final AdaptiveBatchController batchController;
+	private final MigrationMetrics metrics = new MigrationMetrics();
+	private final ProgressReporter progress;
+	private final LongAdder feedsProcessed = new LongAdder();
+	private final List<ArticleTransform> transforms = new ArrayList<>();
+	private final List<MigrationSink> sinks = new ArrayList<>(); // The RSSGuard database first, then the exports of a full migration
+	private final FeedIconOptimizer iconOptimizer;
+	private final DuplicateArticleFilter duplicateFilter;
+
+	private volatile boolean stopRequested;
+	private final CountDownLatch closed = new CountDownLatch(1);
 
 	private List<String> migrationLog = new ArrayList<>();
 	private Duration totalElapsedTime = Duration.ZERO;
@@ -61,8 +107,43 @@ public class DatabaseManager implements AutoCloseable {
 	// ****************************************************************** Constructors ******************************************************************
 	// **************************************************************************************************************************************************
 	public DatabaseManager(String quiteRSS_DB_URL, String rssGuard_DB_URL) throws SQLException, ClassNotFoundException {
-		this.quiteRSS_DB_URL = quiteRSS_DB_URL;
+		this(quiteRSS_DB_URL, rssGuard_DB_URL, new MigrationOptions());
+	}
+
+
+	public DatabaseManager(String quiteRSS_DB_URL, String rssGuard_DB_URL, MigrationOptions options) throws SQLException, ClassNotFoundException {
+		this(List.of(quiteRSS_DB_URL), rssGuard_DB_URL, options);
+	}
+
+
+	/**
+	 * @param quiteRSS_DB_URLs QuiteRSS databases to migrate. Several of them are merged into the RSSGuard database by a
+	 *                         full migration, their categories, feeds and articles moved to new ids (see
+	 *                         {@link SourceIdMapping}) and their articles read in parallel.
+	 */
+	public DatabaseManager(List<String> quiteRSS_DB_URLs, String rssGuard_DB_URL, MigrationOptions options) throws SQLException, ClassNotFoundException {
+		this.quiteRSS_DB_URL = quiteRSS_DB_URLs.get(0);
+		this.quiteRSS_DB_URLs = List.copyOf(quiteRSS_DB_URLs);
 		this.rssGuard_DB_URL = rssGuard_DB_URL;
+		this.options = options;
+		this.sourceFeedIds = isMerging() ? new IntIntMap[quiteRSS_DB_URLs.size()] : null;
+		this.batchController = new AdaptiveBatchController(options.getBatchSize() > 0 ? options.getBatchSize() : ARTICLE_BATCH_SIZE,
+				options.getBatchSize() == 0, options.getCommitLatency(), options.getBatchByteBudget());
+		this.progress = new ProgressReporter(PROGRESS_INTERVAL, options.isQuiet(), System.out);
+		sinks.add(new RssGuardSink());
+
+		this.duplicateFilter = options.getDedupScope() != null ? new DuplicateArticleFilter(options.getDedupScope()) : null;
+		if (duplicateFilter != null)
+			transforms.add(duplicateFilter); // First: the other transforms need not process skipped articles
+		if (options.isExtractImages()) {
+			Path targetPath = getTargetDatabasePath();
+			transforms.add(new Base64ImageExtractor(options.getImageDirectory() != null ? options.getImageDirectory()
+					: targetPath.resolveSibling(targetPath.getFileName() + ".images")));
+		}
+		if (options.getSlimHtmlThreads() > 0)
+			transforms.add(new HtmlSlimmer(options.getSlimHtmlThreads())); // After the extractor, so it scans descriptions without their base64 text
+		this.iconOptimizer = options.getIconSize() > 0 ? new FeedIconOptimizer(options.getIconSize(), Runtime.getRuntime().availableProcessors()) : null;
+
 		configureConnections();
 	}
 
@@ -74,6 +155,15 @@ public class DatabaseManager implements AutoCloseable {
 
 		Class.forName("org.sqlite.JDBC");
 
+		String targetUrl = rssGuard_DB_URL;
+		if (options.isShadow()) {
+			// Unsafe settings below only ever apply to the copy, the original is replaced once the copy is complete
+			shadow = new ShadowDatabase(getTargetDatabasePath());
+			shadow.prepare(options.isResume());
+			targetUrl = JDBC_SQLITE_PREFIX + shadow.getPath();
+			System.out.println("RSS Guard\t: Migrating into the shadow copy " + shadow.getPath());
+		}
+
 		// Store original values BEFORE changing them
 		try (Connection tempConn = DriverManager.getConnection(rssGuard_DB_URL)) {
 			this.originalPragmaSettings = readCurrentPragmaSettings(tempConn);
@@ -81,31 +171,34 @@ public class DatabaseManager implements AutoCloseable {
 
 
 		// For better migration performance
-		SQLiteConfig sourceConfig = new SQLiteConfig();
-		sourceConfig.setReadOnly(true);
-		sourceConfig.setPragma(SQLiteConfig.Pragma.CACHE_SIZE, "20000");
-		sourceConfig.setPragma(SQLiteConfig.Pragma.TEMP_STORE, "MEMORY");
-		sourceConfig.setPragma(SQLiteConfig.Pragma.BUSY_TIMEOUT, "30000");
+		SQLiteConfig sourceConfig = createSourceConfig();
 
 
-		// For better migration performance
+		// Profile settings: the turbo default runs without journal nor synchronous writes, and can corrupt the database if the system crashes
 		SQLiteConfig targetConfig = new SQLiteConfig();
-		targetConfig.enforceForeignKeys(true);
-		targetConfig.setPragma(SQLiteConfig.Pragma.CACHE_SIZE, "20000");
-		targetConfig.setPragma(SQLiteConfig.Pragma.PAGE_SIZE, "4096");
-		targetConfig.setPragma(SQLiteConfig.Pragma.TEMP_STORE, "MEMORY");
-		targetConfig.setPragma(SQLiteConfig.Pragma.LOCKING_MODE, "EXCLUSIVE");
-		targetConfig.setPragma(SQLiteConfig.Pragma.BUSY_TIMEOUT, "30000");
+		targetConfig.enforceForeignKeys(!options.isBulkLoad()); // Checked once at the end of a bulk load
+		PragmaProfile.configure(targetConfig, options.getTargetPragmas());
 
-		// Only use these settings during migration of non-critical data
-		targetConfig.setPragma(SQLiteConfig.Pragma.SYNCHRONOUS, "OFF"); // Most dangerous but fastest & can corrupt database if system crashes
-		targetConfig.setPragma(SQLiteConfig.Pragma.JOURNAL_MODE, "OFF"); // More aggressive than MEMORY & removes crash protection completely
-		// config.setPragma(SQLiteConfig.Pragma.JOURNAL_MODE, "MEMORY");
 
 
-
-		sourceConnection = DriverManager.getConnection(quiteRSS_DB_URL, sourceConfig.toProperties());
-		targetConnection = DriverManager.getConnection(rssGuard_DB_URL, targetConfig.toProperties());
+		if (NewsSnapshot.isSnapshot(getSourceDatabasePath())) {
+			try {
+				snapshot = NewsSnapshot.open(getSourceDatabasePath());
+			} catch (IOException e) {
+				throw new SQLException("Cannot open the snapshot: " + e.getMessage(), e);
+			}
+			System.out.println("QuiteRSS\t: Reading the snapshot " + getSourceDatabasePath());
+		} else {
+			for (String url : quiteRSS_DB_URLs)
+				sourceConnections.add(DriverManager.getConnection(url, sourceConfig.toProperties()));
+			sourceConnection = sourceConnections.get(0);
+		}
+		targetConnection = DriverManager.getConnection(targetUrl, targetConfig.toProperties());
+		PragmaProfile.applyConnectionPragmas(targetConnection, options.getTargetPragmas());
+		applyPageSize(options.getTargetPragmas().get("page_size"));
+		metrics.setPragmas(options.getPragmaProfile().label(), options.getSourcePragmas(), options.getTargetPragmas());
+		checkpoint = new MigrationCheckpoint(targetConnection);
+		bulkLoadSchema = new BulkLoadSchema(targetConnection);
 
 		//		try (Statement stmt = targetConnection.createStatement()) {
 		//			stmt.execute("PRAGMA optimize"); // Initial optimization
@@ -114,6 +207,40 @@ public class DatabaseManager implements AutoCloseable {
 
 
 
+	/**
+	 * Settings of every connection reading the QuiteRSS database, including the extra connections of sharded reads.
+	 */
+	private SQLiteConfig createSourceConfig() {
+		SQLiteConfig sourceConfig = new SQLiteConfig();
+		sourceConfig.setReadOnly(true);
+		return PragmaProfile.configure(sourceConfig, options.getSourcePragmas());
+	}
+
+
+	/**
+	 * Gives an RSSGuard database without articles the page size of the profile before anything is loaded. SQLite only
+	 * changes the page size of an existing file by rebuilding it with {@code VACUUM}, which is instant while empty and
+	 * not possible in WAL mode. Databases already holding articles keep their page size.
+	 */
+	private void applyPageSize(String pageSize) throws SQLException {
+		if (pageSize == null || options.isResume() || options.isDelta() || queryLong("PRAGMA page_size") == Long.parseLong(pageSize)
+				|| queryLong("SELECT EXISTS (SELECT 1 FROM Messages)") != 0)
+			return;
+
+		try (Statement stmt = targetConnection.createStatement()) {
+			boolean wal = "WAL".equalsIgnoreCase(options.getTargetPragmas().get("journal_mode"));
+			if (wal)
+				stmt.execute("PRAGMA journal_mode = DELETE");
+			stmt.execute("PRAGMA page_size = " + pageSize);
+			stmt.execute("VACUUM");
+			if (wal)
+				stmt.execute("PRAGMA journal_mode = WAL");
+		}
+		System.out.println("RSS Guard\t: Empty database rebuilt with pages of " + queryLong("PRAGMA page_size") + " bytes");
+	}
+
+
+
 	// **************************************************************************************************************************************************
 	// ******************************************************************** Methods *********************************************************************
 	// **************************************************************************************************************************************************
@@ -121,39 +248,167 @@ public class DatabaseManager implements AutoCloseable {
 
 		try {
 			lastOperationStartTime = Instant.now();
+			metrics.start("migration");
+			openCheckpoint();
+			for (Path exportPath : options.getExportPaths())
+				sinks.add(new NdjsonExportSink(exportPath));
+
+			if (options.isBulkLoad()) {
+				int deferred = bulkLoadSchema.suspend();
+				if (deferred > 0)
+					System.out.println("RSS Guard\t: " + deferred + " index(es) & trigger(s) deferred until the end of the load");
+			}
+
+			if (options.isInEngine())
+				inEngine = new InEngineMigrator(targetConnection, getSourceDatabasePath());
 
 			// --------------------------
 			// Categories & Feeds
 			// --------------------------
-			System.out.println("QuiteRSS\t: Retrieving Categories & Feeds ...");
-			processFeedsInBatches(this::insertCategoriesAndFeeds);
-			logElapsedTime("  - %s ms\t: Categories & Feeds processed.", -1);
+			if (checkpoint.isFeedPhaseDone()) {
+				System.out.println("QuiteRSS\t: Categories & Feeds already migrated, skipping ...");
+				if (isMerging())
+					for (int source = 0; source < sourceFeedIds.length; source++)
+						sourceFeedIds[source] = checkpoint.getFeedIds(source);
+			} else {
+				System.out.println("QuiteRSS\t: Retrieving Categories & Feeds ...");
+				processFeedPhase(Long.MIN_VALUE);
+				logElapsedTime("  - %s ms\t: Categories & Feeds processed.", -1);
+				if (iconOptimizer != null)
+					migrationLog.add(iconOptimizer.describe());
+			}
 
 			// --------------------------
 			// Articles
 			// --------------------------
 			System.out.println("QuiteRSS\t: Retrieving articles ...");
-			processArticlesInBatches(this::insertArticles);
-			logElapsedTime("  - %s ms\t: Articles processed.", -1);
+			Instant articlesStartTime = Instant.now();
+			long[] bounds = planArticleRanges();
+			long articles;
+
+			long[] fromIds = new long[bounds.length - 1];
+			for (int range = 0; range < fromIds.length; range++)
+				fromIds[range] = checkpoint.getArticleResumeId(range);
+			long[] toIds = Arrays.copyOfRange(bounds, 1, bounds.length);
+			if (sourceMappings != null) {
+				for (int range = 0; range < fromIds.length; range++) { // Back to the ids of each QuiteRSS database
+					fromIds[range] -= sourceMappings[range].articleOffset();
+					toIds[range] -= sourceMappings[range].articleOffset();
+				}
+			}
+			long articleCount = countArticles(fromIds, toIds);
+			if (duplicateFilter != null) {
+				if (options.isResume())
+					duplicateFilter.seed(targetConnection); // Articles written before the interruption
+				duplicateFilter.expect(articleCount);
+			}
+			progress.startPhase("articles", articleCount, this::getArticlesDone, inEngine != null ? null : metrics::getArticleBytes);
+
+			if (inEngine != null) {
+				articles = processArticlesInEngine(fromIds, toIds);
+				logElapsedTime("  - %s ms\t: Articles processed (in-engine).", -1);
+				migrationLog.add(batchController.describe());
+				inEngine.close();
+				inEngine = null;
+			} else if (options.isPipelined() || bounds.length > 2) {
+				articles = processArticlesPipelined(fromIds, toIds);
+			} else {
+				long allocatedBefore = Miscellaneous.currentThreadAllocatedBytes();
+				articles = processArticlesInBatches(transformed(this::writeArticles), 0, fromIds[0], toIds[0]);
+				logElapsedTime("  - %s ms\t: Articles processed.", -1);
+				migrationLog.add(batchController.describe());
+				logAllocation("read & written", Miscellaneous.currentThreadAllocatedBytes() - allocatedBefore, articles);
+			}
+
+			progress.finishPhase();
+			if (snapshot != null)
+				migrationLog.add(snapshot.describe());
+			transforms.forEach(transform -> migrationLog.add(transform.describe()));
+			Duration articlesElapsedTime = Duration.between(articlesStartTime, Instant.now());
+
+			if (stopRequested) {
+				migrationLog.add(0, String.format("Migration interrupted after %d articles, run again with --resume to continue.", articles));
+				return migrationLog;
+			}
 
 			// --------------------------
-			// Vacuum
+			// Exports
 			// --------------------------
-			try (Statement stmt = targetConnection.createStatement()) {
-				// First run optimization analysis
-				// stmt.execute("PRAGMA optimize");
-				// logElapsedTime("  - %s ms\t: RSS Guard database optimization analysis completed", -1);
+			if (sinks.size() > 1) {
+				System.out.println("Exports\t: Completing " + (sinks.size() - 1) + " export(s) ...");
+				for (MigrationSink sink : sinks)
+					sink.finish();
+				logElapsedTime("  - %s ms\t: Exports synced and renamed.", -1);
+				sinks.forEach(sink -> migrationLog.add(sink.describe()));
+			}
+
+			// --------------------------
+			// Deferred indexes & foreign keys
+			// --------------------------
+			boolean suspended = bulkLoadSchema.isSuspended(); // Also after resuming a bulk load without --bulk-load
+			if (suspended || options.isBulkLoad()) {
+				System.out.println("RSS Guard\t: Rebuilding indexes & checking foreign keys ...");
+				int rebuilt = suspended ? bulkLoadSchema.restore() : 0;
+				bulkLoadSchema.checkForeignKeys();
+				logElapsedTime("  - %s ms\t: %d index(es) & trigger(s) rebuilt, foreign keys checked.", rebuilt);
+			}
 
-				// Then perform vacuum
-				stmt.execute("VACUUM");
-				logElapsedTime("  - %s ms\t: RSS Guard database vacuum completed", -1);
+			// --------------------------
+			// Verification
+			// --------------------------
+			if (options.isVerify() && snapshot != null)
+				migrationLog.add("  - Verification\t: skipped, the articles were read from a snapshot and not from QuiteRSS");
+			else if (options.isVerify())
+				verifyMigration();
+
+			validateMigration("Migration");
+			checkpoint.markCompleted(queryLong("SELECT COALESCE(MAX(id), 0) FROM Messages"));
+
+			// --------------------------
+			// Statistics & compaction
+			// --------------------------
+			PostLoadCompactor compactor = new PostLoadCompactor(targetConnection, shadow != null ? shadow.getPath() : getTargetDatabasePath(),
+					options.getCompactMode());
+			try {
+				System.out.println("RSS Guard\t: Analyzing & measuring the database ...");
+				long compactStart = System.nanoTime();
+				compactor.optimize();
+				compactor.compact();
+				metrics.record(MigrationMetrics.Stage.COMPACTION, System.nanoTime() - compactStart);
+				logElapsedTime("  - %s ms\t: RSS Guard database analyzed and compacted as needed", -1);
+				migrationLog.add(compactor.describe());
 			} catch (SQLException e) {
 				System.err.println("RSS Guard database optimization failed : " + e.getMessage());
 				migrationLog.add("  - WARNING: Database optimization failed: " + e.getMessage());
 			}
 
-			validateMigration();
+			// The connection goes before its file is replaced, its pragmas first: restored by close() otherwise
+			if (compactor.isRebuilt() || shadow != null) {
+				restoreOriginalPragmaSettings(targetConnection);
+				targetConnection.close();
+			}
+
+			if (compactor.isRebuilt()) {
+				try {
+					compactor.swap(originalPragmaSettings != null ? originalPragmaSettings.journalMode() : "DELETE");
+					logElapsedTime("  - %s ms\t: Compacted copy synced and renamed over the RSS Guard database.", -1);
+				} catch (SQLException | IOException e) {
+					System.err.println("RSS Guard database compaction failed : " + e.getMessage());
+					migrationLog.add("  - WARNING: Compacted copy not swapped in, the database is complete but not compacted: " + e.getMessage());
+				}
+			}
+
+			// --------------------------
+			// Shadow copy
+			// --------------------------
+			if (shadow != null) {
+				System.out.println("RSS Guard\t: Syncing, checking and swapping in the shadow copy ...");
+				shadow.swap();
+				logElapsedTime("  - %s ms\t: Shadow copy synced, checked and renamed over the RSS Guard database.", -1);
+			}
+
 			migrationLog.add(1, "Operation details :");
+			logRunSummary(articles, articlesElapsedTime);
 
 
 
@@ -161,98 +416,723 @@ public class DatabaseManager implements AutoCloseable {
 
 		} catch (SQLException e) {
 			throw new Exception("Database migration failed", e);
+		} finally {
+			finishRun();
 		}
 
 	}
 
 
-	private void processFeedsInBatches(BatchProcessor<Store_QuiteRssFeed> processor) throws SQLException {
+	/**
+	 * Brings an RSSGuard database filled by an earlier full migration up to date with QuiteRSS: new categories and
+	 * feeds, flag changes of the articles already copied and the articles received since the last run. The cost
+	 * depends on what changed since, not on the size of the history. Nothing is deleted from RSSGuard: articles deleted
+	 * in QuiteRSS are moved to its recycle bin.
+	 * <p>
+	 * Every step commits its own watermark, so an interrupted delta sync is simply run again.
+	 */
+	public List<String> performDeltaSync() throws Exception {
+
+		try {
+			lastOperationStartTime = Instant.now();
+			metrics.start("delta");
+
+			if (!checkpoint.load())
+				throw new SQLException("RSS Guard database holds no migration checkpoint, run a full migration first");
 
-		try (PreparedStatement stmt = sourceConnection.prepareStatement(LOAD_QUITERSS_FEEDS_QUERY);
-				ResultSet rs = stmt.executeQuery()) {
+			if (!checkpoint.isCompleted())
+				throw new SQLException("RSS Guard database holds an interrupted migration, run it again with --resume first");
 
-			List<Store_QuiteRssFeed> batch = new ArrayList<>(FEED_BATCH_SIZE);
-			int totalProcessed = 0;
+			if (checkpoint.getSourceCount() > 1)
+				throw new SQLException("RSS Guard database was merged from several QuiteRSS databases, delta sync only follows a single one");
 
-			while (rs.next()) {
-				batch.add(new Store_QuiteRssFeed(
-						rs.getInt("rowToParent"),
-						rs.getInt("parentId"),
-						rs.getInt("id"),
-						stripToEmpty(rs.getString("text")),
-						stripToEmpty(rs.getString("description")),
-						Miscellaneous.convertToTimestamp(rs.getString("created")),
-						stripToEmpty(rs.getString("xmlUrl")),
-						rs.getBytes("image"),
-						rs.getInt("disableUpdate"),
-						rs.getInt("layoutDirection"),
-						rs.getInt("addSingleNewsAnyDateOn")
-						));
+			// Databases migrated before the watermarks were recorded: nothing has been added to them since
+			long syncedFeedId = checkpoint.getSyncedFeedId() != MigrationCheckpoint.UNKNOWN_ID ? checkpoint.getSyncedFeedId()
+					: queryLong("SELECT COALESCE(MAX(id), 0) FROM (SELECT id FROM Feeds UNION ALL SELECT id FROM Categories)");
+			long baseArticleId = checkpoint.getBaseArticleId() != MigrationCheckpoint.UNKNOWN_ID ? checkpoint.getBaseArticleId()
+					: queryLong("SELECT COALESCE(MAX(id), 0) FROM Messages");
+			long syncedArticleId = checkpoint.getSyncedArticleId() != MigrationCheckpoint.UNKNOWN_ID ? checkpoint.getSyncedArticleId() : baseArticleId;
 
-				if (batch.size() >= FEED_BATCH_SIZE) {
-					processor.processBatch(batch);
-					totalProcessed += batch.size();
-					System.out.printf("Processed %d feeds...%n", totalProcessed);
-					batch.clear();
+			// --------------------------
+			// Categories & Feeds
+			// --------------------------
+			System.out.println("QuiteRSS\t: Retrieving new Categories & Feeds ...");
+			int feeds = processFeedPhase(syncedFeedId);
+			logElapsedTime("  - %s ms\t: %d new Categories & Feeds processed.", feeds);
+			if (iconOptimizer != null)
+				migrationLog.add(iconOptimizer.describe());
+
+			// --------------------------
+			// Changed articles
+			// --------------------------
+			System.out.println("QuiteRSS\t: Comparing articles up to id " + syncedArticleId + " ...");
+			NewsReconciler reconciler = new NewsReconciler(sourceConnection, targetConnection, baseArticleId, syncedArticleId);
+			reconciler.setTransforms(transforms); // Also for restored articles, which a --dedup run may have skipped on purpose
+			reconciler.prepare();
+			if (duplicateFilter != null)
+				duplicateFilter.seed(targetConnection);
+
+			List<Integer> changedFeeds = reconciler.findChangedFeeds();
+			LongAdder reconciledFeeds = new LongAdder();
+			progress.startPhase("reconcile", changedFeeds.size(), reconciledFeeds::sum, null);
+
+			for (int feedId : changedFeeds) {
+				if (stopRequested)
+					break;
+				reconcileFeed(reconciler, feedId);
+				reconciledFeeds.increment();
+			}
+
+			progress.finishPhase();
+
+			logElapsedTime("  - %s ms\t: Articles of %d changed feed(s) reconciled.", changedFeeds.size());
+			migrationLog.add(String.format("  - Changed articles\t: %d flag update(s), %d deleted, %d restored",
+					reconciler.getUpdatedCount(), reconciler.getDeletedCount(), reconciler.getRestoredCount()));
+
+			// --------------------------
+			// New articles
+			// --------------------------
+			long articles = 0;
+			if (!stopRequested) {
+				System.out.println("QuiteRSS\t: Retrieving new articles ...");
+				progress.startPhase("articles", countArticles(new long[] { syncedArticleId + 1 }, new long[] { Long.MAX_VALUE }),
+						this::getArticlesDone, metrics::getArticleBytes);
+				articles = processArticlesInBatches(transformed(batch -> insertNewArticles(reconciler, batch)), 0, syncedArticleId + 1, Long.MAX_VALUE);
+				progress.finishPhase();
+				transforms.forEach(transform -> migrationLog.add(transform.describe()));
+				logElapsedTime("  - %s ms\t: %d new articles processed.", (int) articles);
+				migrationLog.add(batchController.describe());
+			}
+
+			if (stopRequested) {
+				migrationLog.add(0, "Delta sync interrupted, run it again to continue.");
+				return migrationLog;
+			}
+
+			new PostLoadCompactor(targetConnection, getTargetDatabasePath(), PostLoadCompactor.Mode.SKIP).optimize(); // Statistics only, never a rewrite
+			validateMigration("Delta sync");
+			migrationLog.add(1, "Operation details :");
+
+			return migrationLog;
+
+		} catch (SQLException e) {
+			throw new Exception("Delta sync failed", e);
+		} finally {
+			finishRun();
+		}
+	}
+
+
+	/**
+	 * Asks a running migration to stop after the batches already read, typically from a shutdown hook. Every committed
+	 * batch is covered by the checkpoint, so a later {@code --resume} run continues from there.
+	 *
+	 * @return {@code false} when this manager is already closed and there is nothing left to stop.
+	 */
+	public boolean requestStop() {
+		stopRequested = true;
+		return closed.getCount() > 0;
+	}
+
+
+	/**
+	 * Waits until {@link #close()} has restored the RSSGuard database settings and released both connections.
+	 *
+	 * @return {@code false} if the timeout elapsed first.
+	 */
+	public boolean awaitClose(Duration timeout) throws InterruptedException {
+		return closed.await(timeout.toMillis(), TimeUnit.MILLISECONDS);
+	}
+
+
+	/**
+	 * A new run requires an RSSGuard database without checkpoint, a resumed run one left by an interrupted migration.
+	 * Before resuming a run that wrote without journal, the file is checked for damage from an unclean stop.
+	 */
+	private void openCheckpoint() throws SQLException {
+		boolean exists = checkpoint.load();
+
+		if (!options.isResume()) {
+			if (exists)
+				throw new SQLException(checkpoint.isCompleted()
+						? "RSS Guard database already holds a completed migration"
+						: "RSS Guard database holds an interrupted migration, run again with --resume to continue it");
+
+			checkpoint.create();
+			return;
+		}
+
+		if (!exists)
+			throw new SQLException("RSS Guard database holds no migration checkpoint, there is nothing to resume");
+
+		if (checkpoint.isCompleted())
+			throw new SQLException("RSS Guard database already holds a completed migration, there is nothing to resume");
+
+		if (checkpoint.getSourceCount() != quiteRSS_DB_URLs.size())
+			throw new SQLException("RSS Guard database holds an interrupted migration of " + checkpoint.getSourceCount()
+					+ " QuiteRSS database(s), resume it with the same databases in the same order");
+
+		try (Statement stmt = targetConnection.createStatement();
+				ResultSet rs = stmt.executeQuery("PRAGMA quick_check")) {
+			String result = rs.next() ? rs.getString(1) : "no result";
+			if (!"ok".equalsIgnoreCase(result))
+				throw new SQLException("RSS Guard database is damaged and cannot be resumed (" + result + "), start again from an empty database, preferably with --crash-safe");
+		}
+
+		migrationLog.add("  - Resumed from checkpoint");
+	}
+
+
+	/**
+	 * Migrates the categories and feeds with an id above {@code afterId} in one transaction, committed together with
+	 * the end of the phase and the new feed watermark in the checkpoint: after a crash they are either all present or
+	 * all absent.
+	 *
+	 * @return Number of categories and feeds migrated.
+	 */
+	private int processFeedPhase(long afterId) throws SQLException {
+		long feedCount = snapshot != null ? snapshot.countFeeds(afterId) : 0;
+		for (Connection connection : sourceConnections)
+			feedCount += querySourceLong(connection, COUNT_QUITERSS_FEEDS_QUERY, afterId);
+		progress.startPhase("feeds", feedCount, feedsProcessed::sum, null);
+
+		try {
+			targetConnection.setAutoCommit(false);
+
+			long[] lastId = { afterId };
+			int feeds;
+
+			if (inEngine != null) {
+				feeds = inEngine.copyCategoriesAndFeeds(afterId);
+				feedsProcessed.add(feeds);
+				lastId[0] = inEngine.lastFeedId(afterId);
+			} else if (isMerging()) {
+				feeds = processMergedFeeds(lastId);
+			} else {
+				feeds = processFeedsInBatches(sourceConnection, withOptimizedIcons(batch -> {
+					writeFeeds(batch);
+					for (Store_QuiteRssFeed feed : batch)
+						lastId[0] = Math.max(lastId[0], feed.id());
+				}), afterId);
+			}
+
+			checkpoint.markFeedPhaseDone();
+			checkpoint.recordSyncedFeedId(lastId[0]);
+			targetConnection.commit();
+			return feeds;
+		} catch (SQLException e) {
+			targetConnection.rollback();
+			throw e;
+		} finally {
+			targetConnection.setAutoCommit(true);
+			progress.finishPhase();
+		}
+	}
+
+
+	/**
+	 * Feed phase of a merge, in the transaction of {@link #processFeedPhase(long)}: the categories and feeds of every
+	 * QuiteRSS database, one database after the other. The first database keeps its ids, the others get the next free
+	 * ones in the order of their QuiteRSS ids. The ids given are kept in the checkpoint for a resumed run.
+	 *
+	 * @return Number of categories and feeds migrated.
+	 */
+	private int processMergedFeeds(long[] lastId) throws SQLException {
+		int feeds = 0;
+		int nextId = 1;
+
+		for (int source = 0; source < sourceConnections.size(); source++) {
+			IntIntMap feedIds = new IntIntMap(0);
+
+			try (Statement stmt = sourceConnections.get(source).createStatement();
+					ResultSet rs = stmt.executeQuery(LOAD_QUITERSS_FEED_IDS_QUERY)) {
+				while (rs.next()) {
+					int id = rs.getInt(1);
+					feedIds.put(id, source == 0 ? id : nextId++);
+					if (source == 0)
+						nextId = Math.max(nextId, id + 1);
+				}
+			}
+
+			SourceIdMapping mapping = new SourceIdMapping(feedIds, 0);
+			feeds += processFeedsInBatches(sourceConnections.get(source), withOptimizedIcons(batch -> {
+				batch.replaceAll(mapping::apply);
+				writeFeeds(batch);
+				for (Store_QuiteRssFeed feed : batch)
+					lastId[0] = Math.max(lastId[0], feed.id());
+			}), Long.MIN_VALUE);
+
+			checkpoint.recordFeedIds(source, feedIds);
+			sourceFeedIds[source] = feedIds;
+		}
+
+		checkpoint.recordSourceCount(sourceConnections.size());
+		return feeds;
+	}
+
+
+	/**
+	 * Splits {@code news} into one key range per shard on a new run, or returns the ranges of the interrupted run when
+	 * resuming. The last range is open-ended, so articles received while migrating are picked up too.
+	 */
+	private long[] planArticleRanges() throws SQLException {
+		if (isMerging())
+			return planMergedArticleRanges();
+
+		long[] bounds = checkpoint.getArticleRangeBounds();
+
+		if (bounds != null) {
+			if (bounds.length - 1 != options.getShards())
+				System.out.println("QuiteRSS\t: Resuming with the " + (bounds.length - 1) + " key range(s) of the interrupted run");
+			return bounds;
+		}
+
+		bounds = snapshot != null ? new long[] { snapshot.getFirstId(), 0 } : ShardedNewsReader.splitKeyRange(sourceConnection, options.getShards());
+		bounds[bounds.length - 1] = Long.MAX_VALUE;
+		checkpoint.startArticleRanges(bounds);
+		return bounds;
+	}
+
+
+	/**
+	 * One key range per QuiteRSS database when merging, in the RSSGuard id space: the articles of database {@code i},
+	 * from id 1 to its highest id when the merge started, are shifted to follow those of the databases before it.
+	 * Articles received later are not merged, they would take the ids of the next database.
+	 */
+	private long[] planMergedArticleRanges() throws SQLException {
+		long[] bounds = checkpoint.getArticleRangeBounds();
+
+		if (bounds == null) {
+			bounds = new long[sourceConnections.size() + 1];
+			bounds[0] = 1;
+
+			for (int source = 0; source < sourceConnections.size(); source++) {
+				try (Statement stmt = sourceConnections.get(source).createStatement();
+						ResultSet rs = stmt.executeQuery(ARTICLE_ID_RANGE_QUERY)) {
+					rs.next();
+					if (rs.getLong(1) < 1)
+						throw new SQLException("QuiteRSS database " + (source + 1) + " holds article ids below 1, it cannot be merged");
+
+					bounds[source + 1] = bounds[source] + rs.getLong(2);
 				}
 			}
 
-			// Process remaining items in last batch
-			if (!batch.isEmpty()) {
+			if (bounds[bounds.length - 1] - 1 > Integer.MAX_VALUE)
+				throw new SQLException("The merged QuiteRSS databases hold more article ids than RSS Guard can store");
+
+			checkpoint.startArticleRanges(bounds);
+		}
+
+		sourceMappings = new SourceIdMapping[sourceConnections.size()];
+		for (int source = 0; source < sourceMappings.length; source++)
+			sourceMappings[source] = new SourceIdMapping(sourceFeedIds[source], (int) (bounds[source] - 1));
+
+		return bounds;
+	}
+
+
+	/**
+	 * @return Number of categories and feeds with an id above {@code afterId} handed to {@code processor}.
+	 */
+	private int processFeedsInBatches(Connection source, BatchProcessor<List<Store_QuiteRssFeed>> processor, long afterId) throws SQLException {
+		if (snapshot != null) {
+			Iterator<Store_QuiteRssFeed> feeds = snapshot.loadFeeds(afterId).iterator();
+			return processFeedsInBatches(() -> feeds.hasNext() ? feeds.next() : null, processor);
+		}
+
+		try (PreparedStatement stmt = source.prepareStatement(LOAD_QUITERSS_FEEDS_QUERY)) {
+			stmt.setLong(1, afterId);
+			try (ResultSet rs = stmt.executeQuery()) {
+				return processFeedsInBatches(() -> rs.next() ? readFeed(rs) : null, processor);
+			}
+		}
+	}
+
+
+	private int processFeedsInBatches(FeedCursor feeds, BatchProcessor<List<Store_QuiteRssFeed>> processor) throws SQLException {
+		List<Store_QuiteRssFeed> batch = new ArrayList<>(FEED_BATCH_SIZE);
+		long batchBytes = 0;
+		int totalProcessed = 0;
+
+		for (Store_QuiteRssFeed feed = feeds.next(); feed != null; feed = feeds.next()) {
+			batch.add(feed);
+			batchBytes += feedByteSize(feed);
+
+			// Icons make some feeds much larger than others, the byte budget keeps the batch bounded anyway
+			if (batch.size() >= FEED_BATCH_SIZE || batchBytes >= batchController.getByteBudget()) {
 				processor.processBatch(batch);
 				totalProcessed += batch.size();
-				System.out.printf("Finished processing %d total feeds.%n", totalProcessed);
+				feedsProcessed.add(batch.size());
+				batch.clear();
+				batchBytes = 0;
+			}
+		}
+
+		// Process remaining items in last batch
+		if (!batch.isEmpty()) {
+			processor.processBatch(batch);
+			totalProcessed += batch.size();
+			feedsProcessed.add(batch.size());
+		}
+
+		return totalProcessed;
+	}
+
+
+	/**
+	 * Reads the articles of key range {@code range}, from {@code fromId} (inclusive) to {@code toId} (exclusive), in
+	 * keyset pages of {@link MigrationOptions#getPageSize()} rows. Batches are handed over when the
+	 * {@link AdaptiveBatchController} considers them complete.
+	 *
+	 * @return Number of articles handed to {@code processor}.
+	 */
+	private long processArticlesInBatches(BatchProcessor<ArticleBatch> processor, int range, long fromId, long toId) throws SQLException {
+		if (snapshot != null)
+			return processSnapshotArticles(processor, fromId, toId);
+
+		KeysetNewsReader reader = new KeysetNewsReader(sourceConnection, options.getPageSize(), options.getFetchSize());
+		ArticleBatch batch = new ArticleBatch(AdaptiveBatchController.MAX_ROWS);
+		batch.setRange(range);
+		StringCache authors = new StringCache(AUTHOR_CACHE_SIZE);
+		MigrationMetrics.ReaderClock clock = metrics.newReaderClock(reader::getReadNanos);
+		long[] totalProcessed = { 0 };
+
+		reader.read(fromId, toId, () -> stopRequested, rs -> {
+			long start = System.nanoTime();
+			readArticle(rs, batch, authors);
+			clock.addDecode(System.nanoTime() - start);
+
+			if (batchController.isComplete(batch)) {
+				clock.batchHandedOver();
+				processor.processBatch(batch);
+				totalProcessed[0] += batch.size();
+				batch.clear();
+			}
+		});
+
+		// Process remaining items in last batch
+		if (!batch.isEmpty()) {
+			clock.batchHandedOver();
+			processor.processBatch(batch);
+			totalProcessed[0] += batch.size();
+		}
+
+		return totalProcessed[0];
+	}
+
+
+	/**
+	 * {@link #processArticlesInBatches(BatchProcessor, int, long, long)} reading the snapshot: the articles are decoded
+	 * from the mapped columns straight into the batch, without SQL nor result set.
+	 */
+	private long processSnapshotArticles(BatchProcessor<ArticleBatch> processor, long fromId, long toId) throws SQLException {
+		ArticleBatch batch = new ArticleBatch(AdaptiveBatchController.MAX_ROWS);
+		MigrationMetrics.ReaderClock clock = metrics.newReaderClock(snapshot::getReadNanos);
+		long[] totalProcessed = { 0 };
+
+		snapshot.read(fromId, toId, () -> stopRequested, batch, () -> {
+			if (batchController.isComplete(batch)) {
+				clock.batchHandedOver();
+				processor.processBatch(batch);
+				totalProcessed[0] += batch.size();
+				batch.clear();
 			}
+		});
+
+		// Process remaining items in last batch
+		if (!batch.isEmpty()) {
+			clock.batchHandedOver();
+			processor.processBatch(batch);
+			totalProcessed[0] += batch.size();
 		}
+
+		return totalProcessed[0];
 	}
 
 
-	private void processArticlesInBatches(BatchProcessor<Store_QuiteRSS> processor) throws SQLException {
-		try (PreparedStatement stmt = sourceConnection.prepareStatement(LOAD_QUITERSS_NEWS_QUERY);
-				ResultSet rs = stmt.executeQuery()) {
+	/**
+	 * Runs the article phase with the reader on the current thread and {@link #writeArticles(ArticleBatch)} on a writer thread,
+	 * so both database files are busy at the same time. With more than one shard the reading is spread over several
+	 * source connections and threads, all feeding the same writer. The stall time of each stage is added to the
+	 * migration log.
+	 *
+	 * @return Number of articles migrated from the ranges {@code [fromIds[i], toIds[i])}.
+	 */
+	private long processArticlesPipelined(long[] fromIds, long[] toIds) throws SQLException {
+		int shards = fromIds.length;
+
+		try (BatchPipeline<ArticleBatch> pipeline = new BatchPipeline<>("rssguard-article-writer", PIPELINE_QUEUE_CAPACITY * shards,
+				() -> new ArticleBatch(AdaptiveBatchController.MAX_ROWS), (source, target) -> target.copyFrom(source), this::writeArticles)) {
+
+			long articles;
+			long readerAllocatedBytes;
+
+			if (shards > 1) {
+				ShardedNewsReader reader = new ShardedNewsReader(quiteRSS_DB_URLs, createSourceConfig(), options.getPageSize(), options.getFetchSize(),
+						batchController, AUTHOR_CACHE_SIZE, metrics, () -> stopRequested);
+				articles = reader.read(remapped(transformed(pipeline)), fromIds, toIds);
+				readerAllocatedBytes = reader.getAllocatedBytes();
+			} else {
+				long allocatedBefore = Miscellaneous.currentThreadAllocatedBytes();
+				articles = processArticlesInBatches(transformed(pipeline), 0, fromIds[0], toIds[0]);
+				readerAllocatedBytes = Miscellaneous.currentThreadAllocatedBytes() - allocatedBefore;
+			}
 
-			List<Store_QuiteRSS> batch = new ArrayList<>(ARTICLE_BATCH_SIZE);
-			int totalProcessed = 0;
+			pipeline.finish();
+			logElapsedTime("  - %s ms\t: Articles processed (" + (isMerging() ? shards + " merged databases" : shards > 1 ? shards + " shards" : "pipelined") + ").", -1);
+			migrationLog.add(pipeline.describeStalls());
+			migrationLog.add(batchController.describe());
+			// Batches waiting in the queue, owned by each reader and by the writer, and pooled copies for each of them
+			migrationLog.add(String.format("  - Batch memory\t: at most %d batch(es) of %s in flight",
+					PIPELINE_QUEUE_CAPACITY * shards + 2 * shards + 1, Miscellaneous.bytesToHumanReadable(batchController.getByteBudget())));
+			logAllocation("read", readerAllocatedBytes, articles);
+			logAllocation("written", pipeline.getWriterAllocatedBytes(), articles);
+			return articles;
+		}
+	}
 
-			while (rs.next()) {
-				batch.add(new Store_QuiteRSS(
-						rs.getString("author_name"),
-						rs.getString("description"),
-						rs.getString("guid"),
-						Miscellaneous.convertToTimestamp(rs.getString("received")),
-						rs.getInt("feedId"),
-						rs.getInt("id"),
-						rs.getInt("deleted"),
-						rs.getInt("starred"),
-						rs.getInt("read"),
-						rs.getString("title"),
-						rs.getString("link_href")
-						));
 
-				if (batch.size() >= ARTICLE_BATCH_SIZE) {
-					processor.processBatch(batch);
-					totalProcessed += batch.size();
-					System.out.printf("Processed %d articles...%n", totalProcessed);
-					batch.clear();
+	/**
+	 * Runs the article phase inside SQLite through {@link InEngineMigrator}: every chunk of
+	 * {@link AdaptiveBatchController#getRowLimit()} articles is one {@code INSERT ... SELECT}, committed together with
+	 * its checkpoint like a batch of the JDBC path, so chunks still adapt to the commit latency and a stopped run
+	 * resumes after the last chunk committed.
+	 *
+	 * @return Number of articles migrated from the ranges {@code [fromIds[i], toIds[i])}.
+	 */
+	private long processArticlesInEngine(long[] fromIds, long[] toIds) throws SQLException {
+		long articles = 0;
+
+		for (int range = 0; range < fromIds.length && !stopRequested; range++) {
+			long fromId = fromIds[range];
+			int limit;
+			int rows;
+
+			do {
+				limit = batchController.getRowLimit();
+				ArticleBatchEvent event = new ArticleBatchEvent();
+				event.begin();
+
+				try {
+					targetConnection.setAutoCommit(false);
+
+					long start = System.nanoTime();
+					rows = inEngine.copyArticles(fromId, toIds[range], limit);
+					event.executeNanos = System.nanoTime() - start;
+
+					if (rows > 0) {
+						fromId = inEngine.lastArticleId(fromId, toIds[range]) + 1;
+						checkpoint.recordArticleProgress(range, fromId - 1);
+					}
+
+					start = System.nanoTime();
+					targetConnection.commit();
+					event.commitNanos = System.nanoTime() - start;
+				} catch (SQLException e) {
+					targetConnection.rollback();
+					throw e;
+				} finally {
+					targetConnection.setAutoCommit(true);
 				}
+
+				batchController.recordCommit(rows, 0, event.executeNanos + event.commitNanos);
+				metrics.record(MigrationMetrics.Stage.EXECUTE_BATCH, event.executeNanos); // Reading and converting included
+				metrics.record(MigrationMetrics.Stage.COMMIT, event.commitNanos);
+				metrics.recordArticlesWritten(rows, 0);
+				articles += rows;
+
+				if (event.shouldCommit()) {
+					event.range = range;
+					event.rows = rows;
+					event.lastId = fromId - 1;
+					event.commit();
+				}
+			} while (rows == limit && !stopRequested);
+		}
+
+		return articles;
+	}
+
+
+	/**
+	 * Runs the {@link FeedIconOptimizer} on every batch of feeds before handing it to {@code processor}.
+	 */
+	private BatchProcessor<List<Store_QuiteRssFeed>> withOptimizedIcons(BatchProcessor<List<Store_QuiteRssFeed>> processor) {
+		if (iconOptimizer == null)
+			return processor;
+
+		return batch -> {
+			try {
+				iconOptimizer.apply(batch);
+			} catch (IOException e) {
+				throw new SQLException("Feed icon optimization failed: " + e.getMessage(), e);
 			}
 
-			// Process remaining items in last batch
-			if (!batch.isEmpty()) {
-				processor.processBatch(batch);
-				totalProcessed += batch.size();
-				System.out.printf("Finished processing %d total articles.%n", totalProcessed);
+			processor.processBatch(batch);
+		};
+	}
+
+
+	/**
+	 * Moves every batch to the RSSGuard ids of the QuiteRSS database it was read from before handing it to
+	 * {@code processor}, when merging: the transforms and the writer only ever see RSSGuard ids.
+	 */
+	private BatchProcessor<ArticleBatch> remapped(BatchProcessor<ArticleBatch> processor) {
+		if (sourceMappings == null)
+			return processor;
+
+		return batch -> {
+			sourceMappings[batch.range()].apply(batch);
+			processor.processBatch(batch);
+		};
+	}
+
+
+	/**
+	 * Runs the {@link ArticleTransform}s on every batch before handing it to {@code processor}, on the thread that read
+	 * it.
+	 */
+	private BatchProcessor<ArticleBatch> transformed(BatchProcessor<ArticleBatch> processor) {
+		if (transforms.isEmpty())
+			return processor;
+
+		return batch -> {
+			long start = System.nanoTime();
+			try {
+				for (ArticleTransform transform : transforms)
+					transform.apply(batch);
+			} catch (IOException e) {
+				throw new SQLException("Article transform failed: " + e.getMessage(), e);
+			}
+			metrics.record(MigrationMetrics.Stage.TRANSFORM, System.nanoTime() - start);
+
+			processor.processBatch(batch);
+		};
+	}
+
+
+	/**
+	 * Decodes the current row of {@code load_quiterss_feeds.sql}.
+	 */
+	static Store_QuiteRssFeed readFeed(ResultSet rs) throws SQLException {
+		return new Store_QuiteRssFeed(
+				rs.getInt("rowToParent"),
+				rs.getInt("parentId"),
+				rs.getInt("id"),
+				Miscellaneous.stripToEmpty(rs.getString("text")),
+				Miscellaneous.stripToEmpty(rs.getString("description")),
+				Miscellaneous.convertToTimestamp(rs.getString("created")),
+				Miscellaneous.stripToEmpty(rs.getString("xmlUrl")),
+				rs.getBytes("image"),
+				rs.getInt("disableUpdate"),
+				rs.getInt("layoutDirection"),
+				rs.getInt("addSingleNewsAnyDateOn")
+				);
+	}
+
+
+	/**
+	 * Decodes the current row of a {@code news} query into {@code batch}. Columns are read by position, in the order of
+	 * {@code load_quiterss_news.sql}, and author names go through {@code authors} so repeated values share one instance.
+	 */
+	static void readArticle(ResultSet rs, ArticleBatch batch, StringCache authors) throws SQLException {
+		batch.add(
+				authors.dedup(rs.getString(1)),  // author_name
+				rs.getString(2),                 // description
+				rs.getString(3),                 // guid
+				Miscellaneous.convertToTimestamp(rs.getString(4)), // received
+				rs.getInt(5),                    // feedId
+				rs.getInt(6),                    // id
+				rs.getInt(7),                    // deleted
+				rs.getInt(8),                    // starred
+				rs.getInt(9),                    // read
+				rs.getString(10),                // title
+				rs.getString(11)                 // link_href
+				);
+	}
+
+
+	// Runs inside the transaction of processFeedPhase(), the RSSGuard sink first
+	private void writeFeeds(List<Store_QuiteRssFeed> batch) throws SQLException {
+		for (MigrationSink sink : sinks) {
+			try {
+				sink.writeFeeds(batch);
+			} catch (IOException e) {
+				throw new SQLException("Export of the feeds failed: " + e.getMessage(), e);
 			}
 		}
 	}
 
 
+	/**
+	 * Writes {@code batch} to every sink, RSSGuard first: the other sinks only receive articles committed with their
+	 * checkpoint.
+	 */
+	private void writeArticles(ArticleBatch batch) throws SQLException {
+		long exportStart = 0;
+
+		for (int sink = 0; sink < sinks.size(); sink++) {
+			if (sink == 1)
+				exportStart = System.nanoTime();
+			try {
+				sinks.get(sink).writeArticles(batch);
+			} catch (IOException e) {
+				throw new SQLException("Export of the articles failed: " + e.getMessage(), e);
+			}
+		}
+
+		if (sinks.size() > 1)
+			metrics.record(MigrationMetrics.Stage.SINK, System.nanoTime() - exportStart);
+	}
+
+
+	// Runs inside the transaction of processFeedPhase()
 	private void insertCategoriesAndFeeds(List<Store_QuiteRssFeed> batch) throws SQLException {
+		insertCategories(batch);
+		insertFeeds(batch);
+	}
+
+
+	private void insertArticles(ArticleBatch batch) throws SQLException {
+		ArticleBatchEvent event = new ArticleBatchEvent();
+		event.begin();
+
 		try {
 			targetConnection.setAutoCommit(false);
-			insertCategories(batch);
-			insertFeeds(batch);
+
+			try (PreparedStatement stmt = targetConnection.prepareStatement(INSERT_RSSGUARD_MESSAGES_QUERY)) {
+				long start = System.nanoTime();
+				for (int row = 0; row < batch.size(); row++) {
+					bindArticle(stmt, batch, row);
+					stmt.addBatch();
+				}
+				event.bindNanos = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				stmt.executeBatch();
+				event.executeNanos = System.nanoTime() - start;
+			}
+
+			if (batch.lastId() >= 0)
+				checkpoint.recordArticleProgress(batch.range(), batch.lastId()); // Rows are in id order
+
+			long start = System.nanoTime();
 			targetConnection.commit();
+			event.commitNanos = System.nanoTime() - start;
+
+			batchController.recordCommit(batch.size(), batch.byteSize(), event.executeNanos + event.commitNanos);
+			metrics.record(MigrationMetrics.Stage.BIND, event.bindNanos);
+			metrics.record(MigrationMetrics.Stage.EXECUTE_BATCH, event.executeNanos);
+			metrics.record(MigrationMetrics.Stage.COMMIT, event.commitNanos);
+			metrics.recordArticlesWritten(batch.size(), batch.byteSize());
+
+			if (event.shouldCommit()) {
+				event.range = batch.range();
+				event.rows = batch.size();
+				event.bytes = batch.byteSize();
+				event.lastId = Math.max(batch.lastId(), 0);
+				event.commit();
+			}
 		} catch (SQLException e) {
 			targetConnection.rollback();
 			throw e;
@@ -262,31 +1142,37 @@ public class DatabaseManager implements AutoCloseable {
 	}
 
 
-	private void insertArticles(List<Store_QuiteRSS> batch) throws SQLException {
+	private void reconcileFeed(NewsReconciler reconciler, int feedId) throws SQLException {
 		try {
 			targetConnection.setAutoCommit(false);
+			reconciler.reconcileFeed(feedId);
+			targetConnection.commit();
+		} catch (SQLException e) {
+			targetConnection.rollback();
+			throw e;
+		} finally {
+			targetConnection.setAutoCommit(true);
+		}
+	}
 
-			try (PreparedStatement stmt = targetConnection.prepareStatement(INSERT_RSSGUARD_MESSAGES_QUERY)) {
-				for (Store_QuiteRSS article : batch) {
-					stmt.setString(1, article.author_name());
-					stmt.setString(2, article.description());
-					stmt.setString(3, article.guid());
-					stmt.setLong(4, article.received());
-					stmt.setInt(5, article.feedId());
-					stmt.setInt(6, article.id());
-					stmt.setInt(7, article.deleted());
-					stmt.setInt(8, 0);
-					stmt.setInt(9, article.starred());
-					stmt.setInt(10, article.read());
-					stmt.setString(11, article.title());
-					stmt.setString(12, article.link_href());
-					stmt.setInt(13, 1);
-					stmt.addBatch();
-				}
-				stmt.executeBatch();
-			}
 
+	private void insertNewArticles(NewsReconciler reconciler, ArticleBatch batch) throws SQLException {
+		try {
+			targetConnection.setAutoCommit(false);
+			long start = System.nanoTime();
+			reconciler.insertArticles(batch);
+			if (batch.lastId() >= 0)
+				checkpoint.recordSyncedArticleId(batch.lastId()); // Rows are in id order
+			long executeNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
 			targetConnection.commit();
+			long commitNanos = System.nanoTime() - start;
+
+			batchController.recordCommit(batch.size(), batch.byteSize(), executeNanos + commitNanos);
+			metrics.record(MigrationMetrics.Stage.EXECUTE_BATCH, executeNanos); // Binding included
+			metrics.record(MigrationMetrics.Stage.COMMIT, commitNanos);
+			metrics.recordArticlesWritten(batch.size(), batch.byteSize());
 		} catch (SQLException e) {
 			targetConnection.rollback();
 			throw e;
@@ -305,14 +1191,7 @@ public class DatabaseManager implements AutoCloseable {
 				if (!feed.isCategory())
 					continue;
 
-				stmt.setInt(1, feed.order());
-				stmt.setInt(2, feed.id() == 122 ? -1 : feed.parentId());
-				stmt.setInt(3, feed.id());
-				stmt.setString(4, feed.title());
-				stmt.setLong(5, feed.created());
-				stmt.setInt(6, 1);
-				stmt.setString(7, "");
-
+				bindCategory(stmt, feed);
 				stmt.addBatch();
 
 				if (++batchCount % INSERT_BATCH_SIZE == 0)
@@ -333,31 +1212,7 @@ public class DatabaseManager implements AutoCloseable {
 				if (feed.isCategory())
 					continue;
 
-				stmt.setInt(1, feed.id());
-				stmt.setInt(2, feed.order());
-				stmt.setString(3, feed.title());
-				stmt.setString(4, feed.description());
-				stmt.setLong(5, feed.created());
-				stmt.setBytes(6, feed.icon());
-				stmt.setInt(7, feed.parentId());
-				stmt.setString(8, feed.feedURL());
-				stmt.setInt(9, 1);
-				stmt.setInt(10, 900);
-				stmt.setInt(11, feed.disableUpdate());
-				stmt.setInt(12, 0);
-				stmt.setInt(13, feed.layoutDirection());
-				stmt.setInt(14, feed.addSingleNewsAnyDateOn());
-				stmt.setInt(15, 0);
-				stmt.setInt(16, 0);
-				stmt.setInt(17, 0);
-				stmt.setInt(18, 1);
-				stmt.setInt(19, 1);
-				stmt.setInt(20, 1);
-				stmt.setInt(21, 0);
-				stmt.setInt(22, 1);
-				stmt.setInt(23, feed.id());
-				stmt.setString(24, "");
-
+				bindFeed(stmt, feed);
 				stmt.addBatch();
 
 				if (++batchCount % INSERT_BATCH_SIZE == 0)
@@ -370,13 +1225,113 @@ public class DatabaseManager implements AutoCloseable {
 
 
 
-	private void validateMigration() throws SQLException {
+	// Parameters of insert_rssguard_messages.sql
+	static void bindArticle(PreparedStatement stmt, ArticleBatch batch, int row) throws SQLException {
+		stmt.setString(1, batch.author_name(row));
+		stmt.setString(2, batch.description(row));
+		stmt.setString(3, batch.guid(row));
+		stmt.setLong(4, batch.received(row));
+		stmt.setInt(5, batch.feedId(row));
+		stmt.setInt(6, batch.id(row));
+		stmt.setInt(7, batch.deleted(row));
+		stmt.setInt(8, 0);
+		stmt.setInt(9, batch.starred(row));
+		stmt.setInt(10, batch.read(row));
+		stmt.setString(11, batch.title(row));
+		stmt.setString(12, batch.link_href(row));
+		stmt.setInt(13, 1);
+	}
+
+
+	// Parameters of insert_rssguard_categories.sql
+	static void bindCategory(PreparedStatement stmt, Store_QuiteRssFeed feed) throws SQLException {
+		stmt.setInt(1, feed.order());
+		stmt.setInt(2, feed.id() == 122 ? -1 : feed.parentId());
+		stmt.setInt(3, feed.id());
+		stmt.setString(4, feed.title());
+		stmt.setLong(5, feed.created());
+		stmt.setInt(6, 1);
+		stmt.setString(7, "");
+	}
+
+
+	// Parameters of insert_rssguard_feeds.sql
+	static void bindFeed(PreparedStatement stmt, Store_QuiteRssFeed feed) throws SQLException {
+		stmt.setInt(1, feed.id());
+		stmt.setInt(2, feed.order());
+		stmt.setString(3, feed.title());
+		stmt.setString(4, feed.description());
+		stmt.setLong(5, feed.created());
+		stmt.setBytes(6, feed.icon());
+		stmt.setInt(7, feed.parentId());
+		stmt.setString(8, feed.feedURL());
+		stmt.setInt(9, 1);
+		stmt.setInt(10, 900);
+		stmt.setInt(11, feed.disableUpdate());
+		stmt.setInt(12, 0);
+		stmt.setInt(13, feed.layoutDirection());
+		stmt.setInt(14, feed.addSingleNewsAnyDateOn());
+		stmt.setInt(15, 0);
+		stmt.setInt(16, 0);
+		stmt.setInt(17, 0);
+		stmt.setInt(18, 1);
+		stmt.setInt(19, 1);
+		stmt.setInt(20, 1);
+		stmt.setInt(21, 0);
+		stmt.setInt(22, 1);
+		stmt.setInt(23, feed.id());
+		stmt.setString(24, "");
+	}
+
+
+
+	/**
+	 * Compares every article written with QuiteRSS on a pool of read-only connections, see {@link MigrationVerifier}.
+	 * Runs before the migration is marked completed: a mismatch fails the run, and with {@code --shadow} leaves the
+	 * original database untouched.
+	 */
+	private void verifyMigration() throws SQLException {
+		System.out.println("RSS Guard\t: Verifying every article against QuiteRSS ...");
+
+		// The exclusive lock taken for loading would keep the verifier connections out. In WAL mode it cannot be released
+		// (the WAL index lives in this process), so the database leaves WAL mode while it is verified
+		boolean wal = "WAL".equalsIgnoreCase(options.getTargetPragmas().get("journal_mode"));
+		try (Statement stmt = targetConnection.createStatement()) {
+			if (wal)
+				stmt.execute("PRAGMA journal_mode = DELETE");
+			stmt.execute("PRAGMA locking_mode = NORMAL");
+			stmt.executeQuery("SELECT COUNT(*) FROM sqlite_master").close(); // Releases the lock
+		}
+
+		MigrationVerifier verifier = new MigrationVerifier(quiteRSS_DB_URLs, sourceMappings, createSourceConfig(),
+				shadow != null ? JDBC_SQLITE_PREFIX + shadow.getPath() : rssGuard_DB_URL, Runtime.getRuntime().availableProcessors(),
+				!options.isExtractImages() && options.getSlimHtmlThreads() == 0, duplicateFilter != null);
+		boolean identical = verifier.verify();
+		logElapsedTime("  - %s ms\t: Articles verified against QuiteRSS.", -1);
+
+		if (wal) {
+			try (Statement stmt = targetConnection.createStatement()) {
+				stmt.execute("PRAGMA locking_mode = EXCLUSIVE");
+				stmt.execute("PRAGMA journal_mode = WAL");
+			}
+		}
+		migrationLog.addAll(verifier.describe());
+
+		if (!identical) {
+			verifier.describe().forEach(System.err::println);
+			throw new SQLException("RSS Guard articles do not match QuiteRSS (see above), the migration was not marked completed");
+		}
+	}
+
+
+	private void validateMigration(String operation) throws SQLException {
 
 		try (Statement stmt = targetConnection.createStatement();
 				ResultSet rs = stmt.executeQuery(
 						"SELECT (SELECT COUNT(*) FROM feeds) AS feed_count, (SELECT COUNT(*) FROM messages) AS message_count")) {
 			if (rs.next()) {
-				migrationLog.add(0, String.format("Migration completed successfully (%d feeds, %d messages) in %s.",
+				migrationLog.add(0, String.format("%s completed successfully (%d feeds, %d messages) in %s.",
+						operation,
 						rs.getInt("feed_count"),
 						rs.getInt("message_count"),
 						Miscellaneous.durationToHumanReadable(totalElapsedTime)
@@ -403,8 +1358,97 @@ public class DatabaseManager implements AutoCloseable {
 	}
 
 
-	private String stripToEmpty(String input) {
-		return input == null ? "" : input.strip();
+	/**
+	 * Adds the figures used to compare runs (e.g. macro-benchmarks on generated databases): article throughput, peak
+	 * resident memory of the process and final size of the RSSGuard database.
+	 */
+	private void logRunSummary(long articles, Duration articlesElapsedTime) {
+		long millis = Math.max(1, articlesElapsedTime.toMillis());
+		migrationLog.add(String.format("  - Throughput\t: %,d articles/s", articles * 1000 / millis));
+
+		long peakRss = Miscellaneous.peakResidentSetBytes();
+		if (peakRss > 0)
+			migrationLog.add("  - Peak RSS\t: " + Miscellaneous.bytesToHumanReadable(peakRss));
+
+		try {
+			migrationLog.add("  - Database size\t: " + Miscellaneous.bytesToHumanReadable(Files.size(getTargetDatabasePath())));
+		} catch (IOException e) {
+			System.err.println("Warning: Could not read RSS Guard database size: " + e.getMessage());
+		}
+	}
+
+
+	// Same accounting as ArticleBatch.byteSize(), plus the icon
+	private static long feedByteSize(Store_QuiteRssFeed feed) {
+		return 64 + feed.title().length() + feed.description().length() + feed.feedURL().length() + (feed.icon() != null ? feed.icon().length : 0);
+	}
+
+
+	/**
+	 * Pre-scan of the article phase: counts the non-deleted articles of every range {@code [fromIds[i], toIds[i])},
+	 * through the covering {@code feedId_deleted} index of QuiteRSS without reading any article.
+	 */
+	private long countArticles(long[] fromIds, long[] toIds) throws SQLException {
+		if (snapshot != null)
+			return snapshot.countArticles(fromIds[0], toIds[0]);
+
+		long articles = 0;
+		for (int range = 0; range < fromIds.length; range++)
+			articles += querySourceLong(sourceConnections.get(isMerging() ? range : 0), COUNT_QUITERSS_NEWS_QUERY, fromIds[range], toIds[range]);
+
+		return articles;
+	}
+
+
+	/**
+	 * @return Articles written or skipped as duplicates, for the progress of the article phase.
+	 */
+	private long getArticlesDone() {
+		return metrics.getArticles() + (duplicateFilter != null ? duplicateFilter.getSkipped() : 0);
+	}
+
+
+	private long querySourceLong(Connection source, String query, long... parameters) throws SQLException {
+		try (PreparedStatement stmt = source.prepareStatement(query)) {
+			for (int i = 0; i < parameters.length; i++)
+				stmt.setLong(i + 1, parameters[i]);
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				return rs.next() ? rs.getLong(1) : 0;
+			}
+		}
+	}
+
+
+	private long queryLong(String query) throws SQLException {
+		try (Statement stmt = targetConnection.createStatement();
+				ResultSet rs = stmt.executeQuery(query)) {
+			return rs.next() ? rs.getLong(1) : 0;
+		}
+	}
+
+
+	private boolean isMerging() {
+		return quiteRSS_DB_URLs.size() > 1;
+	}
+
+
+	private Path getSourceDatabasePath() {
+		return Path.of(quiteRSS_DB_URL.substring(JDBC_SQLITE_PREFIX.length()));
+	}
+
+
+	private Path getTargetDatabasePath() {
+		return Path.of(rssGuard_DB_URL.substring(JDBC_SQLITE_PREFIX.length()));
+	}
+
+
+	private void logAllocation(String stage, long allocatedBytes, long articles) {
+		if (allocatedBytes < 0 || articles <= 0)
+			return; // Allocation accounting not supported by this JVM
+
+		migrationLog.add(String.format("  - Allocation\t: %s per article %s (%s in total)",
+				Miscellaneous.bytesToHumanReadable(allocatedBytes / articles), stage, Miscellaneous.bytesToHumanReadable(allocatedBytes)));
 	}
 
 
@@ -427,10 +1471,40 @@ public class DatabaseManager implements AutoCloseable {
 		long maxMB = runtime.maxMemory() / (1024 * 1024);
 		long totalMB = runtime.totalMemory() / (1024 * 1024);
 
-		System.out.printf("Memory: Used=%dMB, Allocated=%dMB, MaxAvailable=%dMB%n", usedMB, totalMB, maxMB);
+		migrationLog.add(String.format("  - Memory\t: Used=%dMB, Allocated=%dMB, MaxAvailable=%dMB", usedMB, totalMB, maxMB));
+	}
+
+
+	/**
+	 * Stops the progress reporter and the metrics sampler, adds the stage latencies to the migration log and writes the report files requested
+	 * with {@link MigrationOptions#getReportPath()}. A report that cannot be written only produces a warning.
+	 */
+	private void finishRun() {
+		closeQuietly(inEngine); // Still attached when the run failed
+		inEngine = null;
+		transforms.forEach(ArticleTransform::close);
+		sinks.forEach(MigrationSink::close);
+		if (iconOptimizer != null)
+			iconOptimizer.close();
+		progress.close();
+		metrics.stop();
+		migrationLog.addAll(metrics.describeStages());
+		logMemoryUsage();
+
+		Path reportPath = options.getReportPath();
+		if (reportPath == null)
+			return;
 
-		// Optional: Log to migration log as well
-		// migrationLog.add(String.format("Memory snapshot: Used=%dMB, Allocated=%dMB, Max=%dMB", usedMB, totalMB, maxMB));
+		Path jsonPath = reportPath.resolveSibling(reportPath.getFileName() + ".json");
+		Path prometheusPath = reportPath.resolveSibling(reportPath.getFileName() + ".prom");
+
+		try {
+			metrics.writeJson(jsonPath);
+			metrics.writePrometheus(prometheusPath);
+			migrationLog.add("  - Reports\t: " + jsonPath + ", " + prometheusPath);
+		} catch (IOException e) {
+			System.err.println("Warning: Could not write the performance report: " + e.getMessage());
+		}
 	}
 
 
@@ -542,6 +1616,31 @@ public class DatabaseManager implements AutoCloseable {
 
 
 
+	/**
+	 * The RSSGuard database as a {@link MigrationSink}, written on the target connection with its checkpoint.
+	 */
+	private final class RssGuardSink implements MigrationSink {
+
+		@Override
+		public void writeFeeds(List<Store_QuiteRssFeed> feeds) throws SQLException {
+			insertCategoriesAndFeeds(feeds);
+		}
+
+
+		@Override
+		public void writeArticles(ArticleBatch batch) throws SQLException {
+			insertArticles(batch);
+		}
+
+
+		@Override
+		public String describe() {
+			return String.format("  - RSS Guard\t: %,d article(s) written to %s", metrics.getArticles(), getTargetDatabasePath());
+		}
+	}
+
+
+
 	// **************************************************************************************************************************************************
 	// ****************************************************************** Overrrides ********************************************************************
 	// **************************************************************************************************************************************************
@@ -554,8 +1653,10 @@ public class DatabaseManager implements AutoCloseable {
 		} catch (SQLException e) {
 			System.err.println("Error restoring pragma settings: " + e.getMessage());
 		} finally {
-			closeQuietly(sourceConnection);
+			sourceConnections.forEach(this::closeQuietly);
+			closeQuietly(snapshot);
 			closeQuietly(targetConnection);
+			closed.countDown();
 		}
 	}
 
@@ -0,0 +1,185 @@
+package quitersstorssguard.operations;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+import quitersstorssguard.records.ArticleBatch;
+import quitersstorssguard.utils.Miscellaneous;
+import quitersstorssguard.utils.OffHeapLongSet;
+
+
+/**
+ * Skips the articles QuiteRSS holds several times, after a re-fetch or in several feeds: only the first copy read is
+ * written to RSSGuard.
+ * <p>
+ * Articles are identified by their GUID, or by their link when they have none. The link is normalized first (scheme,
+ * fragment and trailing slashes dropped, host in lower case), and articles with neither are always kept. With
+ * {@link Scope#FEED} the feed id is part of the key, so the same article in two feeds is kept in both. Only a 64-bit
+ * hash of each key is kept, in an {@link OffHeapLongSet}: 50 million articles take about 512 MB of direct memory and
+ * nothing on the heap. Two different keys sharing a hash would wrongly drop an article, which is unlikely below
+ * billions of articles.
+ */
+public class DuplicateArticleFilter implements ArticleTransform {
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************* Constants ********************************************************************
+	// **************************************************************************************************************************************************
+	public enum Scope {
+		FEED,   // The same article in two feeds is kept in both
+		GLOBAL  // Only the first copy is kept, whatever its feed
+	}
+
+	private static final String LOAD_RSSGUARD_KEYS_QUERY = "SELECT custom_id, url, feed FROM Messages";
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private final Scope scope;
+	private final OffHeapLongSet seen = new OffHeapLongSet(0); // Guarded by itself
+	private final LongAdder skipped = new LongAdder();
+	private long seeded;
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	public DuplicateArticleFilter(Scope scope) {
+		this.scope = scope;
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * Sizes the set for {@code articles} more articles, when their number is known before reading them.
+	 */
+	public void expect(long articles) {
+		synchronized (seen) {
+			seen.ensureCapacity(seen.size() + articles);
+		}
+	}
+
+
+	/**
+	 * Registers the articles already in RSSGuard, so that a resumed migration or a delta sync does not write them a
+	 * second time.
+	 */
+	public void seed(Connection target) throws SQLException {
+		try (Statement stmt = target.createStatement();
+				ResultSet rs = stmt.executeQuery(LOAD_RSSGUARD_KEYS_QUERY)) {
+			synchronized (seen) {
+				while (rs.next()) {
+					long key = key(rs.getString(1), rs.getString(2), rs.getInt(3));
+					if (key != 0 && seen.add(key))
+						seeded++;
+				}
+			}
+		}
+	}
+
+
+	@Override
+	public void apply(ArticleBatch batch) {
+		long[] keys = new long[batch.size()];
+		for (int row = 0; row < keys.length; row++)
+			keys[row] = key(batch.guid(row), batch.link_href(row), batch.feedId(row));
+
+		boolean[] duplicates = new boolean[keys.length];
+		int count = 0;
+
+		synchronized (seen) { // One lock per batch: sharded readers add to the same set
+			for (int row = 0; row < keys.length; row++) {
+				if (keys[row] != 0 && !seen.add(keys[row])) {
+					duplicates[row] = true;
+					count++;
+				}
+			}
+		}
+
+		if (count > 0) {
+			batch.removeRows(duplicates);
+			skipped.add(count);
+		}
+	}
+
+
+	/**
+	 * @return Number of articles skipped so far, for the progress of the article phase.
+	 */
+	public long getSkipped() {
+		return skipped.sum();
+	}
+
+
+	@Override
+	public String describe() {
+		synchronized (seen) {
+			return String.format("  - Duplicates\t: %,d duplicate article(s) skipped (%s scope), %,d distinct article(s)%s, %s off-heap",
+					skipped.sum(), scope.name().toLowerCase(Locale.ROOT), seen.size(),
+					seeded > 0 ? String.format(" of which %,d already in RSS Guard", seeded) : "", Miscellaneous.bytesToHumanReadable(seen.memoryBytes()));
+		}
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Helpers *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @return Hash of the article identity, {@code 0} when it has neither GUID nor link.
+	 */
+	private long key(String guid, String link, int feedId) {
+		String identity = guid != null ? guid.strip() : "";
+		if (identity.isEmpty())
+			identity = normalizeLink(link);
+		if (identity.isEmpty())
+			return 0;
+
+		long hash = Miscellaneous.fnv1a64(Miscellaneous.FNV_OFFSET_BASIS, identity);
+		if (scope == Scope.FEED)
+			hash = Miscellaneous.fnv1a64(hash, feedId);
+
+		hash = Miscellaneous.mix64(hash); // The low bits pick the slot of the set
+		return hash != 0 ? hash : 1;
+	}
+
+
+	/**
+	 * @return {@code link} without scheme, fragment and trailing slashes, host in lower case: {@code http://Example.com/a/#top}
+	 *         and {@code https://example.com/a} give the same value.
+	 */
+	private static String normalizeLink(String link) {
+		if (link == null)
+			return "";
+
+		String value = link.strip();
+		int fragment = value.indexOf('#');
+		if (fragment >= 0)
+			value = value.substring(0, fragment);
+
+		int scheme = value.indexOf("://");
+		if (scheme >= 0)
+			value = value.substring(scheme + 3);
+
+		int end = value.length();
+		while (end > 0 && value.charAt(end - 1) == '/')
+			end--;
+
+		int path = value.indexOf('/');
+		if (path < 0 || path > end)
+			path = end;
+
+		return value.substring(0, path).toLowerCase(Locale.ROOT) + value.substring(path, end);
+	}
+
+
+}
@@ -0,0 +1,242 @@
+package quitersstorssguard.operations;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.imageio.ImageIO;
+
+import quitersstorssguard.records.Store_QuiteRssFeed;
+import quitersstorssguard.utils.Miscellaneous;
+
+
+/**
+ * Cleans up the icons of a batch of feeds before they are written to RSSGuard.
+ * <p>
+ * Icons are identified by their SHA-256 hash: every distinct icon is checked and converted once, whatever the number
+ * of feeds using it, and all of them then share the same array. Icons in a format ImageIO reads (PNG, GIF, JPEG, BMP)
+ * are decoded: those that fail to decode are dropped, and those larger than the size cap are downscaled on a pool of
+ * worker threads and stored as PNG. ICO, SVG and WebP icons, which ImageIO cannot read but RSSGuard displays, are kept
+ * as they are; anything else is dropped as corrupt. Dropped icons are written as an empty blob, RSSGuard then falls
+ * back to the feed's favicon.
+ */
+public class FeedIconOptimizer {
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private final int maxSize;
+	private final int threads;
+	private final ExecutorService pool;
+	private final Map<String, byte[]> converted = new ConcurrentHashMap<>(); // Hash of the original icon -> icon written
+
+	private final LongAdder icons = new LongAdder();
+	private final LongAdder downscaled = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder bytesBefore = new LongAdder();
+	private final LongAdder bytesAfter = new LongAdder();
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @param maxSize Largest width and height kept, in pixels.
+	 * @param threads Worker threads decoding and downscaling icons.
+	 */
+	public FeedIconOptimizer(int maxSize, int threads) {
+		if (maxSize < 1)
+			throw new IllegalArgumentException("Icon size must be at least 1 pixel, got " + maxSize);
+
+		ImageIO.setUseCache(false); // Icons are read from memory, a temporary file per icon would only slow them down
+		this.maxSize = maxSize;
+		this.threads = Math.max(1, threads);
+		AtomicInteger workers = new AtomicInteger();
+		this.pool = Executors.newFixedThreadPool(this.threads, runnable -> {
+			Thread thread = new Thread(runnable, "icon-optimizer-" + workers.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * Replaces the icon of every feed of {@code batch} by its checked and downscaled version. Icons not seen before are
+	 * converted in parallel, the batch keeps its order.
+	 */
+	public void apply(List<Store_QuiteRssFeed> batch) throws IOException {
+		String[] hashes = new String[batch.size()];
+		Map<String, byte[]> pending = new HashMap<>(); // Icons of this batch not converted yet, by hash
+
+		for (int i = 0; i < batch.size(); i++) {
+			byte[] icon = batch.get(i).icon();
+			if (icon.length == 0)
+				continue;
+
+			hashes[i] = hash(icon);
+			if (!converted.containsKey(hashes[i]))
+				pending.putIfAbsent(hashes[i], icon);
+		}
+
+		List<Callable<Void>> tasks = new ArrayList<>(pending.size());
+		pending.forEach((hash, icon) -> tasks.add(() -> {
+			converted.put(hash, convert(icon));
+			return null;
+		}));
+
+		try {
+			for (Future<Void> task : pool.invokeAll(tasks))
+				task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while converting feed icons", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Feed icon conversion failed: " + e.getCause(), e.getCause());
+		}
+
+		for (int i = 0; i < batch.size(); i++) {
+			if (hashes[i] == null)
+				continue;
+
+			Store_QuiteRssFeed feed = batch.get(i);
+			byte[] icon = converted.get(hashes[i]);
+			icons.increment();
+			bytesBefore.add(feed.icon().length);
+			bytesAfter.add(icon.length);
+			batch.set(i, feed.withIcon(icon)); // The original array can be collected with the row
+		}
+	}
+
+
+	/**
+	 * @return Summary for the migration log.
+	 */
+	public String describe() {
+		return String.format("  - Icons\t: %,d icon(s), %,d distinct, %,d downscaled to %dpx, %,d corrupt dropped, %s -> %s, %d thread(s)",
+				icons.sum(), converted.size(), downscaled.sum(), maxSize, dropped.sum(), Miscellaneous.bytesToHumanReadable(bytesBefore.sum()),
+				Miscellaneous.bytesToHumanReadable(bytesAfter.sum()), threads);
+	}
+
+
+	public void close() {
+		pool.shutdownNow();
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Helpers *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @return The icon to write for {@code icon}: itself, a downscaled PNG, or an empty array when it is corrupt.
+	 */
+	private byte[] convert(byte[] icon) {
+		BufferedImage image;
+
+		try {
+			image = ImageIO.read(new ByteArrayInputStream(icon));
+		} catch (IOException | RuntimeException e) {
+			dropped.increment(); // Truncated or damaged: decoders throw anything from IIOException to IndexOutOfBoundsException
+			return new byte[0];
+		}
+
+		if (image == null) {
+			if (isDisplayableWithoutReader(icon))
+				return icon;
+
+			dropped.increment();
+			return new byte[0];
+		}
+
+		if (image.getWidth() <= maxSize && image.getHeight() <= maxSize)
+			return icon;
+
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ImageIO.write(downscale(image), "png", out);
+			downscaled.increment();
+			return out.toByteArray();
+		} catch (IOException e) {
+			return icon; // Cannot happen with a memory stream, the original is still a valid icon
+		}
+	}
+
+
+	/**
+	 * Halves the image until it is less than twice the target size, then scales it to the target: bilinear scaling
+	 * alone skips pixels when shrinking more than two times, which turns large logos into noise.
+	 */
+	private BufferedImage downscale(BufferedImage image) {
+		double scale = (double) maxSize / Math.max(image.getWidth(), image.getHeight());
+		int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+		int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+
+		BufferedImage current = image;
+		do {
+			int nextWidth = Math.max(width, current.getWidth() / 2);
+			int nextHeight = Math.max(height, current.getHeight() / 2);
+			BufferedImage next = new BufferedImage(nextWidth, nextHeight, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D graphics = next.createGraphics();
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			graphics.drawImage(current, 0, 0, nextWidth, nextHeight, null);
+			graphics.dispose();
+			current = next;
+		} while (current.getWidth() != width || current.getHeight() != height);
+
+		return current;
+	}
+
+
+	/**
+	 * @return {@code true} for the icon formats RSSGuard displays but ImageIO has no reader for: ICO (and CUR), SVG and
+	 *         WebP.
+	 */
+	private static boolean isDisplayableWithoutReader(byte[] icon) {
+		if (icon.length >= 4 && icon[0] == 0 && icon[1] == 0 && (icon[2] == 1 || icon[2] == 2) && icon[3] == 0)
+			return true;
+
+		if (icon.length >= 12 && new String(icon, 0, 4, StandardCharsets.US_ASCII).equals("RIFF")
+				&& new String(icon, 8, 4, StandardCharsets.US_ASCII).equals("WEBP"))
+			return true;
+
+		String head = new String(icon, 0, Math.min(icon.length, 256), StandardCharsets.UTF_8).replace("\uFEFF", "").stripLeading();
+		return head.startsWith("<svg") || head.startsWith("<?xml") && head.contains("<svg");
+	}
+
+
+	private static String hash(byte[] icon) {
+		try {
+			return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(icon));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e); // Mandatory in every JRE
+		}
+	}
+
+
+}
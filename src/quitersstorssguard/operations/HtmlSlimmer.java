@@ -0,0 +1,330 @@
+package quitersstorssguard.operations;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import quitersstorssguard.records.ArticleBatch;
+import quitersstorssguard.utils.Miscellaneous;
+
+
+/**
+ * Removes what RSSGuard would store and parse for nothing from article descriptions: {@code <script>},
+ * {@code <style>} and {@code <noscript>} blocks, comments, tracking pixels (images of at most 1 x 1 pixel) and runs of
+ * whitespace, collapsed to one space or line break except inside {@code <pre>} and {@code <textarea>}.
+ * <p>
+ * Each description is rewritten in one pass of a small scanner, without building a DOM; other tags are copied as they
+ * are. The rows of a batch are slimmed by a pool of worker threads, each taking the next row not yet taken, and the
+ * results are put back by row index, so the batch keeps its order for the writer. Several reader threads can share
+ * the pool.
+ */
+public class HtmlSlimmer implements ArticleTransform {
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************* Constants ********************************************************************
+	// **************************************************************************************************************************************************
+	private static final String[] DROPPED_ELEMENTS = { "script", "style", "noscript" };
+	private static final String[] VERBATIM_ELEMENTS = { "pre", "textarea" };
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private final int threads;
+	private final ExecutorService pool;
+
+	private final LongAdder articles = new LongAdder();
+	private final LongAdder charsBefore = new LongAdder();
+	private final LongAdder charsAfter = new LongAdder();
+	private final LongAdder droppedElements = new LongAdder();
+	private final LongAdder comments = new LongAdder();
+	private final LongAdder trackingPixels = new LongAdder();
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @param threads Worker threads, {@code 1} to slim on the reader thread itself.
+	 */
+	public HtmlSlimmer(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("HTML slimming needs at least 1 thread, got " + threads);
+
+		this.threads = threads;
+		AtomicInteger workers = new AtomicInteger();
+		this.pool = threads == 1 ? null : Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "html-slimmer-" + workers.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	@Override
+	public void apply(ArticleBatch batch) throws IOException {
+		String[] slimmed = new String[batch.size()];
+
+		if (pool == null || batch.size() < 2) {
+			for (int row = 0; row < batch.size(); row++)
+				slimmed[row] = slim(batch.description(row));
+		} else {
+			AtomicInteger nextRow = new AtomicInteger();
+			List<Callable<Void>> workers = new ArrayList<>(threads);
+			for (int i = 0; i < Math.min(threads, batch.size()); i++) {
+				workers.add(() -> {
+					for (int row = nextRow.getAndIncrement(); row < slimmed.length; row = nextRow.getAndIncrement())
+						slimmed[row] = slim(batch.description(row));
+					return null;
+				});
+			}
+
+			try {
+				for (Future<Void> worker : pool.invokeAll(workers))
+					worker.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while slimming HTML", e);
+			} catch (ExecutionException e) {
+				throw new IOException("HTML slimming failed: " + e.getCause(), e.getCause());
+			}
+		}
+
+		// Back on the calling thread: the batch itself is not thread-safe
+		for (int row = 0; row < slimmed.length; row++) {
+			String description = batch.description(row);
+			charsBefore.add(description.length());
+			charsAfter.add(slimmed[row].length());
+
+			if (slimmed[row] != description) {
+				batch.setDescription(row, slimmed[row]);
+				articles.increment();
+			}
+		}
+	}
+
+
+	/**
+	 * @return {@code html} without scripts, styles, comments, tracking pixels and repeated whitespace, or {@code html}
+	 *         itself when nothing was removed.
+	 */
+	public String slim(String html) {
+		int length = html.length();
+		StringBuilder out = new StringBuilder(length);
+		int verbatimDepth = 0;
+		int i = 0;
+
+		while (i < length) {
+			char c = html.charAt(i);
+
+			// Text up to the next tag or run of whitespace, single spaces and line breaks being kept as they are
+			if (c != '<' && !startsWhitespaceRun(html, i)) {
+				int end = i + 1;
+				while (end < length && html.charAt(end) != '<' && !startsWhitespaceRun(html, end))
+					end++;
+				out.append(html, i, end);
+				i = end;
+				continue;
+			}
+
+			if (c != '<') {
+				int end = i;
+				boolean newline = false;
+				while (end < length && isWhitespace(html.charAt(end)))
+					newline |= html.charAt(end++) == '\n';
+
+				if (verbatimDepth > 0)
+					out.append(html, i, end);
+				else
+					out.append(newline ? '\n' : ' ');
+				i = end;
+				continue;
+			}
+
+			if (html.startsWith("<!--", i)) {
+				int end = html.indexOf("-->", i + 4);
+				if (end < 0)
+					break; // Unterminated comment: browsers hide the rest too
+				comments.increment();
+				i = end + 3;
+				continue;
+			}
+
+			if (!opensTag(html, i)) {
+				out.append(c); // Text such as "a < b"
+				i++;
+				continue;
+			}
+
+			int tagEnd = tagEnd(html, i);
+			if (tagEnd < 0) {
+				out.append(html, i, length); // Unterminated tag, kept as it was
+				break;
+			}
+
+			boolean closing = i + 1 < length && html.charAt(i + 1) == '/';
+			int nameStart = closing ? i + 2 : i + 1;
+			int nameEnd = nameStart;
+			while (nameEnd < tagEnd && Character.isLetterOrDigit(html.charAt(nameEnd)))
+				nameEnd++;
+
+			if (!closing && matchesAny(html, nameStart, nameEnd, DROPPED_ELEMENTS)) {
+				int close = indexOfIgnoreCase(html, "</" + html.substring(nameStart, nameEnd), tagEnd);
+				int closeEnd = close < 0 ? -1 : html.indexOf('>', close);
+				if (closeEnd < 0) {
+					out.append(html, i, length); // Unterminated block, kept as it was
+					break;
+				}
+				droppedElements.increment();
+				i = closeEnd + 1;
+				continue;
+			}
+
+			if (!closing && nameEnd - nameStart == 3 && html.regionMatches(true, nameStart, "img", 0, 3) && isTrackingPixel(html, nameEnd, tagEnd)) {
+				trackingPixels.increment();
+				i = tagEnd + 1;
+				continue;
+			}
+
+			if (matchesAny(html, nameStart, nameEnd, VERBATIM_ELEMENTS) && html.charAt(tagEnd - 1) != '/')
+				verbatimDepth = Math.max(0, verbatimDepth + (closing ? -1 : 1));
+
+			out.append(html, i, tagEnd + 1);
+			i = tagEnd + 1;
+		}
+
+		return out.length() == length ? html : out.toString();
+	}
+
+
+	@Override
+	public String describe() {
+		long before = charsBefore.sum();
+		long saved = before - charsAfter.sum();
+		return String.format("  - HTML slimming\t: %s saved (%.1f%%) on %,d article(s): %,d script/style block(s), %,d comment(s), %,d tracking pixel(s), %d thread(s)",
+				Miscellaneous.bytesToHumanReadable(saved), before > 0 ? 100.0 * saved / before : 0.0, articles.sum(), droppedElements.sum(),
+				comments.sum(), trackingPixels.sum(), threads);
+	}
+
+
+	@Override
+	public void close() {
+		if (pool != null)
+			pool.shutdownNow();
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Helpers *********************************************************************
+	// **************************************************************************************************************************************************
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\n' || c == '\t' || c == '\r' || c == '\f';
+	}
+
+
+	private static boolean startsWhitespaceRun(String html, int i) {
+		return isWhitespace(html.charAt(i)) && i + 1 < html.length() && isWhitespace(html.charAt(i + 1));
+	}
+
+
+	private static boolean opensTag(String html, int start) {
+		if (start + 1 >= html.length())
+			return false;
+
+		char first = html.charAt(start + 1);
+		return Character.isLetter(first) || first == '/' || first == '!' || first == '?';
+	}
+
+
+	/**
+	 * @return Index of the {@code >} closing the tag opened at {@code start}, quoted attribute values skipped, or
+	 *         {@code -1} when it is never closed.
+	 */
+	private static int tagEnd(String html, int start) {
+		char quote = 0;
+		for (int i = start + 1; i < html.length(); i++) {
+			char c = html.charAt(i);
+			if (quote != 0) {
+				if (c == quote)
+					quote = 0;
+			} else if (c == '"' || c == '\'') {
+				quote = c;
+			} else if (c == '>') {
+				return i;
+			}
+		}
+
+		return html.indexOf('>', start); // Unbalanced quote: fall back to the first '>'
+	}
+
+
+	/**
+	 * An image declaring a width and a height of 0 or 1 pixel, e.g. {@code <img src="..." width="1" height="1">}.
+	 */
+	private static boolean isTrackingPixel(String html, int from, int to) {
+		long width = attributeNumber(html, from, to, "width");
+		long height = attributeNumber(html, from, to, "height");
+		return width >= 0 && width <= 1 && height >= 0 && height <= 1;
+	}
+
+
+	/**
+	 * @return Leading digits of the value of attribute {@code name} in {@code html[from, to)}, or {@code -1}.
+	 */
+	private static long attributeNumber(String html, int from, int to, String name) {
+		for (int i = from; i + name.length() < to; i++) {
+			if (!isWhitespace(html.charAt(i)) || !html.regionMatches(true, i + 1, name, 0, name.length()))
+				continue;
+
+			int j = i + 1 + name.length();
+			while (j < to && isWhitespace(html.charAt(j)))
+				j++;
+			if (j >= to || html.charAt(j) != '=')
+				continue;
+			j++;
+			while (j < to && (isWhitespace(html.charAt(j)) || html.charAt(j) == '"' || html.charAt(j) == '\''))
+				j++;
+
+			long value = -1;
+			while (j < to && Character.isDigit(html.charAt(j)) && value < Integer.MAX_VALUE)
+				value = Math.max(value, 0) * 10 + (html.charAt(j++) - '0');
+			return value;
+		}
+
+		return -1;
+	}
+
+
+	private static boolean matchesAny(String html, int start, int end, String[] names) {
+		for (String name : names)
+			if (end - start == name.length() && html.regionMatches(true, start, name, 0, name.length()))
+				return true;
+
+		return false;
+	}
+
+
+	private static int indexOfIgnoreCase(String html, String target, int from) {
+		for (int i = html.indexOf('<', from); i >= 0; i = html.indexOf('<', i + 1))
+			if (html.regionMatches(true, i, target, 0, target.length()))
+				return i;
+
+		return -1;
+	}
+
+
+}
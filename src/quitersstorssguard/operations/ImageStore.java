@@ -0,0 +1,165 @@
+package quitersstorssguard.operations;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Content-addressed directory of images: every image is stored once, as {@code xx/<sha-256>.<extension>} where
+ * {@code xx} are the first two hex digits of its hash, whatever the number of articles embedding it.
+ * <p>
+ * Images are given as base64 text and decoded in blocks of {@value #CHUNK_SIZE} characters, never as a whole: a
+ * first pass only hashes them, and only an image not stored yet is decoded a second time into a temporary file,
+ * renamed into place once complete. The logos repeated over thousands of articles therefore cost one decode each and no write, and
+ * memory stays bounded whatever the size of the image. Files left by an interrupted run are reused. Thread-safe.
+ */
+public class ImageStore {
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************* Constants ********************************************************************
+	// **************************************************************************************************************************************************
+	private static final int CHUNK_SIZE = 8192;
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private final Path directory;
+	private final String directoryUri; // With a trailing slash
+	private final Set<String> known = ConcurrentHashMap.newKeySet(); // File names already stored or checked by this run
+	private final LongAdder filesWritten = new LongAdder();
+	private final LongAdder bytesWritten = new LongAdder();
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @param directory Root of the store, created when the first image is written.
+	 */
+	public ImageStore(Path directory) {
+		this.directory = directory.toAbsolutePath();
+		String uri = this.directory.toUri().toString();
+		this.directoryUri = uri.endsWith("/") ? uri : uri + "/";
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * Stores the image encoded in base64 by {@code text[start, end)}, unless the same content is stored already.
+	 *
+	 * @param extension File extension matching the image type, without dot.
+	 * @return {@code file:} URI of the image, or {@code null} when the text is not valid base64 or decodes to nothing.
+	 */
+	public String store(CharSequence text, int start, int end, String extension) throws IOException {
+		MessageDigest digest = newDigest();
+		long size;
+
+		try {
+			size = decode(text, start, end, digest, null);
+		} catch (IllegalArgumentException e) {
+			return null; // Malformed base64: the reference is left as it was
+		}
+
+		if (size == 0)
+			return null;
+
+		String hash = HexFormat.of().formatHex(digest.digest());
+		String name = hash.substring(0, 2) + "/" + hash + "." + extension;
+
+		if (known.add(name) && !Files.exists(directory.resolve(name))) {
+			Path file = directory.resolve(name);
+			Files.createDirectories(file.getParent());
+			Path temporary = Files.createTempFile(file.getParent(), hash, ".tmp");
+
+			try (OutputStream out = Files.newOutputStream(temporary)) {
+				decode(text, start, end, null, out);
+			} catch (IOException e) {
+				Files.deleteIfExists(temporary);
+				throw e;
+			}
+
+			Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			filesWritten.increment();
+			bytesWritten.add(size);
+		}
+
+		return directoryUri + name; // Path.toUri() would query the file system for every image
+	}
+
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+
+	public long getFilesWritten() {
+		return filesWritten.sum();
+	}
+
+
+	public long getBytesWritten() {
+		return bytesWritten.sum();
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Helpers *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * Decodes {@code text[start, end)} in blocks of {@value #CHUNK_SIZE} characters (a multiple of 4, so only the last
+	 * block can hold padding), into {@code digest} and {@code out} when not {@code null}.
+	 *
+	 * @return Number of bytes decoded.
+	 * @throws IllegalArgumentException When the text is not valid base64.
+	 */
+	private static long decode(CharSequence text, int start, int end, MessageDigest digest, OutputStream out) throws IOException {
+		Base64.Decoder decoder = Base64.getDecoder();
+		byte[] encoded = new byte[CHUNK_SIZE];
+		byte[] decoded = new byte[CHUNK_SIZE / 4 * 3];
+		long total = 0;
+
+		for (int position = start; position < end; position += CHUNK_SIZE) {
+			int length = Math.min(CHUNK_SIZE, end - position);
+			byte[] block = length == CHUNK_SIZE ? encoded : new byte[length]; // Decoder.decode(byte[], byte[]) takes the whole array
+			for (int i = 0; i < length; i++)
+				block[i] = (byte) text.charAt(position + i);
+
+			int count = decoder.decode(block, decoded);
+			if (digest != null)
+				digest.update(decoded, 0, count);
+			if (out != null)
+				out.write(decoded, 0, count);
+			total += count;
+		}
+
+		return total;
+	}
+
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e); // Mandatory in every JRE
+		}
+	}
+
+
+}
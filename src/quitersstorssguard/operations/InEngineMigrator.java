@@ -0,0 +1,196 @@
+package quitersstorssguard.operations;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.sqlite.Function;
+
+import quitersstorssguard.utils.Miscellaneous;
+
+
+/**
+ * Migrates QuiteRSS into RSSGuard inside SQLite: the QuiteRSS file is attached read-only to the RSSGuard connection
+ * as schema {@value #SCHEMA} and every table is copied with one {@code INSERT ... SELECT} per chunk, so no row is
+ * materialized on the Java side.
+ * <p>
+ * The conversions of the JDBC path are registered on the connection as scalar SQL functions, backed by the same Java
+ * code: {@code quiterss_timestamp} ({@link Miscellaneous#convertToTimestamp(String)}), {@code quiterss_strip}
+ * ({@link Miscellaneous#stripToEmpty(String)}, Unicode whitespace included, unlike {@code trim()}) and
+ * {@code quiterss_is_category} (the split of {@code Store_QuiteRssFeed.isCategory()}). Everything else (nulls read as
+ * empty strings or 0, read flags normalized to 0/1, fixed RSSGuard values) is plain SQL in the
+ * {@code copy_quiterss_*.sql} resources, so the rows written are the same as those of the JDBC path, storage classes
+ * included.
+ * <p>
+ * Callers own the transactions: each method runs in the current one of the RSSGuard connection.
+ */
+public class InEngineMigrator implements AutoCloseable {
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************* Constants ********************************************************************
+	// **************************************************************************************************************************************************
+	public static final String SCHEMA = "quiterss";
+
+	private static final String COPY_CATEGORIES_QUERY = Miscellaneous.readFileFromResources("resources/copy_quiterss_categories.sql");
+	private static final String COPY_FEEDS_QUERY = Miscellaneous.readFileFromResources("resources/copy_quiterss_feeds.sql");
+	private static final String COPY_NEWS_QUERY = Miscellaneous.readFileFromResources("resources/copy_quiterss_news.sql");
+
+	private static final String[] FUNCTIONS = { "quiterss_timestamp", "quiterss_strip", "quiterss_is_category" };
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private final Connection targetConnection;
+	private PreparedStatement copyNews;
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * Registers the conversion functions on {@code targetConnection} and attaches the QuiteRSS database to it. Must be
+	 * called outside of a transaction.
+	 *
+	 * @param targetConnection Connection to the RSSGuard database.
+	 * @param quiteRssPath     QuiteRSS database file, opened read-only.
+	 */
+	public InEngineMigrator(Connection targetConnection, Path quiteRssPath) throws SQLException {
+		this.targetConnection = targetConnection;
+		registerFunctions(targetConnection);
+
+		try (PreparedStatement attach = targetConnection.prepareStatement("ATTACH DATABASE ? AS " + SCHEMA);
+				Statement stmt = targetConnection.createStatement()) {
+			attach.setString(1, quiteRssPath.toAbsolutePath().toUri() + "?mode=ro");
+			attach.execute();
+			// The exclusive locking mode of the RSSGuard connection would otherwise keep QuiteRSS locked until the end
+			stmt.execute("PRAGMA " + SCHEMA + ".locking_mode = NORMAL");
+			stmt.execute("PRAGMA " + SCHEMA + ".cache_size = 20000");
+		}
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * Copies the categories and feeds with an id above {@code afterId}.
+	 *
+	 * @return Number of categories and feeds copied.
+	 */
+	public int copyCategoriesAndFeeds(long afterId) throws SQLException {
+		int copied = 0;
+
+		for (String query : new String[] { COPY_CATEGORIES_QUERY, COPY_FEEDS_QUERY }) {
+			try (PreparedStatement stmt = targetConnection.prepareStatement(query)) {
+				stmt.setLong(1, afterId);
+				copied += stmt.executeUpdate();
+			}
+		}
+
+		return copied;
+	}
+
+
+	/**
+	 * @return Highest QuiteRSS feed or category id above {@code afterId}, {@code afterId} when there is none.
+	 */
+	public long lastFeedId(long afterId) throws SQLException {
+		return queryLong("SELECT COALESCE(MAX(id), ?) FROM " + SCHEMA + ".feeds WHERE id > ?", afterId, afterId);
+	}
+
+
+	/**
+	 * Copies the first {@code limit} non-deleted articles of {@code [fromId, toId)}, in id order.
+	 *
+	 * @return Number of articles copied, below {@code limit} once the range is exhausted.
+	 */
+	public int copyArticles(long fromId, long toId, int limit) throws SQLException {
+		if (copyNews == null)
+			copyNews = targetConnection.prepareStatement(COPY_NEWS_QUERY);
+
+		copyNews.setLong(1, fromId);
+		copyNews.setLong(2, toId);
+		copyNews.setInt(3, limit);
+		return copyNews.executeUpdate();
+	}
+
+
+	/**
+	 * @return Highest article id of {@code [fromId, toId)} already in RSSGuard, i.e. the last one copied by
+	 *         {@link #copyArticles(long, long, int)} from {@code fromId}; {@code fromId - 1} when there is none.
+	 */
+	public long lastArticleId(long fromId, long toId) throws SQLException {
+		return queryLong("SELECT COALESCE(MAX(id), ? - 1) FROM main.Messages WHERE id >= ? AND id < ?", fromId, fromId, toId);
+	}
+
+
+	/**
+	 * Detaches QuiteRSS and removes the functions. Must be called outside of a transaction.
+	 */
+	@Override
+	public void close() throws SQLException {
+		if (copyNews != null)
+			copyNews.close();
+
+		try (Statement stmt = targetConnection.createStatement()) {
+			stmt.execute("DETACH DATABASE " + SCHEMA);
+		}
+
+		for (String function : FUNCTIONS)
+			Function.destroy(targetConnection, function);
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Helpers *********************************************************************
+	// **************************************************************************************************************************************************
+	private static void registerFunctions(Connection conn) throws SQLException {
+		Function.create(conn, FUNCTIONS[0], new Function() {
+			@Override
+			protected void xFunc() throws SQLException {
+				String dateTime = value_text(0);
+				try {
+					result(Miscellaneous.convertToTimestamp(dateTime));
+				} catch (RuntimeException e) {
+					error("Invalid QuiteRSS date '" + dateTime + "': " + e);
+				}
+			}
+		}, 1, Function.FLAG_DETERMINISTIC);
+
+		Function.create(conn, FUNCTIONS[1], new Function() {
+			@Override
+			protected void xFunc() throws SQLException {
+				result(Miscellaneous.stripToEmpty(value_text(0)));
+			}
+		}, 1, Function.FLAG_DETERMINISTIC);
+
+		Function.create(conn, FUNCTIONS[2], new Function() {
+			@Override
+			protected void xFunc() throws SQLException {
+				result(Miscellaneous.stripToEmpty(value_text(0)).isBlank() ? 1 : 0); // Store_QuiteRssFeed.isCategory()
+			}
+		}, 1, Function.FLAG_DETERMINISTIC);
+	}
+
+
+	private long queryLong(String query, long... parameters) throws SQLException {
+		try (PreparedStatement stmt = targetConnection.prepareStatement(query)) {
+			for (int i = 0; i < parameters.length; i++)
+				stmt.setLong(i + 1, parameters[i]);
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				return rs.next() ? rs.getLong(1) : 0;
+			}
+		}
+	}
+
+
+}
@@ -0,0 +1,127 @@
+package quitersstorssguard.operations;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.function.BooleanSupplier;
+
+import quitersstorssguard.utils.Miscellaneous;
+
+
+/**
+ * Streams the non-deleted articles of one key range of the QuiteRSS {@code news} table in keyset pages
+ * ({@code id >= ? ORDER BY id LIMIT ?}), each page starting after the last id of the previous one.
+ * <p>
+ * On a connection in auto-commit mode every page is its own short read transaction: the shared lock (or WAL read mark)
+ * is released between pages, so QuiteRSS can keep writing and checkpointing its database during a long migration, and
+ * nothing but the current page is pending in the driver whatever the size of the table. Seeking to the next page is a
+ * lookup on the {@code INTEGER PRIMARY KEY}, so pages cost the same at the start and at the end of the table.
+ */
+public class KeysetNewsReader {
+
+
+	@FunctionalInterface
+	public interface RowHandler {
+		void handleRow(ResultSet rs) throws SQLException;
+	}
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************* Constants ********************************************************************
+	// **************************************************************************************************************************************************
+	private static final String LOAD_QUITERSS_NEWS_QUERY = Miscellaneous.readFileFromResources("resources/load_quiterss_news.sql");
+
+	private static final int ID_COLUMN = 6; // Position of news.id in load_quiterss_news.sql
+	private static final int UNLIMITED = -1; // SQLite LIMIT without upper bound
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private final Connection connection;
+	private final int pageSize;
+	private final int fetchSize;
+	private long readNanos;
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @param connection Connection to the QuiteRSS database.
+	 * @param pageSize   Rows per page, {@code 0} to read the whole range with a single cursor.
+	 * @param fetchSize  Fetch size hint given to the driver, {@code 0} for its default.
+	 */
+	public KeysetNewsReader(Connection connection, int pageSize, int fetchSize) {
+		this.connection = connection;
+		this.pageSize = pageSize;
+		this.fetchSize = fetchSize;
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * Hands every article of {@code [fromId, toId)} to {@code handler}, in ascending id order, the columns being those of
+	 * {@code load_quiterss_news.sql}. Stops early, between two rows, as soon as {@code stopRequested} returns {@code true}.
+	 *
+	 * @return Number of rows handled.
+	 */
+	public long read(long fromId, long toId, BooleanSupplier stopRequested, RowHandler handler) throws SQLException {
+		long rows = 0;
+		long nextId = fromId;
+
+		try (PreparedStatement stmt = connection.prepareStatement(LOAD_QUITERSS_NEWS_QUERY)) {
+			if (fetchSize > 0)
+				stmt.setFetchSize(fetchSize);
+
+			while (nextId < toId && !stopRequested.getAsBoolean()) {
+				int pageRows = 0;
+				long lastId = nextId;
+
+				stmt.setLong(1, nextId);
+				stmt.setLong(2, toId);
+				stmt.setInt(3, pageSize > 0 ? pageSize : UNLIMITED);
+
+				long start = System.nanoTime();
+				try (ResultSet rs = stmt.executeQuery()) { // Closing the result set ends the read transaction of the page
+					readNanos += System.nanoTime() - start;
+
+					while (!stopRequested.getAsBoolean()) {
+						start = System.nanoTime();
+						boolean hasRow = rs.next();
+						readNanos += System.nanoTime() - start;
+						if (!hasRow)
+							break;
+
+						handler.handleRow(rs);
+						lastId = rs.getLong(ID_COLUMN);
+						pageRows++;
+					}
+				}
+
+				rows += pageRows;
+				if (pageSize <= 0 || pageRows < pageSize)
+					break;
+
+				nextId = lastId + 1;
+			}
+		}
+
+		return rows;
+	}
+
+
+	/**
+	 * @return Time spent so far in {@code executeQuery} and {@code next}, i.e. stepping SQLite, excluding the handler.
+	 */
+	public long getReadNanos() {
+		return readNanos;
+	}
+
+
+}
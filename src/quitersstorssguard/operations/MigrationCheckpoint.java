@@ -0,0 +1,298 @@
+package quitersstorssguard.operations;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import quitersstorssguard.utils.IntIntMap;
+
+
+/**
+ * Progress of a migration, kept in a small key/value table inside the RSSGuard database itself.
+ * <p>
+ * Every write goes through the target connection of the caller and therefore joins its open transaction: the high-water
+ * mark of an article range is committed together with the articles it covers, and the end of the feed phase together
+ * with the last feed. Whatever survives a crash or an interrupt is thus exactly what the checkpoint describes, and a
+ * resumed run can continue after it without inserting any row twice.
+ * <p>
+ * The article phase is described by the key ranges it was split into ({@code bounds}, one more than the number of
+ * ranges) and the last {@code news.id} committed for each range. Once the migration is complete, the highest
+ * {@code news.id} and {@code feeds.id} copied so far are the watermarks of the next delta sync.
+ * <p>
+ * When several QuiteRSS databases are merged, each of them is one article range, and the ids given to its categories
+ * and feeds are kept too so that a resumed run maps its articles the same way.
+ */
+public class MigrationCheckpoint {
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************* Constants ********************************************************************
+	// **************************************************************************************************************************************************
+	public static final String TABLE_NAME = "QuiteRssMigrationState";
+
+	private static final String RUN_COMPLETED = "run.completed";
+	private static final String FEEDS_DONE = "feeds.done";
+	private static final String NEWS_RANGES = "news.ranges";
+	private static final String NEWS_BOUND = "news.bound.";
+	private static final String NEWS_LAST_ID = "news.last_id.";
+	private static final String NEWS_BASE_ID = "news.base_id";
+	private static final String NEWS_SYNCED_ID = "news.synced_id";
+	private static final String FEEDS_SYNCED_ID = "feeds.synced_id";
+	private static final String SOURCES = "run.sources";
+	private static final String FEEDS_MAP = "feeds.map."; // feeds.map.<source>.<QuiteRSS id> -> RSSGuard id
+
+	public static final long UNKNOWN_ID = Long.MIN_VALUE;
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private final Connection targetConnection;
+	private final Map<String, Long> values = new HashMap<>();
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @param targetConnection Connection to the RSSGuard database, the one the migrated rows are written through.
+	 */
+	public MigrationCheckpoint(Connection targetConnection) {
+		this.targetConnection = targetConnection;
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * Reads the stored state, if any.
+	 *
+	 * @return {@code true} when the RSSGuard database already holds a checkpoint table.
+	 */
+	public boolean load() throws SQLException {
+		values.clear();
+
+		try (Statement stmt = targetConnection.createStatement();
+				ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = '" + TABLE_NAME + "'")) {
+			if (!rs.next() || rs.getInt(1) == 0)
+				return false;
+		}
+
+		try (Statement stmt = targetConnection.createStatement();
+				ResultSet rs = stmt.executeQuery("SELECT key, value FROM " + TABLE_NAME)) {
+			while (rs.next())
+				values.put(rs.getString(1), rs.getLong(2));
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Creates an empty checkpoint table for a new run.
+	 */
+	public void create() throws SQLException {
+		try (Statement stmt = targetConnection.createStatement()) {
+			stmt.execute("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (key TEXT PRIMARY KEY, value INTEGER NOT NULL)");
+		}
+
+		put(RUN_COMPLETED, 0);
+	}
+
+
+	public boolean isCompleted() {
+		return get(RUN_COMPLETED, 0) == 1;
+	}
+
+
+	/**
+	 * Ends a full migration, {@code lastArticleId} becoming the watermark of the first delta sync.
+	 */
+	public void markCompleted(long lastArticleId) throws SQLException {
+		put(NEWS_BASE_ID, lastArticleId);
+		put(NEWS_SYNCED_ID, lastArticleId);
+		put(RUN_COMPLETED, 1);
+	}
+
+
+	public boolean isFeedPhaseDone() {
+		return get(FEEDS_DONE, 0) == 1;
+	}
+
+
+	/**
+	 * Must be called in the transaction inserting the last categories and feeds.
+	 */
+	public void markFeedPhaseDone() throws SQLException {
+		put(FEEDS_DONE, 1);
+	}
+
+
+	/**
+	 * @return Highest {@code news.id} copied by the full migration, or {@link #UNKNOWN_ID}. Up to this id the RSSGuard
+	 *         {@code Messages.id} equals the QuiteRSS {@code news.id}, later articles are mapped by the delta sync.
+	 */
+	public long getBaseArticleId() {
+		return get(NEWS_BASE_ID, UNKNOWN_ID);
+	}
+
+
+	/**
+	 * @return Highest {@code news.id} copied by the full migration or a delta sync, or {@link #UNKNOWN_ID}.
+	 */
+	public long getSyncedArticleId() {
+		return get(NEWS_SYNCED_ID, UNKNOWN_ID);
+	}
+
+
+	/**
+	 * Must be called in the transaction inserting the articles up to {@code lastId}.
+	 */
+	public void recordSyncedArticleId(long lastId) throws SQLException {
+		put(NEWS_SYNCED_ID, lastId);
+	}
+
+
+	/**
+	 * @return Highest {@code feeds.id} (category or feed) copied so far, or {@link #UNKNOWN_ID}.
+	 */
+	public long getSyncedFeedId() {
+		return get(FEEDS_SYNCED_ID, UNKNOWN_ID);
+	}
+
+
+	/**
+	 * Must be called in the transaction inserting the categories and feeds up to {@code lastId}.
+	 */
+	public void recordSyncedFeedId(long lastId) throws SQLException {
+		put(FEEDS_SYNCED_ID, lastId);
+	}
+
+
+	/**
+	 * @return Number of QuiteRSS databases merged by the run, {@code 1} for checkpoints written before merging existed.
+	 */
+	public int getSourceCount() {
+		return (int) get(SOURCES, 1);
+	}
+
+
+	/**
+	 * Must be called in the transaction inserting the categories and feeds.
+	 */
+	public void recordSourceCount(int sources) throws SQLException {
+		put(SOURCES, sources);
+	}
+
+
+	/**
+	 * @return RSSGuard ids of the categories and feeds of QuiteRSS database {@code source}, by QuiteRSS id.
+	 */
+	public IntIntMap getFeedIds(int source) {
+		String prefix = FEEDS_MAP + source + ".";
+		IntIntMap feedIds = new IntIntMap(0);
+
+		values.forEach((key, value) -> {
+			if (key.startsWith(prefix))
+				feedIds.put(Integer.parseInt(key.substring(prefix.length())), value.intValue());
+		});
+
+		return feedIds;
+	}
+
+
+	/**
+	 * Must be called in the transaction inserting the categories and feeds of QuiteRSS database {@code source}.
+	 */
+	public void recordFeedIds(int source, IntIntMap feedIds) throws SQLException {
+		for (int sourceId : feedIds.keys())
+			put(FEEDS_MAP + source + "." + sourceId, feedIds.get(sourceId, 0));
+	}
+
+
+	/**
+	 * @return Bounds of the article key ranges of the interrupted run ({@code null} if the article phase never
+	 *         started), range {@code i} being {@code [bounds[i], bounds[i + 1])}.
+	 */
+	public long[] getArticleRangeBounds() {
+		int ranges = (int) get(NEWS_RANGES, 0);
+		if (ranges == 0)
+			return null;
+
+		long[] bounds = new long[ranges + 1];
+		for (int i = 0; i <= ranges; i++)
+			bounds[i] = get(NEWS_BOUND + i, 0);
+
+		return bounds;
+	}
+
+
+	/**
+	 * Records how the article phase is split, in its own transaction, before the first article is written.
+	 */
+	public void startArticleRanges(long[] bounds) throws SQLException {
+		boolean autoCommit = targetConnection.getAutoCommit();
+
+		try {
+			targetConnection.setAutoCommit(false);
+			put(NEWS_RANGES, bounds.length - 1);
+			for (int i = 0; i < bounds.length; i++)
+				put(NEWS_BOUND + i, bounds[i]);
+
+			targetConnection.commit();
+		} catch (SQLException e) {
+			targetConnection.rollback();
+			throw e;
+		} finally {
+			targetConnection.setAutoCommit(autoCommit);
+		}
+	}
+
+
+	/**
+	 * @return First {@code news.id} of range {@code range} that still has to be migrated.
+	 */
+	public long getArticleResumeId(int range) {
+		long lastId = get(NEWS_LAST_ID + range, Long.MIN_VALUE);
+		long lowerBound = get(NEWS_BOUND + range, Long.MIN_VALUE);
+		return lastId == Long.MIN_VALUE ? lowerBound : Math.max(lowerBound, lastId + 1);
+	}
+
+
+	/**
+	 * Must be called in the transaction inserting the articles of range {@code range} up to {@code lastId}.
+	 */
+	public void recordArticleProgress(int range, long lastId) throws SQLException {
+		put(NEWS_LAST_ID + range, lastId);
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Helpers *********************************************************************
+	// **************************************************************************************************************************************************
+	private long get(String key, long defaultValue) {
+		return values.getOrDefault(key, defaultValue);
+	}
+
+
+	private void put(String key, long value) throws SQLException {
+		// Not kept open between calls, a pending statement would prevent the final VACUUM
+		try (PreparedStatement stmt = targetConnection.prepareStatement("INSERT OR REPLACE INTO " + TABLE_NAME + " (key, value) VALUES (?, ?)")) {
+			stmt.setString(1, key);
+			stmt.setLong(2, value);
+			stmt.executeUpdate();
+		}
+
+		values.put(key, value);
+	}
+
+
+}
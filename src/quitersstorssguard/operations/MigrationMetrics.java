@@ -0,0 +1,415 @@
+package quitersstorssguard.operations;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import quitersstorssguard.records.ResourceSample;
+import quitersstorssguard.utils.LatencyHistogram;
+
+
+/**
+ * Instrumentation of one run: latency histograms of every stage an article batch goes through, article and byte
+ * throughput, and heap / garbage collection samples taken by a background thread.
+ * <p>
+ * Stages are timed once per batch (the read and decode time of a batch being the sum over its rows), so recording
+ * costs a few clock reads per row at most. At the end of the run the figures can be written as a JSON report, for
+ * comparing runs, and in the Prometheus text format, e.g. for the textfile collector of the node exporter.
+ */
+public class MigrationMetrics {
+
+
+	public enum Stage {
+		READ("read"),                    // Stepping the QuiteRSS result sets (executeQuery and next)
+		DECODE("decode"),                // Converting the columns of a row into the batch
+		TRANSFORM("transform"),          // Article transforms run on a complete batch before it is handed over
+		BIND("bind"),                    // Setting the INSERT parameters and addBatch
+		EXECUTE_BATCH("execute_batch"),  // executeBatch on the RSSGuard connection
+		COMMIT("commit"),                // Committing the batch and its checkpoint
+		SINK("sink"),                    // Writing the batch to the sinks after RSSGuard (NDJSON exports), once per batch
+		COMPACTION("compaction");        // Statistics, measures and compaction at the end of a full migration, once per run
+
+		private final String label;
+
+		Stage(String label) {
+			this.label = label;
+		}
+
+		public String label() {
+			return label;
+		}
+	}
+
+
+	/**
+	 * Read and decode time of the batch a reader thread is filling, recorded when the batch is handed over.
+	 * One instance per reader thread.
+	 */
+	public final class ReaderClock {
+		private final LongSupplier readNanos;
+		private long reportedReadNanos;
+		private long decodeNanos;
+
+		private ReaderClock(LongSupplier readNanos) {
+			this.readNanos = readNanos;
+		}
+
+		public void addDecode(long nanos) {
+			decodeNanos += nanos;
+		}
+
+		public void batchHandedOver() {
+			long nanos = readNanos.getAsLong();
+			record(Stage.READ, nanos - reportedReadNanos);
+			record(Stage.DECODE, decodeNanos);
+			reportedReadNanos = nanos;
+			decodeNanos = 0;
+		}
+	}
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************* Constants ********************************************************************
+	// **************************************************************************************************************************************************
+	private static final long SAMPLE_INTERVAL_MS = 1000;
+	private static final String PROMETHEUS_PREFIX = "quiterss_migration_";
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private final Map<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+	private final LongAdder articles = new LongAdder();
+	private final LongAdder articleBytes = new LongAdder();
+	private final List<ResourceSample> samples = new ArrayList<>();
+
+	private String operation = "migration";
+	private String profile = "";
+	private Map<String, String> sourcePragmas = Map.of();
+	private Map<String, String> targetPragmas = Map.of();
+	private Instant startedAt;
+	private long startNanos;
+	private long stopNanos;
+	private ScheduledExecutorService sampler;
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	public MigrationMetrics() {
+		for (Stage stage : Stage.values())
+			histograms.put(stage, new LatencyHistogram());
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * Starts the clock of the run and the heap / GC sampler.
+	 *
+	 * @param operation Name of the run in the reports, e.g. {@code migration} or {@code delta}.
+	 */
+	public void start(String operation) {
+		this.operation = operation;
+		startedAt = Instant.now();
+		startNanos = System.nanoTime();
+
+		sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "migration-metrics");
+			thread.setDaemon(true);
+			return thread;
+		});
+		sampler.scheduleAtFixedRate(this::sample, 0, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+	}
+
+
+	/**
+	 * Stops the sampler after a last sample. Safe to call more than once.
+	 */
+	public void stop() {
+		if (sampler == null)
+			return;
+
+		sampler.shutdownNow();
+		try {
+			sampler.awaitTermination(SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		sampler = null;
+
+		stopNanos = System.nanoTime();
+		sample();
+	}
+
+
+	/**
+	 * Records the SQLite settings of the run, so that reports of runs with different profiles can be compared.
+	 */
+	public void setPragmas(String profile, Map<String, String> sourcePragmas, Map<String, String> targetPragmas) {
+		this.profile = profile;
+		this.sourcePragmas = sourcePragmas;
+		this.targetPragmas = targetPragmas;
+	}
+
+
+	/**
+	 * @param readNanos Time the reader has spent reading so far, e.g. {@link KeysetNewsReader#getReadNanos()}.
+	 */
+	public ReaderClock newReaderClock(LongSupplier readNanos) {
+		return new ReaderClock(readNanos);
+	}
+
+
+	public void record(Stage stage, long nanos) {
+		histograms.get(stage).record(nanos);
+	}
+
+
+	/**
+	 * Counts one committed article batch.
+	 */
+	public void recordArticlesWritten(int rows, long bytes) {
+		articles.add(rows);
+		articleBytes.add(bytes);
+	}
+
+
+	public LatencyHistogram getHistogram(Stage stage) {
+		return histograms.get(stage);
+	}
+
+
+	public long getArticles() {
+		return articles.sum();
+	}
+
+
+	public long getArticleBytes() {
+		return articleBytes.sum();
+	}
+
+
+	/**
+	 * @return Lines for the migration log, one per stage that recorded samples.
+	 */
+	public List<String> describeStages() {
+		List<String> lines = new ArrayList<>();
+
+		for (Stage stage : Stage.values()) {
+			LatencyHistogram histogram = histograms.get(stage);
+			if (histogram.getCount() == 0)
+				continue;
+
+			lines.add(String.format(Locale.ROOT, "  - %-13s\t: %,d sample(s), %.1f ms in total, p50 %.2f ms, p95 %.2f ms, max %.2f ms",
+					stage.label(), histogram.getCount(), histogram.getSumNanos() / 1e6, histogram.quantileNanos(0.5) / 1e6,
+					histogram.quantileNanos(0.95) / 1e6, histogram.getMaxNanos() / 1e6));
+		}
+
+		return lines;
+	}
+
+
+	/**
+	 * Writes every figure of the run as one JSON document.
+	 */
+	public void writeJson(Path path) throws IOException {
+		double seconds = elapsedSeconds();
+		StringBuilder json = new StringBuilder(4096);
+
+		json.append("{\n");
+		json.append("  \"operation\": \"").append(operation).append("\",\n");
+		json.append("  \"startedAt\": \"").append(startedAt).append("\",\n");
+		json.append("  \"profile\": \"").append(profile).append("\",\n");
+		json.append("  \"pragmas\": {\"source\": ");
+		appendPragmas(json, sourcePragmas);
+		json.append(", \"target\": ");
+		appendPragmas(json, targetPragmas);
+		json.append("},\n");
+		json.append("  \"durationSeconds\": ").append(decimal(seconds)).append(",\n");
+		json.append("  \"articles\": ").append(getArticles()).append(",\n");
+		json.append("  \"articleBytes\": ").append(getArticleBytes()).append(",\n");
+		json.append("  \"articlesPerSecond\": ").append(decimal(getArticles() / seconds)).append(",\n");
+		json.append("  \"bytesPerSecond\": ").append(decimal(getArticleBytes() / seconds)).append(",\n");
+
+		json.append("  \"stages\": {");
+		String stageSeparator = "\n";
+		for (Stage stage : Stage.values()) {
+			LatencyHistogram histogram = histograms.get(stage);
+			json.append(stageSeparator).append("    \"").append(stage.label()).append("\": {")
+					.append("\"count\": ").append(histogram.getCount())
+					.append(", \"sumSeconds\": ").append(decimal(histogram.getSumNanos() / 1e9))
+					.append(", \"minSeconds\": ").append(decimal(histogram.getMinNanos() / 1e9))
+					.append(", \"p50Seconds\": ").append(decimal(histogram.quantileNanos(0.5) / 1e9))
+					.append(", \"p95Seconds\": ").append(decimal(histogram.quantileNanos(0.95) / 1e9))
+					.append(", \"p99Seconds\": ").append(decimal(histogram.quantileNanos(0.99) / 1e9))
+					.append(", \"maxSeconds\": ").append(decimal(histogram.getMaxNanos() / 1e9))
+					.append(", \"buckets\": [");
+
+			long[] counts = histogram.getBucketCounts();
+			for (int bucket = 0; bucket < counts.length; bucket++) {
+				json.append(bucket == 0 ? "" : ", ").append("{\"le\": ")
+						.append(bucket < LatencyHistogram.BUCKET_BOUNDS.length ? decimal(LatencyHistogram.BUCKET_BOUNDS[bucket]) : "\"+Inf\"")
+						.append(", \"count\": ").append(counts[bucket]).append('}');
+			}
+			json.append("]}");
+			stageSeparator = ",\n";
+		}
+		json.append("\n  },\n");
+
+		List<ResourceSample> copy = getSamples();
+		ResourceSample last = copy.isEmpty() ? null : copy.get(copy.size() - 1);
+		ResourceSample first = copy.isEmpty() ? null : copy.get(0);
+		json.append("  \"memory\": {")
+				.append("\"heapUsedPeakBytes\": ").append(copy.stream().mapToLong(ResourceSample::heapUsedBytes).max().orElse(0))
+				.append(", \"heapMaxBytes\": ").append(Runtime.getRuntime().maxMemory())
+				.append(", \"gcCollections\": ").append(last == null ? 0 : last.gcCollections() - first.gcCollections())
+				.append(", \"gcSeconds\": ").append(decimal(last == null ? 0 : (last.gcMillis() - first.gcMillis()) / 1e3))
+				.append("},\n");
+
+		json.append("  \"samples\": [");
+		String sampleSeparator = "\n";
+		for (ResourceSample sample : copy) {
+			json.append(sampleSeparator).append("    {")
+					.append("\"elapsedSeconds\": ").append(decimal(sample.elapsedMillis() / 1e3))
+					.append(", \"heapUsedBytes\": ").append(sample.heapUsedBytes())
+					.append(", \"heapCommittedBytes\": ").append(sample.heapCommittedBytes())
+					.append(", \"gcCollections\": ").append(sample.gcCollections())
+					.append(", \"gcSeconds\": ").append(decimal(sample.gcMillis() / 1e3))
+					.append(", \"articles\": ").append(sample.articles())
+					.append(", \"articleBytes\": ").append(sample.articleBytes())
+					.append('}');
+			sampleSeparator = ",\n";
+		}
+		json.append("\n  ]\n}\n");
+
+		Files.writeString(path, json, StandardCharsets.UTF_8);
+	}
+
+
+	/**
+	 * Writes the histograms and totals in the Prometheus text exposition format.
+	 */
+	public void writePrometheus(Path path) throws IOException {
+		double seconds = elapsedSeconds();
+		String labels = "operation=\"" + operation + "\",profile=\"" + profile + "\"";
+		StringBuilder text = new StringBuilder(4096);
+
+		String name = PROMETHEUS_PREFIX + "stage_duration_seconds";
+		text.append("# HELP ").append(name).append(" Time spent per article batch (once per run for compaction) in each stage.\n");
+		text.append("# TYPE ").append(name).append(" histogram\n");
+
+		for (Stage stage : Stage.values()) {
+			LatencyHistogram histogram = histograms.get(stage);
+			String stageLabels = labels + ",stage=\"" + stage.label() + "\"";
+			long[] counts = histogram.getBucketCounts();
+			long cumulative = 0;
+
+			for (int bucket = 0; bucket < counts.length; bucket++) {
+				cumulative += counts[bucket];
+				String bound = bucket < LatencyHistogram.BUCKET_BOUNDS.length ? decimal(LatencyHistogram.BUCKET_BOUNDS[bucket]) : "+Inf";
+				text.append(name).append("_bucket{").append(stageLabels).append(",le=\"").append(bound).append("\"} ").append(cumulative).append('\n');
+			}
+			text.append(name).append("_sum{").append(stageLabels).append("} ").append(decimal(histogram.getSumNanos() / 1e9)).append('\n');
+			text.append(name).append("_count{").append(stageLabels).append("} ").append(histogram.getCount()).append('\n');
+		}
+
+		List<ResourceSample> copy = getSamples();
+		ResourceSample first = copy.isEmpty() ? null : copy.get(0);
+		ResourceSample last = copy.isEmpty() ? null : copy.get(copy.size() - 1);
+
+		appendMetric(text, "articles_total", "counter", "Articles written to RSSGuard.", labels, Long.toString(getArticles()));
+		appendMetric(text, "article_bytes_total", "counter", "Bytes of article columns bound to the INSERT statements.", labels, Long.toString(getArticleBytes()));
+		appendMetric(text, "duration_seconds", "gauge", "Duration of the run.", labels, decimal(seconds));
+		appendMetric(text, "articles_per_second", "gauge", "Average article throughput of the run.", labels, decimal(getArticles() / seconds));
+		appendMetric(text, "bytes_per_second", "gauge", "Average byte throughput of the run.", labels, decimal(getArticleBytes() / seconds));
+		appendMetric(text, "heap_used_peak_bytes", "gauge", "Highest sampled heap usage.", labels,
+				Long.toString(copy.stream().mapToLong(ResourceSample::heapUsedBytes).max().orElse(0)));
+		appendMetric(text, "gc_collections_total", "counter", "Garbage collections during the run.", labels,
+				Long.toString(last == null ? 0 : last.gcCollections() - first.gcCollections()));
+		appendMetric(text, "gc_seconds_total", "counter", "Time spent in garbage collection during the run.", labels,
+				decimal(last == null ? 0 : (last.gcMillis() - first.gcMillis()) / 1e3));
+
+		Files.writeString(path, text, StandardCharsets.UTF_8);
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Helpers *********************************************************************
+	// **************************************************************************************************************************************************
+	private void sample() {
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		long gcCollections = 0;
+		long gcMillis = 0;
+
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcCollections += Math.max(0, collector.getCollectionCount());
+			gcMillis += Math.max(0, collector.getCollectionTime());
+		}
+
+		ResourceSample sample = new ResourceSample(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), heap.getUsed(), heap.getCommitted(),
+				gcCollections, gcMillis, getArticles(), getArticleBytes());
+
+		synchronized (samples) {
+			samples.add(sample);
+		}
+	}
+
+
+	private List<ResourceSample> getSamples() {
+		synchronized (samples) {
+			return new ArrayList<>(samples);
+		}
+	}
+
+
+	private double elapsedSeconds() {
+		long end = stopNanos != 0 ? stopNanos : System.nanoTime();
+		return Math.max(1e-3, (end - startNanos) / 1e9);
+	}
+
+
+	private static void appendPragmas(StringBuilder json, Map<String, String> pragmas) {
+		json.append('{');
+		String separator = "";
+		for (Map.Entry<String, String> pragma : pragmas.entrySet()) {
+			json.append(separator).append('"').append(pragma.getKey()).append("\": \"").append(pragma.getValue()).append('"');
+			separator = ", ";
+		}
+		json.append('}');
+	}
+
+
+	private static void appendMetric(StringBuilder text, String suffix, String type, String help, String labels, String value) {
+		String name = PROMETHEUS_PREFIX + suffix;
+		text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+		text.append(name).append('{').append(labels).append("} ").append(value).append('\n');
+	}
+
+
+	private static String decimal(double value) {
+		return String.format(Locale.ROOT, "%.6f", value).replaceAll("0+$", "").replaceAll("\\.$", ".0");
+	}
+
+
+}
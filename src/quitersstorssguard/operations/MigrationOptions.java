@@ -0,0 +1,469 @@
+package quitersstorssguard.operations;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Runtime switches for a migration run, filled from the command line by {@code Main}.
+ * Every setting has a default that reproduces the historical behaviour of the migrator.
+ */
+public class MigrationOptions {
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private boolean pipelined = true;
+	private int shards = 1;
+	private boolean resume;
+	private PragmaProfile pragmaProfile = PragmaProfile.TURBO;
+	private final Map<String, String> sourcePragmas = new TreeMap<>(); // Overrides of the profile
+	private final Map<String, String> targetPragmas = new TreeMap<>();
+	private boolean delta;
+	private int pageSize = 20_000;
+	private int fetchSize;
+	private int batchSize;
+	private Duration commitLatency = Duration.ofMillis(250);
+	private long batchByteBudget = 32L * 1024 * 1024;
+	private Path reportPath;
+	private boolean quiet;
+	private boolean bulkLoad;
+	private boolean inEngine;
+	private boolean shadow;
+	private boolean extractImages;
+	private Path imageDirectory;
+	private int slimHtmlThreads;
+	private int iconSize;
+	private DuplicateArticleFilter.Scope dedupScope;
+	private boolean verify = true;
+	private PostLoadCompactor.Mode compactMode = PostLoadCompactor.Mode.AUTO;
+	private final List<Path> exportPaths = new ArrayList<>(); // NDJSON files written alongside RSSGuard
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	public MigrationOptions() {
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// *************************************************************** Getters & Setters ****************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @return {@code true} when articles are read and written by two overlapping stages, {@code false} for the one-thread serial loop.
+	 */
+	public boolean isPipelined() {
+		return pipelined;
+	}
+
+
+	public MigrationOptions setPipelined(boolean pipelined) {
+		this.pipelined = pipelined;
+		return this;
+	}
+
+
+	/**
+	 * @return Number of key ranges of {@code news} read in parallel, each through its own read-only connection. Values
+	 *         above 1 always use the pipelined writer.
+	 */
+	public int getShards() {
+		return shards;
+	}
+
+
+	public MigrationOptions setShards(int shards) {
+		if (shards < 1)
+			throw new IllegalArgumentException("Shard count must be at least 1, got " + shards);
+
+		this.shards = shards;
+		return this;
+	}
+
+
+	/**
+	 * @return {@code true} to continue an interrupted migration from the checkpoint stored in the RSSGuard database.
+	 */
+	public boolean isResume() {
+		return resume;
+	}
+
+
+	public MigrationOptions setResume(boolean resume) {
+		this.resume = resume;
+		return this;
+	}
+
+
+	/**
+	 * @return Pragmas of the QuiteRSS and RSSGuard connections before the overrides of {@link #setSourcePragma} and
+	 *         {@link #setTargetPragma}.
+	 */
+	public PragmaProfile getPragmaProfile() {
+		return pragmaProfile;
+	}
+
+
+	public MigrationOptions setPragmaProfile(PragmaProfile pragmaProfile) {
+		this.pragmaProfile = pragmaProfile;
+		return this;
+	}
+
+
+	/**
+	 * @return Pragmas of the QuiteRSS connections: those of the profile, overridden.
+	 */
+	public Map<String, String> getSourcePragmas() {
+		Map<String, String> pragmas = new TreeMap<>(pragmaProfile.getSourcePragmas());
+		pragmas.putAll(sourcePragmas);
+		return Collections.unmodifiableMap(pragmas);
+	}
+
+
+	public MigrationOptions setSourcePragma(String name, String value) {
+		PragmaProfile.checkPragma(name, value, true);
+		sourcePragmas.put(name, value);
+		return this;
+	}
+
+
+	/**
+	 * @return Pragmas of the RSSGuard connection: those of the profile, overridden.
+	 */
+	public Map<String, String> getTargetPragmas() {
+		Map<String, String> pragmas = new TreeMap<>(pragmaProfile.getTargetPragmas());
+		pragmas.putAll(targetPragmas);
+		return Collections.unmodifiableMap(pragmas);
+	}
+
+
+	public MigrationOptions setTargetPragma(String name, String value) {
+		PragmaProfile.checkPragma(name, value, false);
+		targetPragmas.put(name, value);
+		return this;
+	}
+
+
+	/**
+	 * @return {@code true} when the RSSGuard database is written with a journal, so a crash of the machine cannot
+	 *         corrupt it; {@code false} for the faster unjournaled writes.
+	 */
+	public boolean isCrashSafe() {
+		return !"OFF".equalsIgnoreCase(getTargetPragmas().get("journal_mode"));
+	}
+
+
+	/**
+	 * @return {@code true} to only carry over what changed in QuiteRSS since the last full migration or delta sync.
+	 */
+	public boolean isDelta() {
+		return delta;
+	}
+
+
+	public MigrationOptions setDelta(boolean delta) {
+		this.delta = delta;
+		return this;
+	}
+
+
+	/**
+	 * @return Number of {@code news} rows read per keyset page, i.e. per short read transaction on the QuiteRSS database,
+	 *         or {@code 0} to read each key range with one cursor held open until its end.
+	 */
+	public int getPageSize() {
+		return pageSize;
+	}
+
+
+	public MigrationOptions setPageSize(int pageSize) {
+		if (pageSize < 0)
+			throw new IllegalArgumentException("Page size must not be negative, got " + pageSize);
+
+		this.pageSize = pageSize;
+		return this;
+	}
+
+
+	/**
+	 * @return Fetch size hint given to the driver for article queries, {@code 0} for its default.
+	 */
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+
+	public MigrationOptions setFetchSize(int fetchSize) {
+		if (fetchSize < 0)
+			throw new IllegalArgumentException("Fetch size must not be negative, got " + fetchSize);
+
+		this.fetchSize = fetchSize;
+		return this;
+	}
+
+
+	/**
+	 * @return Fixed number of articles per batch and commit, or {@code 0} to let {@link AdaptiveBatchController} size
+	 *         batches from the measured commit latency.
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+
+	public MigrationOptions setBatchSize(int batchSize) {
+		if (batchSize != 0 && (batchSize < AdaptiveBatchController.MIN_ROWS || batchSize > AdaptiveBatchController.MAX_ROWS))
+			throw new IllegalArgumentException("Batch size must be 0 or between " + AdaptiveBatchController.MIN_ROWS + " and "
+					+ AdaptiveBatchController.MAX_ROWS + ", got " + batchSize);
+
+		this.batchSize = batchSize;
+		return this;
+	}
+
+
+	/**
+	 * @return Time one article batch should take to insert and commit, the target of adaptive batch sizing.
+	 */
+	public Duration getCommitLatency() {
+		return commitLatency;
+	}
+
+
+	public MigrationOptions setCommitLatency(Duration commitLatency) {
+		if (commitLatency.isNegative() || commitLatency.isZero())
+			throw new IllegalArgumentException("Commit latency must be positive, got " + commitLatency.toMillis() + " ms");
+
+		this.commitLatency = commitLatency;
+		return this;
+	}
+
+
+	/**
+	 * @return Maximum size in bytes of the columns bound by one batch, which bounds the memory held by the batches in flight.
+	 */
+	public long getBatchByteBudget() {
+		return batchByteBudget;
+	}
+
+
+	public MigrationOptions setBatchByteBudget(long batchByteBudget) {
+		if (batchByteBudget < 1024 * 1024)
+			throw new IllegalArgumentException("Batch memory must be at least 1 MB, got " + batchByteBudget + " bytes");
+
+		this.batchByteBudget = batchByteBudget;
+		return this;
+	}
+
+
+	/**
+	 * @return Path without extension of the performance reports written at the end of the run ({@code .json} and
+	 *         {@code .prom} are appended), or {@code null} to write none.
+	 */
+	public Path getReportPath() {
+		return reportPath;
+	}
+
+
+	public MigrationOptions setReportPath(Path reportPath) {
+		this.reportPath = reportPath;
+		return this;
+	}
+
+
+	/**
+	 * @return {@code true} to report progress as {@code key=value} lines for scripts instead of a line for humans.
+	 */
+	public boolean isQuiet() {
+		return quiet;
+	}
+
+
+	public MigrationOptions setQuiet(boolean quiet) {
+		this.quiet = quiet;
+		return this;
+	}
+
+
+	/**
+	 * @return {@code true} to drop the indexes and triggers of the loaded RSSGuard tables and disable foreign key
+	 *         enforcement during a full migration, then rebuild them and check every foreign key once at the end.
+	 */
+	public boolean isBulkLoad() {
+		return bulkLoad;
+	}
+
+
+	public MigrationOptions setBulkLoad(boolean bulkLoad) {
+		this.bulkLoad = bulkLoad;
+		return this;
+	}
+
+
+
+	/**
+	 * @return {@code true} to copy the QuiteRSS tables inside SQLite ({@code ATTACH} plus {@code INSERT ... SELECT})
+	 *         instead of reading every row through JDBC and binding it again.
+	 */
+	public boolean isInEngine() {
+		return inEngine;
+	}
+
+
+	public MigrationOptions setInEngine(boolean inEngine) {
+		this.inEngine = inEngine;
+		return this;
+	}
+
+
+
+	/**
+	 * @return {@code true} to migrate into a copy of the RSSGuard database, written without journal, and rename it
+	 *         over the original only once complete and checked.
+	 */
+	public boolean isShadow() {
+		return shadow;
+	}
+
+
+	public MigrationOptions setShadow(boolean shadow) {
+		this.shadow = shadow;
+		return this;
+	}
+
+
+
+	/**
+	 * @return {@code true} to move the base64 images embedded in articles into an image store and link them instead.
+	 */
+	public boolean isExtractImages() {
+		return extractImages;
+	}
+
+
+	public MigrationOptions setExtractImages(boolean extractImages) {
+		this.extractImages = extractImages;
+		return this;
+	}
+
+
+	/**
+	 * @return Directory of the extracted images, {@code null} for a directory named after the RSSGuard database, next
+	 *         to it.
+	 */
+	public Path getImageDirectory() {
+		return imageDirectory;
+	}
+
+
+	public MigrationOptions setImageDirectory(Path imageDirectory) {
+		this.imageDirectory = imageDirectory;
+		return this;
+	}
+
+
+	/**
+	 * @return Worker threads slimming the HTML of articles (scripts, styles, tracking pixels, whitespace), {@code 0} to
+	 *         leave it as it is.
+	 */
+	public int getSlimHtmlThreads() {
+		return slimHtmlThreads;
+	}
+
+
+	public MigrationOptions setSlimHtmlThreads(int slimHtmlThreads) {
+		if (slimHtmlThreads < 0)
+			throw new IllegalArgumentException("HTML slimming thread count cannot be negative, got " + slimHtmlThreads);
+
+		this.slimHtmlThreads = slimHtmlThreads;
+		return this;
+	}
+
+
+	/**
+	 * @return Largest width and height of feed icons in pixels, larger icons being downscaled, corrupt ones dropped and
+	 *         duplicates shared; {@code 0} to copy icons as they are.
+	 */
+	public int getIconSize() {
+		return iconSize;
+	}
+
+
+	public MigrationOptions setIconSize(int iconSize) {
+		if (iconSize < 0)
+			throw new IllegalArgumentException("Icon size cannot be negative, got " + iconSize);
+
+		this.iconSize = iconSize;
+		return this;
+	}
+
+
+	/**
+	 * @return How duplicate articles (same GUID, or same link without GUID) are detected and skipped, {@code null} to
+	 *         write every copy.
+	 */
+	public DuplicateArticleFilter.Scope getDedupScope() {
+		return dedupScope;
+	}
+
+
+	public MigrationOptions setDedupScope(DuplicateArticleFilter.Scope dedupScope) {
+		this.dedupScope = dedupScope;
+		return this;
+	}
+
+
+	/**
+	 * @return {@code true} to compare every migrated article with QuiteRSS before a full migration is marked completed.
+	 */
+	public boolean isVerify() {
+		return verify;
+	}
+
+
+	public MigrationOptions setVerify(boolean verify) {
+		this.verify = verify;
+		return this;
+	}
+
+
+	/**
+	 * @return How the RSSGuard database is compacted at the end of a full migration, {@link PostLoadCompactor.Mode#AUTO}
+	 *         to decide from its free pages and fragmentation.
+	 */
+	public PostLoadCompactor.Mode getCompactMode() {
+		return compactMode;
+	}
+
+
+	public MigrationOptions setCompactMode(PostLoadCompactor.Mode compactMode) {
+		this.compactMode = compactMode;
+		return this;
+	}
+
+
+	/**
+	 * @return Files the feeds and articles are also written to as NDJSON, gzip-compressed when their name ends with
+	 *         {@code .gz}, each by its own {@link NdjsonExportSink}.
+	 */
+	public List<Path> getExportPaths() {
+		return Collections.unmodifiableList(exportPaths);
+	}
+
+
+	public MigrationOptions addExportPath(Path exportPath) {
+		if (exportPaths.contains(exportPath))
+			throw new IllegalArgumentException("--export-ndjson is given " + exportPath + " twice");
+		exportPaths.add(exportPath);
+		return this;
+	}
+
+
+}
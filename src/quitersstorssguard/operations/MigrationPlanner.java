@@ -0,0 +1,571 @@
+package quitersstorssguard.operations;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.sqlite.SQLiteConfig;
+
+import quitersstorssguard.utils.Miscellaneous;
+
+
+/**
+ * Looks at the QuiteRSS databases before a migration and predicts what it will cost: run time per phase, peak heap
+ * and resident memory, size of the RSSGuard database and disk space needed. From the same figures it picks the
+ * settings of the run (engine, shards, batch memory, page size, SQLite cache and memory map) and writes them as a JSON
+ * plan, whose {@code options} the migration reads back with {@code --use-plan}.
+ * <p>
+ * Only cheap reads are made: the pages of every table from {@code dbstat} (the page count of the file when SQLite
+ * lacks it), the articles per feed from the {@code feedId_deleted} index, and the sizes of a few thousand articles
+ * picked at random for the description percentiles. Predictions come from rates measured on a reference machine (one
+ * core, SSD) and only scale with the cores available: they are estimates, good to a factor of about two.
+ */
+public class MigrationPlanner {
+
+	// Non-deleted articles of one feed of one QuiteRSS database
+	private record FeedSize(int source, int feedId, long articles) {
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************* Constants ********************************************************************
+	// **************************************************************************************************************************************************
+	private static final String SAMPLE_QUITERSS_NEWS_QUERY = Miscellaneous.readFileFromResources("resources/plan_quiterss_news_sample.sql");
+	private static final String COUNT_QUITERSS_FEEDS_QUERY = "SELECT feedId, COUNT(*) FROM news WHERE deleted = 0 GROUP BY feedId";
+	private static final String COUNT_QUITERSS_NEWS_QUERY = "SELECT COUNT(*), COALESCE(MIN(id), 1), COALESCE(MAX(id), 0) FROM news";
+	private static final String QUITERSS_ICONS_QUERY = "SELECT COUNT(*), COALESCE(SUM(length(CAST(image AS BLOB))), 0) FROM feeds";
+	private static final String TABLE_SIZES_QUERY = "SELECT name, pgsize, payload, mx_payload FROM dbstat WHERE aggregate = TRUE";
+
+	private static final long MB = 1024 * 1024;
+	private static final int SAMPLE_PROBES = 4096;
+	private static final long SAMPLE_SEED = 1; // Same databases, same plan
+	private static final int TOP_FEEDS = 5;
+
+	// Rates of the reference machine
+	private static final double READ_SECONDS_PER_ROW = 4e-6;        // Stepping, decoding and batching one news row
+	private static final double READ_BYTES_PER_SECOND = 230e6;
+	private static final double WRITE_SECONDS_PER_ROW = 6e-6;       // Binding, inserting and indexing one Messages row
+	private static final double WRITE_BYTES_PER_SECOND = 200e6;
+	private static final double IN_ENGINE_SECONDS_PER_ROW = 3e-6;
+	private static final double IN_ENGINE_BYTES_PER_SECOND = 200e6;
+	private static final double VERIFY_SECONDS_PER_ROW = 5e-6;      // Per worker thread
+	private static final double VERIFY_BYTES_PER_SECOND = 170e6;
+	private static final double MEASURE_BYTES_PER_SECOND = 2e9;     // ANALYZE with a sample limit and the walk of dbstat before compacting
+	private static final double COMPACT_BYTES_PER_SECOND = 500e6;   // VACUUM INTO a new file
+	private static final long TARGET_BYTES_PER_ROW = 410;           // Record header, ids, flags and index entries of a Messages row besides its text
+	private static final long TARGET_SCHEMA_BYTES = MB;
+	private static final long HEAP_BASE_BYTES = 48 * MB;            // Heap in use besides the article batches
+	private static final double HEAP_BYTES_PER_BATCH_BYTE = 1.25;   // Bound strings plus what the collector has not reclaimed yet
+	private static final double HEAP_HEADROOM = 0.6;                // Share of the maximum heap the predicted peak may use
+	private static final double HEAP_COMMITTED_PER_USED = 1.3;
+	private static final long JVM_RESIDENT_BYTES = 150 * MB;        // Code, metaspace, thread stacks, SQLite itself
+	private static final long DEDUP_BYTES_PER_ARTICLE = 16;         // Off-heap hash set kept under half full
+
+	// Bounds of the recommendations
+	private static final long MIN_BATCH_BYTES = 4 * MB;
+	private static final long MAX_BATCH_BYTES = 32 * MB;            // Larger batches buy nothing once commits take the target latency
+	private static final long PAGE_BYTES = 64 * MB;                 // Article data read per keyset page
+	private static final int MIN_PAGE_ROWS = 2_000;
+	private static final int MAX_PAGE_ROWS = 100_000;
+	private static final long MIN_CACHE_BYTES = 80 * MB;            // The default of every profile
+	private static final long MAX_CACHE_BYTES = 512 * MB;
+	private static final long CACHE_BYTES_PER_ROW = 128;            // Index pages of Messages kept in the cache
+	private static final long SHARDING_MIN_ARTICLES = 500_000;
+	private static final int MAX_SHARDS = 4;
+
+	private static final Pattern OPTIONS_PATTERN = Pattern.compile("\"options\"\\s*:\\s*\\[(.*?)\\]", Pattern.DOTALL);
+	private static final Pattern STRING_PATTERN = Pattern.compile("\"((?:[^\"\\\\]|\\\\.)*)\"");
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private final List<Path> sourcePaths;
+	private final Path targetPath;
+	private final MigrationOptions options;
+
+	// Shape of the QuiteRSS databases, summed over all of them
+	private long sourceFileBytes;
+	private long sourceFreeBytes;
+	private boolean tableSizesExact = true;
+	private final Map<String, long[]> tableSizes = new TreeMap<>(); // Table or index name -> { bytes, payload bytes }
+	private long articles;
+	private long deletedArticles;
+	private long feedRows;
+	private long iconBytes;
+	private final List<FeedSize> feedSizes = new ArrayList<>();
+	private long articleBytes;
+	private long largestArticleBytes;
+	private long[] sampledDescriptionBytes = new long[0];
+	private double averageRowBytes;
+
+	// Machine
+	private final int cores = Runtime.getRuntime().availableProcessors();
+	private final long heapMaxBytes = Runtime.getRuntime().maxMemory();
+	private long physicalMemoryBytes;
+	private long targetFileBytes;
+	private long freeDiskBytes;
+
+	// Plan
+	private String engine;
+	private int shards;
+	private long batchByteBudget;
+	private int pageSize;
+	private long cacheBytes;
+	private long mmapBytes;
+	private double articleSeconds;
+	private double verifySeconds;
+	private double compactionSeconds;
+	private long peakHeapBytes;
+	private long recommendedHeapBytes;
+	private long peakResidentBytes;
+	private long targetBytes;
+	private long requiredDiskBytes;
+	private final List<String> warnings = new ArrayList<>();
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @param options Options given with {@code --plan}: transforms, merging, shadow copy or delta sync change the plan.
+	 */
+	public MigrationPlanner(List<Path> sourcePaths, Path targetPath, MigrationOptions options) {
+		this.sourcePaths = List.copyOf(sourcePaths);
+		this.targetPath = targetPath.toAbsolutePath();
+		this.options = options;
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * Reads the shape of every QuiteRSS database and the machine, then predicts the costs and picks the settings.
+	 */
+	public MigrationPlanner plan() throws SQLException, IOException, ClassNotFoundException {
+		Class.forName("org.sqlite.JDBC");
+
+		SQLiteConfig sourceConfig = new SQLiteConfig();
+		sourceConfig.setReadOnly(true);
+		sourceConfig.setPragma(SQLiteConfig.Pragma.BUSY_TIMEOUT, "30000");
+
+		List<long[]> samples = new ArrayList<>();
+		for (int source = 0; source < sourcePaths.size(); source++) {
+			sourceFileBytes += Files.size(sourcePaths.get(source));
+			try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + sourcePaths.get(source), sourceConfig.toProperties())) {
+				long[] news = readTableSizes(connection);
+				List<long[]> sourceSamples = new ArrayList<>();
+				long[] count = readArticles(connection, source, sourceSamples);
+				samples.addAll(sourceSamples);
+
+				// Article bytes from the payload of news when dbstat has it: a sample misses the few huge articles
+				if (news != null && count[1] > 0) {
+					articleBytes += Math.round((double) news[0] * count[0] / count[1]);
+					largestArticleBytes = Math.max(largestArticleBytes, news[1]);
+				} else {
+					articleBytes += Math.round(count[0] * sourceSamples.stream().mapToLong(sample -> sample[1]).average().orElse(0));
+					largestArticleBytes = Math.max(largestArticleBytes, sourceSamples.stream().mapToLong(sample -> sample[1]).max().orElse(0));
+				}
+			}
+		}
+
+		sampledDescriptionBytes = samples.stream().mapToLong(sample -> sample[0]).sorted().toArray();
+		averageRowBytes = articles > 0 ? (double) articleBytes / articles : 0;
+		feedSizes.sort(Comparator.comparingLong(FeedSize::articles).reversed());
+
+		if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean system)
+			physicalMemoryBytes = system.getTotalMemorySize();
+		targetFileBytes = Files.exists(targetPath) ? Files.size(targetPath) : 0;
+		freeDiskBytes = Files.getFileStore(targetPath.getParent()).getUsableSpace();
+
+		chooseSettings();
+		predictCosts();
+		return this;
+	}
+
+
+	/**
+	 * @return Options of the recommended settings, in the syntax of the command line.
+	 */
+	public List<String> getOptions() {
+		List<String> result = new ArrayList<>();
+
+		switch (engine) {
+			case "in-engine" -> result.add("--in-engine");
+			case "serial" -> result.add("--serial");
+			default -> result.add("--shards=" + shards);
+		}
+		if (!"in-engine".equals(engine)) {
+			result.add("--batch-memory=" + batchByteBudget / MB);
+			result.add("--page-size=" + pageSize);
+		}
+		result.add("--cache-size=" + cacheBytes / MB);
+		result.add("--mmap-size=" + mmapBytes / MB);
+		return result;
+	}
+
+
+	/**
+	 * @return Lines summing up the plan, for the console.
+	 */
+	public List<String> describe() {
+		List<String> lines = new ArrayList<>();
+
+		lines.add(String.format("QuiteRSS\t: %,d article(s) (%,d deleted) in %,d feed(s), %s on disk of which %s free pages%s",
+				articles, deletedArticles, feedSizes.size(), Miscellaneous.bytesToHumanReadable(sourceFileBytes),
+				Miscellaneous.bytesToHumanReadable(sourceFreeBytes), tableSizesExact ? "" : " (dbstat not available)"));
+		lines.add(String.format("  - Articles\t: %s per article on average, descriptions p50 %s, p90 %s, p99 %s, max %s (%,d sampled)",
+				Miscellaneous.bytesToHumanReadable(Math.round(averageRowBytes)), Miscellaneous.bytesToHumanReadable(percentile(0.5)),
+				Miscellaneous.bytesToHumanReadable(percentile(0.9)), Miscellaneous.bytesToHumanReadable(percentile(0.99)),
+				Miscellaneous.bytesToHumanReadable(percentile(1)), sampledDescriptionBytes.length));
+		lines.add(String.format("  - Largest	: article of %s, %s of article data in total", Miscellaneous.bytesToHumanReadable(largestArticleBytes),
+				Miscellaneous.bytesToHumanReadable(articleBytes)));
+		if (!feedSizes.isEmpty())
+			lines.add(String.format("  - Feeds\t: largest %,d article(s) (%.1f %%), icons %s", feedSizes.get(0).articles(),
+					100.0 * feedSizes.get(0).articles() / Math.max(1, articles), Miscellaneous.bytesToHumanReadable(iconBytes)));
+
+		lines.add(String.format("Machine\t\t: %d core(s), %s heap at most, %s of memory, %s free next to RSS Guard", cores,
+				Miscellaneous.bytesToHumanReadable(heapMaxBytes), Miscellaneous.bytesToHumanReadable(physicalMemoryBytes),
+				Miscellaneous.bytesToHumanReadable(freeDiskBytes)));
+
+		lines.add(String.format(Locale.ROOT, "Prediction\t: %s in total (articles %.1f s, verification %.1f s, compaction %.1f s), engine %s%s",
+				Miscellaneous.durationToHumanReadable(Duration.ofMillis(Math.round(totalSeconds() * 1000))), articleSeconds,
+				verifySeconds, compactionSeconds, engine, shards > 1 ? " with " + shards + " shards" : ""));
+		lines.add(String.format("  - Memory\t: peak heap %s (run with -Xmx%dm or more), about %s resident", Miscellaneous.bytesToHumanReadable(peakHeapBytes),
+				divideRoundingUp(recommendedHeapBytes, MB), Miscellaneous.bytesToHumanReadable(peakResidentBytes)));
+		lines.add(String.format("  - Disk\t: RSS Guard database of about %s, %s needed, %s free", Miscellaneous.bytesToHumanReadable(targetBytes),
+				Miscellaneous.bytesToHumanReadable(requiredDiskBytes), Miscellaneous.bytesToHumanReadable(freeDiskBytes)));
+		lines.add("  - Options\t: " + String.join(" ", getOptions()));
+		warnings.forEach(warning -> lines.add("  - WARNING: " + warning));
+		return lines;
+	}
+
+
+	/**
+	 * @return The plan as one JSON document, ending with the {@code options} read back by {@link #readOptions(Path)}.
+	 */
+	public String toJson() {
+		StringBuilder json = new StringBuilder(4096);
+
+		json.append("{\n");
+		json.append("  \"sources\": [");
+		for (int source = 0; source < sourcePaths.size(); source++)
+			json.append(source == 0 ? "" : ", ").append(quote(sourcePaths.get(source).toAbsolutePath().toString()));
+		json.append("],\n");
+		json.append("  \"target\": ").append(quote(targetPath.toString())).append(",\n");
+
+		json.append("  \"shape\": {\n");
+		json.append("    \"fileBytes\": ").append(sourceFileBytes).append(",\n");
+		json.append("    \"freePageBytes\": ").append(sourceFreeBytes).append(",\n");
+		json.append("    \"tables\": {");
+		String separator = "\n";
+		for (Map.Entry<String, long[]> table : tableSizes.entrySet()) {
+			json.append(separator).append("      ").append(quote(table.getKey())).append(": {\"bytes\": ").append(table.getValue()[0])
+					.append(", \"payloadBytes\": ").append(table.getValue()[1]).append('}');
+			separator = ",\n";
+		}
+		json.append("\n    },\n");
+		json.append("    \"articles\": ").append(articles).append(",\n");
+		json.append("    \"deletedArticles\": ").append(deletedArticles).append(",\n");
+		json.append("    \"articleBytes\": ").append(articleBytes).append(",\n");
+		json.append("    \"averageArticleBytes\": ").append(Math.round(averageRowBytes)).append(",\n");
+		json.append("    \"largestArticleBytes\": ").append(largestArticleBytes).append(",\n");
+		json.append("    \"descriptionBytes\": {\"sampled\": ").append(sampledDescriptionBytes.length)
+				.append(", \"p50\": ").append(percentile(0.5)).append(", \"p90\": ").append(percentile(0.9))
+				.append(", \"p99\": ").append(percentile(0.99)).append(", \"max\": ").append(percentile(1)).append("},\n");
+		json.append("    \"feeds\": ").append(feedRows).append(",\n");
+		json.append("    \"feedsWithArticles\": ").append(feedSizes.size()).append(",\n");
+		json.append("    \"largestFeeds\": [");
+		for (int i = 0; i < Math.min(TOP_FEEDS, feedSizes.size()); i++) {
+			FeedSize feed = feedSizes.get(i);
+			json.append(i == 0 ? "" : ", ").append("{\"source\": ").append(feed.source()).append(", \"feedId\": ").append(feed.feedId())
+					.append(", \"articles\": ").append(feed.articles()).append('}');
+		}
+		json.append("],\n");
+		json.append("    \"iconBytes\": ").append(iconBytes).append("\n");
+		json.append("  },\n");
+
+		json.append("  \"machine\": {\"cores\": ").append(cores).append(", \"heapMaxBytes\": ").append(heapMaxBytes)
+				.append(", \"physicalMemoryBytes\": ").append(physicalMemoryBytes).append(", \"freeDiskBytes\": ").append(freeDiskBytes).append("},\n");
+
+		json.append("  \"prediction\": {\n");
+		json.append("    \"engine\": ").append(quote(engine)).append(",\n");
+		json.append("    \"shards\": ").append(shards).append(",\n");
+		json.append("    \"articleSeconds\": ").append(decimal(articleSeconds)).append(",\n");
+		json.append("    \"verifySeconds\": ").append(decimal(verifySeconds)).append(",\n");
+		json.append("    \"compactionSeconds\": ").append(decimal(compactionSeconds)).append(",\n");
+		json.append("    \"totalSeconds\": ").append(decimal(totalSeconds())).append(",\n");
+		json.append("    \"peakHeapBytes\": ").append(peakHeapBytes).append(",\n");
+		json.append("    \"recommendedHeapBytes\": ").append(recommendedHeapBytes).append(",\n");
+		json.append("    \"peakResidentBytes\": ").append(peakResidentBytes).append(",\n");
+		json.append("    \"targetBytes\": ").append(targetBytes).append(",\n");
+		json.append("    \"requiredDiskBytes\": ").append(requiredDiskBytes).append("\n");
+		json.append("  },\n");
+
+		json.append("  \"warnings\": [");
+		for (int i = 0; i < warnings.size(); i++)
+			json.append(i == 0 ? "" : ", ").append(quote(warnings.get(i)));
+		json.append("],\n");
+
+		json.append("  \"options\": [");
+		List<String> recommended = getOptions();
+		for (int i = 0; i < recommended.size(); i++)
+			json.append(i == 0 ? "" : ", ").append(quote(recommended.get(i)));
+		json.append("]\n}\n");
+
+		return json.toString();
+	}
+
+
+	/**
+	 * @return Options of a plan written by {@link #toJson()}, to be applied before those of the command line.
+	 */
+	public static List<String> readOptions(Path planPath) throws IOException {
+		Matcher array = OPTIONS_PATTERN.matcher(Files.readString(planPath, StandardCharsets.UTF_8));
+		if (!array.find())
+			throw new IllegalArgumentException("No \"options\" array in the plan " + planPath);
+
+		List<String> result = new ArrayList<>();
+		Matcher value = STRING_PATTERN.matcher(array.group(1));
+		while (value.find())
+			result.add(value.group(1).replace("\\\"", "\"").replace("\\\\", "\\"));
+		return result;
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Helpers *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @return Payload bytes of the {@code news} rows and of the largest one, {@code null} when {@code dbstat} is not
+	 *         available.
+	 */
+	private long[] readTableSizes(Connection connection) throws SQLException {
+		long pageBytes = querySourceLong(connection, "PRAGMA page_size");
+		sourceFreeBytes += querySourceLong(connection, "PRAGMA freelist_count") * pageBytes;
+
+		long[] news = null;
+		try (Statement stmt = connection.createStatement();
+				ResultSet rs = stmt.executeQuery(TABLE_SIZES_QUERY)) {
+			while (rs.next()) {
+				long[] size = tableSizes.computeIfAbsent(rs.getString(1), name -> new long[2]);
+				size[0] += rs.getLong(2);
+				size[1] += rs.getLong(3);
+				if ("news".equals(rs.getString(1)))
+					news = new long[] { rs.getLong(3), rs.getLong(4) };
+			}
+		} catch (SQLException e) {
+			tableSizesExact = false; // SQLite built without SQLITE_ENABLE_DBSTAT_VTAB, only the file total is known
+		}
+		return news;
+	}
+
+
+	/**
+	 * Counts the articles of every feed and samples their sizes.
+	 *
+	 * @return Non-deleted articles and all articles of this database.
+	 */
+	private long[] readArticles(Connection connection, int source, List<long[]> samples) throws SQLException {
+		long total;
+		long minId;
+		long maxId;
+		try (Statement stmt = connection.createStatement();
+				ResultSet rs = stmt.executeQuery(COUNT_QUITERSS_NEWS_QUERY)) {
+			rs.next();
+			total = rs.getLong(1);
+			minId = rs.getLong(2);
+			maxId = rs.getLong(3);
+		}
+
+		long sourceArticles = 0;
+		try (Statement stmt = connection.createStatement();
+				ResultSet rs = stmt.executeQuery(COUNT_QUITERSS_FEEDS_QUERY)) {
+			while (rs.next()) {
+				feedSizes.add(new FeedSize(source, rs.getInt(1), rs.getLong(2)));
+				sourceArticles += rs.getLong(2);
+			}
+		}
+		articles += sourceArticles;
+		deletedArticles += total - sourceArticles;
+
+		try (Statement stmt = connection.createStatement();
+				ResultSet rs = stmt.executeQuery(QUITERSS_ICONS_QUERY)) {
+			rs.next();
+			feedRows += rs.getLong(1);
+			iconBytes += rs.getLong(2);
+		}
+
+		if (sourceArticles == 0)
+			return new long[] { 0, total };
+
+		// Random ids, each giving the next non-deleted article: a sample of the articles whatever the gaps in the ids
+		SplittableRandom random = new SplittableRandom(SAMPLE_SEED + source);
+		try (PreparedStatement stmt = connection.prepareStatement(SAMPLE_QUITERSS_NEWS_QUERY)) {
+			for (int probe = 0; probe < SAMPLE_PROBES; probe++) {
+				stmt.setLong(1, random.nextLong(minId, maxId + 1));
+				try (ResultSet rs = stmt.executeQuery()) {
+					if (rs.next())
+						samples.add(new long[] { rs.getLong(1), rs.getLong(2) });
+				}
+			}
+		}
+		return new long[] { sourceArticles, total };
+	}
+
+
+	private void chooseSettings() {
+		boolean transforms = options.isExtractImages() || options.getSlimHtmlThreads() > 0 || options.getIconSize() > 0 || options.getDedupScope() != null;
+		boolean merging = sourcePaths.size() > 1;
+
+		// Engine: settings given with --plan are kept, otherwise copying inside SQLite when nothing has to go through Java
+		shards = options.getShards();
+		if (options.isInEngine())
+			engine = "in-engine";
+		else if (!options.isPipelined())
+			engine = "serial";
+		else if (shards == 1 && !transforms && !merging && !options.isDelta())
+			engine = "in-engine";
+		else {
+			engine = "pipelined";
+			if (shards == 1 && !merging && !options.isDelta() && cores >= 3 && articles >= SHARDING_MIN_ARTICLES)
+				shards = Math.min(MAX_SHARDS, cores - 1); // One core left to the writer
+		}
+
+		// Largest batches whose peak fits in the heap, the largest article counted in every batch (a batch ends after it)
+		long batches = batchesInFlight();
+		long available = (long) (heapMaxBytes * HEAP_HEADROOM) - HEAP_BASE_BYTES;
+		long fitting = batches > 0 ? (long) (available / (HEAP_BYTES_PER_BATCH_BYTE * batches)) - largestArticleBytes : MAX_BATCH_BYTES;
+		batchByteBudget = Math.max(MIN_BATCH_BYTES, Math.min(MAX_BATCH_BYTES, fitting)) / MB * MB;
+
+		long rowsPerPage = averageRowBytes > 0 ? Math.round(PAGE_BYTES / averageRowBytes / 1000) * 1000 : MAX_PAGE_ROWS;
+		pageSize = (int) Math.max(MIN_PAGE_ROWS, Math.min(MAX_PAGE_ROWS, rowsPerPage));
+
+		cacheBytes = Math.max(MIN_CACHE_BYTES, Math.min(MAX_CACHE_BYTES, articles * CACHE_BYTES_PER_ROW)) / MB * MB;
+
+		// Sources and target mapped instead of copied through the page cache, within a quarter of the memory
+		targetBytes = articleBytes + articles * TARGET_BYTES_PER_ROW + iconBytes + TARGET_SCHEMA_BYTES;
+		long mappable = physicalMemoryBytes > 0 ? physicalMemoryBytes / 4 : 0;
+		mmapBytes = divideRoundingUp(Math.min(mappable, Math.max(sourceFileBytes / sourcePaths.size(), targetBytes)), MB) * MB;
+	}
+
+
+	private void predictCosts() {
+		// Articles
+		double read = articles * READ_SECONDS_PER_ROW + articleBytes / READ_BYTES_PER_SECOND;
+		double write = articles * WRITE_SECONDS_PER_ROW + articleBytes / WRITE_BYTES_PER_SECOND;
+		articleSeconds = switch (engine) {
+			case "in-engine" -> articles * IN_ENGINE_SECONDS_PER_ROW + articleBytes / IN_ENGINE_BYTES_PER_SECOND;
+			case "serial" -> read + write;
+			default -> cores > 1 ? Math.max(read / Math.min(shards, cores - 1), write) : read + write; // Overlapping stages need a core each
+		};
+
+		// Verification: feeds spread over the cores, never faster than the largest feed alone
+		if (options.isVerify() && !options.isDelta()) {
+			double total = articles * VERIFY_SECONDS_PER_ROW + articleBytes / VERIFY_BYTES_PER_SECOND;
+			double largest = feedSizes.isEmpty() ? 0 : total * feedSizes.get(0).articles() / articles;
+			verifySeconds = Math.max(largest, total / Math.max(1, Math.min(cores, feedSizes.size())));
+		}
+
+		// Compaction: a freshly loaded database is measured and kept as it is, only a forced rebuild copies it
+		boolean rebuild = !options.isDelta() && options.getCompactMode() == PostLoadCompactor.Mode.REBUILD;
+		compactionSeconds = options.isDelta() ? 0 : targetBytes / MEASURE_BYTES_PER_SECOND + (rebuild ? targetBytes / COMPACT_BYTES_PER_SECOND : 0);
+
+		// Memory
+		peakHeapBytes = HEAP_BASE_BYTES + ("in-engine".equals(engine) ? 0
+				: (long) (HEAP_BYTES_PER_BATCH_BYTE * batchesInFlight() * (batchByteBudget + largestArticleBytes)));
+		recommendedHeapBytes = (long) (peakHeapBytes / HEAP_HEADROOM);
+		long dedupBytes = options.getDedupScope() != null ? articles * DEDUP_BYTES_PER_ARTICLE : 0;
+		long mappedBytes = Math.min(mmapBytes, sourceFileBytes) + Math.min(mmapBytes, targetBytes); // Resident, though the kernel can drop them
+		peakResidentBytes = JVM_RESIDENT_BYTES + (long) (peakHeapBytes * HEAP_COMMITTED_PER_USED) + cacheBytes + dedupBytes + mappedBytes;
+
+		// Disk: the database grows in place, a shadow copy holds a second one, so does a compacted copy until it is renamed
+		requiredDiskBytes = options.isShadow() ? targetBytes : Math.max(0, targetBytes - targetFileBytes);
+		if (rebuild)
+			requiredDiskBytes += targetBytes;
+
+		if (peakHeapBytes > heapMaxBytes * HEAP_HEADROOM)
+			warnings.add(String.format("The article batches may not fit in the heap of %s, run with -Xmx%dm or more",
+					Miscellaneous.bytesToHumanReadable(heapMaxBytes), divideRoundingUp(recommendedHeapBytes, MB)));
+		if (requiredDiskBytes > freeDiskBytes)
+			warnings.add(String.format("About %s of disk space is needed next to the RSS Guard database, only %s is free",
+					Miscellaneous.bytesToHumanReadable(requiredDiskBytes), Miscellaneous.bytesToHumanReadable(freeDiskBytes)));
+		if (physicalMemoryBytes > 0 && peakResidentBytes > physicalMemoryBytes)
+			warnings.add(String.format("About %s of memory is needed, more than the %s of this machine: the migration may swap",
+					Miscellaneous.bytesToHumanReadable(peakResidentBytes), Miscellaneous.bytesToHumanReadable(physicalMemoryBytes)));
+		if (!"in-engine".equals(engine) && (options.isExtractImages() || options.getSlimHtmlThreads() > 0 || options.getIconSize() > 0))
+			warnings.add("The time of the article transforms is not part of the prediction");
+		if (options.isDelta())
+			warnings.add("A delta sync only carries over what changed, the prediction is that of migrating every article");
+	}
+
+
+	// Batches a reader, the queue and the writer hold at the same time (see DatabaseManager.processArticlesPipelined)
+	private long batchesInFlight() {
+		return switch (engine) {
+			case "in-engine" -> 0;
+			case "serial" -> 1;
+			default -> DatabaseManager.PIPELINE_QUEUE_CAPACITY * shards + 2L * shards + 1;
+		};
+	}
+
+
+	private double totalSeconds() {
+		return articleSeconds + verifySeconds + compactionSeconds;
+	}
+
+
+	private long percentile(double quantile) {
+		if (sampledDescriptionBytes.length == 0)
+			return 0;
+		return sampledDescriptionBytes[(int) Math.min(sampledDescriptionBytes.length - 1, Math.floor(quantile * sampledDescriptionBytes.length))];
+	}
+
+
+	private static long querySourceLong(Connection connection, String query) throws SQLException {
+		try (Statement stmt = connection.createStatement();
+				ResultSet rs = stmt.executeQuery(query)) {
+			return rs.next() ? rs.getLong(1) : 0;
+		}
+	}
+
+
+	private static long divideRoundingUp(long value, long divisor) {
+		return (value + divisor - 1) / divisor;
+	}
+
+
+	private static String quote(String value) {
+		return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+	}
+
+
+	private static String decimal(double value) {
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+
+
+}
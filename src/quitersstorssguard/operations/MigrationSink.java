@@ -0,0 +1,51 @@
+package quitersstorssguard.operations;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+
+import quitersstorssguard.records.ArticleBatch;
+import quitersstorssguard.records.Store_QuiteRssFeed;
+
+
+/**
+ * Destination of the categories, feeds and articles of a full migration. The RSSGuard database is the first sink;
+ * others, such as {@link NdjsonExportSink}, receive the same batches from the same single read of QuiteRSS.
+ * <p>
+ * Batches reach the sinks one after the other on the writer thread, after the transforms and, when merging, with their
+ * RSSGuard ids. A batch is only valid during the call: sinks copy what they keep.
+ */
+public interface MigrationSink {
+
+	/**
+	 * Writes a batch of categories and feeds, in the order of the QuiteRSS query.
+	 */
+	void writeFeeds(List<Store_QuiteRssFeed> feeds) throws SQLException, IOException;
+
+
+	/**
+	 * Writes the rows of {@code batch}, in ascending id order within a key range.
+	 */
+	void writeArticles(ArticleBatch batch) throws SQLException, IOException;
+
+
+	/**
+	 * Completes the output once every batch went through, not called when the run is interrupted or fails.
+	 */
+	default void finish() throws IOException {
+	}
+
+
+	/**
+	 * @return Summary for the migration log, to be called once the sink is finished.
+	 */
+	String describe();
+
+
+	/**
+	 * Releases the files held by the sink, discarding an unfinished output.
+	 */
+	default void close() {
+	}
+
+}
@@ -0,0 +1,380 @@
+package quitersstorssguard.operations;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.sqlite.SQLiteConfig;
+
+import quitersstorssguard.records.SourceIdMapping;
+import quitersstorssguard.utils.Miscellaneous;
+
+
+/**
+ * Compares every migrated article with its QuiteRSS original, column by column, instead of only counting rows.
+ * <p>
+ * The work is split by feed: each worker thread has its own read-only connections to both databases and takes the
+ * next feed not verified yet, the largest feeds first. For one feed, the non-deleted {@code news} rows and the
+ * {@code Messages} rows are read in id order through the feed indexes and merged on the id. Each column is reduced to
+ * a 64-bit hash, the rows to a per-feed checksum, and a feed is reported when the checksums differ, with a few sample
+ * rows and the columns that differ. Text is hashed as the UTF-8 bytes SQLite holds, without decoding it into strings;
+ * dates and flags go through the conversions of the migration.
+ * <p>
+ * When several QuiteRSS databases were merged, each of their feeds is compared with the RSSGuard feed it was moved to,
+ * through the {@link SourceIdMapping} of its database.
+ * <p>
+ * Only meaningful for a full migration: after a delta sync RSSGuard also holds its own articles and remapped ids.
+ */
+public class MigrationVerifier {
+
+	// Feed of one QuiteRSS database and the RSSGuard feed holding its articles, either side missing when NONE
+	private record FeedPair(int source, int sourceFeedId, int targetFeedId, long articles) {
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************* Constants ********************************************************************
+	// **************************************************************************************************************************************************
+	private static final String VERIFY_QUITERSS_NEWS_QUERY = Miscellaneous.readFileFromResources("resources/verify_quiterss_news.sql");
+	private static final String VERIFY_RSSGUARD_MESSAGES_QUERY = Miscellaneous.readFileFromResources("resources/verify_rssguard_messages.sql");
+	private static final String COUNT_QUITERSS_FEEDS_QUERY = "SELECT feedId, COUNT(*) FROM news WHERE deleted = 0 GROUP BY feedId";
+	private static final String COUNT_RSSGUARD_FEEDS_QUERY = "SELECT feed, COUNT(*) FROM Messages WHERE account_id = 1 GROUP BY feed";
+
+	// Compared columns, RSSGuard names, in the order of verify_rssguard_messages.sql after the id
+	private static final String[] COLUMNS = { "author", "contents", "custom_id", "date_created", "is_deleted", "is_important", "is_read", "title", "url" };
+
+	private static final int MAX_SAMPLES = 20;
+	private static final int NONE = Integer.MIN_VALUE;
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private final List<String> sourceUrls;
+	private final SourceIdMapping[] mappings;
+	private final SQLiteConfig sourceConfig;
+	private final String targetUrl;
+	private final int threads;
+	private final boolean compareContents;
+	private final boolean missingExpected;
+
+	private final LongAdder articles = new LongAdder();
+	private final LongAdder missing = new LongAdder();
+	private final LongAdder extra = new LongAdder();
+	private final LongAdder different = new LongAdder();
+	private final ConcurrentLinkedQueue<String> mismatchingFeeds = new ConcurrentLinkedQueue<>();
+	private final ConcurrentLinkedQueue<String> samples = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger sampleCount = new AtomicInteger();
+	private int feeds;
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @param sourceUrls      QuiteRSS databases migrated.
+	 * @param mappings        Ids given to the rows of each QuiteRSS database, {@code null} when they kept their ids.
+	 * @param sourceConfig    Settings of the QuiteRSS connections, read-only.
+	 * @param threads         Worker threads, each with its own connections to the databases.
+	 * @param compareContents {@code false} when the article contents were rewritten on purpose (images extracted, HTML
+	 *                        slimmed), they are then left out of the comparison.
+	 * @param missingExpected {@code true} when articles were skipped on purpose (duplicates): missing articles are then
+	 *                        reported but not an error.
+	 */
+	public MigrationVerifier(List<String> sourceUrls, SourceIdMapping[] mappings, SQLiteConfig sourceConfig, String targetUrl, int threads,
+			boolean compareContents, boolean missingExpected) {
+		this.sourceUrls = List.copyOf(sourceUrls);
+		this.mappings = mappings;
+		this.sourceConfig = sourceConfig;
+		this.targetUrl = targetUrl;
+		this.threads = Math.max(1, threads);
+		this.compareContents = compareContents;
+		this.missingExpected = missingExpected;
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * Compares both databases. Every connection to the RSSGuard database must have released its locks.
+	 *
+	 * @return {@code true} when every article was found identical (missing ones aside when expected).
+	 */
+	public boolean verify() throws SQLException {
+		SQLiteConfig targetConfig = new SQLiteConfig();
+		targetConfig.setReadOnly(true);
+		targetConfig.setPragma(SQLiteConfig.Pragma.BUSY_TIMEOUT, "30000");
+
+		List<FeedPair> feedPairs = listFeeds(targetConfig);
+		feeds = feedPairs.size();
+		int workers = Math.min(threads, Math.max(1, feeds));
+		AtomicInteger nextFeed = new AtomicInteger();
+
+		List<Callable<Void>> tasks = new ArrayList<>(workers);
+		for (int i = 0; i < workers; i++) {
+			tasks.add(() -> {
+				List<Connection> sources = new ArrayList<>(sourceUrls.size());
+				try (Connection target = DriverManager.getConnection(targetUrl, targetConfig.toProperties());
+						PreparedStatement targetStmt = target.prepareStatement(VERIFY_RSSGUARD_MESSAGES_QUERY)) {
+					PreparedStatement[] sourceStmts = new PreparedStatement[sourceUrls.size()];
+					for (int source = 0; source < sourceStmts.length; source++) {
+						sources.add(DriverManager.getConnection(sourceUrls.get(source), sourceConfig.toProperties()));
+						sourceStmts[source] = sources.get(source).prepareStatement(VERIFY_QUITERSS_NEWS_QUERY);
+					}
+
+					for (int next = nextFeed.getAndIncrement(); next < feedPairs.size(); next = nextFeed.getAndIncrement())
+						verifyFeed(feedPairs.get(next), sourceStmts, targetStmt);
+				} finally {
+					for (Connection source : sources)
+						source.close(); // Also closes its statement
+				}
+				return null;
+			});
+		}
+
+		AtomicInteger workerIds = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(workers, runnable -> {
+			Thread thread = new Thread(runnable, "verifier-" + workerIds.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		try {
+			for (Future<Void> task : pool.invokeAll(tasks))
+				task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while verifying the migration", e);
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof SQLException sqlException ? sqlException : new SQLException("Verification failed: " + e.getCause(), e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+
+		return isSuccessful();
+	}
+
+
+	public boolean isSuccessful() {
+		return different.sum() == 0 && extra.sum() == 0 && (missingExpected || missing.sum() == 0);
+	}
+
+
+	/**
+	 * @return Lines for the migration log: the totals, then the mismatching feeds and sample rows, if any.
+	 */
+	public List<String> describe() {
+		List<String> lines = new ArrayList<>();
+		lines.add(String.format("  - Verification\t: %,d article(s) in %,d feed(s) compared%s, %,d missing%s, %,d unexpected, %,d different, %d thread(s)",
+				articles.sum(), feeds, compareContents ? "" : " (contents rewritten, not compared)", missing.sum(),
+				missingExpected ? " (skipped duplicates)" : "", extra.sum(), different.sum(), Math.min(threads, Math.max(1, feeds))));
+
+		mismatchingFeeds.forEach(line -> lines.add("      " + line));
+		samples.forEach(line -> lines.add("      " + line));
+		return lines;
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Helpers *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @return Every QuiteRSS feed with articles and its RSSGuard feed, then the RSSGuard feeds with articles that no
+	 *         QuiteRSS feed was moved to, largest first so that the last ones left are short.
+	 */
+	private List<FeedPair> listFeeds(SQLiteConfig targetConfig) throws SQLException {
+		List<FeedPair> feedPairs = new ArrayList<>();
+		Map<Integer, Long> targetCounts = new TreeMap<>();
+
+		try (Connection target = DriverManager.getConnection(targetUrl, targetConfig.toProperties());
+				Statement stmt = target.createStatement();
+				ResultSet rs = stmt.executeQuery(COUNT_RSSGUARD_FEEDS_QUERY)) {
+			while (rs.next())
+				targetCounts.put(rs.getInt(1), rs.getLong(2));
+		}
+
+		for (int source = 0; source < sourceUrls.size(); source++) {
+			try (Connection connection = DriverManager.getConnection(sourceUrls.get(source), sourceConfig.toProperties());
+					Statement stmt = connection.createStatement();
+					ResultSet rs = stmt.executeQuery(COUNT_QUITERSS_FEEDS_QUERY)) {
+				while (rs.next()) {
+					int sourceFeedId = rs.getInt(1);
+					int targetFeedId = mappings == null ? sourceFeedId : mappings[source].feedIds().get(sourceFeedId, NONE);
+					Long targetCount = targetCounts.remove(targetFeedId);
+					feedPairs.add(new FeedPair(source, sourceFeedId, targetFeedId, Math.max(rs.getLong(2), targetCount != null ? targetCount : 0)));
+				}
+			}
+		}
+
+		targetCounts.forEach((targetFeedId, count) -> feedPairs.add(new FeedPair(NONE, NONE, targetFeedId, count)));
+		feedPairs.sort(Comparator.comparingLong(FeedPair::articles).reversed());
+		return feedPairs;
+	}
+
+
+	/**
+	 * Merges the articles of one feed on both sides by id.
+	 */
+	private void verifyFeed(FeedPair feed, PreparedStatement[] sourceStmts, PreparedStatement targetStmt) throws SQLException {
+		long[] expected = new long[COLUMNS.length];
+		long[] actual = new long[COLUMNS.length];
+		long sourceChecksum = 0;
+		long targetChecksum = 0;
+		long feedMissing = 0;
+		long feedExtra = 0;
+		long feedDifferent = 0;
+		long feedArticles = 0;
+
+		long articleOffset = mappings != null && feed.source() != NONE ? mappings[feed.source()].articleOffset() : 0;
+		String label = label(feed);
+
+		if (feed.source() != NONE)
+			sourceStmts[feed.source()].setInt(1, feed.sourceFeedId());
+		targetStmt.setInt(1, feed.targetFeedId());
+
+		try (ResultSet source = feed.source() != NONE ? sourceStmts[feed.source()].executeQuery() : null;
+				ResultSet target = feed.targetFeedId() != NONE ? targetStmt.executeQuery() : null) {
+
+			boolean hasSource = source != null && source.next();
+			boolean hasTarget = target != null && target.next();
+
+			while (hasSource || hasTarget) {
+				long sourceId = hasSource ? source.getLong(6) + articleOffset : Long.MAX_VALUE;
+				long targetId = hasTarget ? target.getLong(1) : Long.MAX_VALUE;
+
+				if (sourceId <= targetId) {
+					hashSource(source, expected);
+					sourceChecksum += rowHash(expected);
+					feedArticles++;
+				}
+				if (targetId <= sourceId) {
+					hashTarget(target, actual);
+					targetChecksum += rowHash(actual);
+				}
+
+				if (sourceId == targetId) {
+					List<String> columns = differingColumns(expected, actual);
+					if (!columns.isEmpty()) {
+						feedDifferent++;
+						sample("news " + (sourceId - articleOffset) + " (" + label + ") differs in " + String.join(", ", columns));
+					}
+				} else if (sourceId < targetId) {
+					feedMissing++;
+					if (!missingExpected)
+						sample("news " + (sourceId - articleOffset) + " (" + label + ") is missing from RSS Guard");
+				} else {
+					feedExtra++;
+					sample("Messages " + targetId + " (" + label + ") has no QuiteRSS article");
+				}
+
+				if (sourceId <= targetId)
+					hasSource = source.next();
+				if (targetId <= sourceId)
+					hasTarget = target.next();
+			}
+		}
+
+		articles.add(feedArticles);
+		missing.add(feedMissing);
+		extra.add(feedExtra);
+		different.add(feedDifferent);
+
+		if (sourceChecksum != targetChecksum && (feedDifferent > 0 || feedExtra > 0 || !missingExpected)) {
+			mismatchingFeeds.add(String.format("%s: checksum %016x in QuiteRSS, %016x in RSS Guard (%,d article(s), %,d missing, %,d unexpected, %,d different)",
+					label, sourceChecksum, targetChecksum, feedArticles, feedMissing, feedExtra, feedDifferent));
+		}
+	}
+
+
+	// Feed as named in the samples, with its database and RSSGuard id when merged
+	private String label(FeedPair feed) {
+		if (feed.source() == NONE)
+			return "RSS Guard feed " + feed.targetFeedId();
+		if (mappings == null)
+			return "feed " + feed.sourceFeedId();
+
+		return "feed " + feed.sourceFeedId() + " of QuiteRSS database " + (feed.source() + 1)
+				+ (feed.targetFeedId() != NONE ? ", RSS Guard feed " + feed.targetFeedId() : ", never migrated");
+	}
+
+
+	// Values bound by DatabaseManager.bindArticle() for a row of verify_quiterss_news.sql, same conversions as ArticleBatch.add()
+	private void hashSource(ResultSet rs, long[] hashes) throws SQLException {
+		hashes[0] = Miscellaneous.hash64(rs.getBytes(1));
+		hashes[1] = compareContents ? Miscellaneous.hash64(rs.getBytes(2)) : 0;
+		hashes[2] = Miscellaneous.hash64(rs.getBytes(3));
+		hashes[3] = hash(Miscellaneous.convertToTimestamp(rs.getString(4)));
+		hashes[4] = hash(rs.getInt(7));
+		hashes[5] = hash(rs.getInt(8));
+		hashes[6] = hash(rs.getInt(9) != 0 ? 1 : 0);
+		hashes[7] = Miscellaneous.hash64(rs.getBytes(10));
+		hashes[8] = Miscellaneous.hash64(rs.getBytes(11));
+	}
+
+
+	private void hashTarget(ResultSet rs, long[] hashes) throws SQLException {
+		hashes[0] = Miscellaneous.hash64(rs.getBytes(2));
+		hashes[1] = compareContents ? Miscellaneous.hash64(rs.getBytes(3)) : 0;
+		hashes[2] = Miscellaneous.hash64(rs.getBytes(4));
+		hashes[3] = hash(rs.getLong(5));
+		hashes[4] = hash(rs.getLong(6));
+		hashes[5] = hash(rs.getLong(7));
+		hashes[6] = hash(rs.getLong(8));
+		hashes[7] = Miscellaneous.hash64(rs.getBytes(9));
+		hashes[8] = Miscellaneous.hash64(rs.getBytes(10));
+	}
+
+
+	private static long hash(long value) {
+		return Miscellaneous.mix64(Miscellaneous.fnv1a64(Miscellaneous.FNV_OFFSET_BASIS, value));
+	}
+
+
+	// Column order matters: a value moved to another column changes the row hash
+	private static long rowHash(long[] hashes) {
+		long hash = Miscellaneous.FNV_OFFSET_BASIS;
+		for (long column : hashes)
+			hash = Miscellaneous.fnv1a64(hash, column);
+
+		return Miscellaneous.mix64(hash);
+	}
+
+
+	private static List<String> differingColumns(long[] expected, long[] actual) {
+		List<String> columns = new ArrayList<>(0);
+		for (int i = 0; i < COLUMNS.length; i++)
+			if (expected[i] != actual[i])
+				columns.add(COLUMNS[i]);
+
+		return columns;
+	}
+
+
+	private void sample(String line) {
+		if (sampleCount.incrementAndGet() <= MAX_SAMPLES)
+			samples.add(line);
+	}
+
+
+}
@@ -0,0 +1,278 @@
+package quitersstorssguard.operations;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import quitersstorssguard.records.ArticleBatch;
+import quitersstorssguard.records.Store_QuiteRssFeed;
+import quitersstorssguard.utils.Miscellaneous;
+
+
+/**
+ * Writes the categories, feeds and articles of a migration as newline-delimited JSON, one object per line with a
+ * {@code type} of {@code category}, {@code feed} or {@code article}, for search indexers and other consumers that would
+ * otherwise read the RSSGuard database again. Files whose name ends with {@code .gz} are gzip-compressed on the fly.
+ * <p>
+ * Each batch is formatted into one reused {@link StringBuilder} and encoded to UTF-8 into a buffer flushed to the file
+ * channel, so the cost per article is the JSON escaping and the compression. The file is written under a temporary
+ * name and renamed once complete: an interrupted run leaves no partial export behind.
+ */
+public class NdjsonExportSink implements MigrationSink {
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************* Constants ********************************************************************
+	// **************************************************************************************************************************************************
+	private static final String TEMPORARY_SUFFIX = ".part";
+	private static final String GZIP_EXTENSION = ".gz";
+	private static final int BUFFER_BYTES = 1 << 20;
+	private static final int GZIP_BUFFER_BYTES = 64 * 1024;
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private final Path path;
+	private final Path temporaryPath;
+	private final FileChannel file;
+	private final WritableByteChannel channel; // The file channel, or a gzip stream over it
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES); // Heap buffers on both sides keep the encoder on its array fast path
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE); // Lone surrogates of broken feeds
+	private final StringBuilder json = new StringBuilder(64 * 1024);
+	private char[] chars = new char[64 * 1024];
+
+	private long categories;
+	private long feeds;
+	private long articles;
+	private long bytes; // Uncompressed
+	private boolean finished;
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	public NdjsonExportSink(Path path) throws IOException {
+		this.path = path.toAbsolutePath();
+		this.temporaryPath = this.path.resolveSibling(this.path.getFileName() + TEMPORARY_SUFFIX);
+		this.file = FileChannel.open(temporaryPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		this.channel = isCompressed()
+				? Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(file), GZIP_BUFFER_BYTES) {
+					{
+						def.setLevel(Deflater.BEST_SPEED); // About 4 times faster than the default level, for a few percent more bytes
+					}
+				})
+				: file;
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	@Override
+	public void writeFeeds(List<Store_QuiteRssFeed> batch) throws IOException {
+		json.setLength(0);
+
+		for (Store_QuiteRssFeed feed : batch) {
+			if (feed.isCategory()) {
+				json.append("{\"type\":\"category\",\"id\":").append(feed.id())
+						.append(",\"parentId\":").append(feed.parentId())
+						.append(",\"order\":").append(feed.order())
+						.append(",\"title\":");
+				appendString(feed.title());
+				json.append(",\"created\":").append(feed.created()).append("}\n");
+				categories++;
+			} else {
+				json.append("{\"type\":\"feed\",\"id\":").append(feed.id())
+						.append(",\"parentId\":").append(feed.parentId())
+						.append(",\"order\":").append(feed.order())
+						.append(",\"title\":");
+				appendString(feed.title());
+				json.append(",\"description\":");
+				appendString(feed.description());
+				json.append(",\"url\":");
+				appendString(feed.feedURL());
+				json.append(",\"created\":").append(feed.created()).append("}\n");
+				feeds++;
+			}
+		}
+
+		write();
+	}
+
+
+	@Override
+	public void writeArticles(ArticleBatch batch) throws IOException {
+		json.setLength(0);
+
+		for (int row = 0; row < batch.size(); row++) {
+			json.append("{\"type\":\"article\",\"id\":").append(batch.id(row))
+					.append(",\"feedId\":").append(batch.feedId(row))
+					.append(",\"received\":").append(batch.received(row))
+					.append(",\"read\":").append(batch.read(row) != 0)
+					.append(",\"starred\":").append(batch.starred(row) != 0)
+					.append(",\"deleted\":").append(batch.deleted(row) != 0)
+					.append(",\"author\":");
+			appendString(batch.author_name(row));
+			json.append(",\"guid\":");
+			appendString(batch.guid(row));
+			json.append(",\"url\":");
+			appendString(batch.link_href(row));
+			json.append(",\"title\":");
+			appendString(batch.title(row));
+			json.append(",\"contents\":");
+			appendString(batch.description(row));
+			json.append("}\n");
+
+			if (json.length() >= BUFFER_BYTES) // Bounds the builder when descriptions are large
+				write();
+		}
+		articles += batch.size();
+
+		write();
+	}
+
+
+	/**
+	 * Flushes the buffer, ends the gzip stream, syncs the file and renames it to its final name.
+	 */
+	@Override
+	public void finish() throws IOException {
+		flush();
+		channel.close(); // Writes the gzip trailer, closes the file channel
+		try (FileChannel written = FileChannel.open(temporaryPath, StandardOpenOption.WRITE)) {
+			written.force(true);
+		}
+		ShadowDatabase.moveDurably(temporaryPath, path);
+		finished = true;
+	}
+
+
+	@Override
+	public String describe() {
+		if (!finished)
+			return "  - Export\t: " + path + " not written, the migration did not complete";
+
+		long size = -1;
+		try {
+			size = Files.size(path);
+		} catch (IOException e) {
+			// Reported as unknown
+		}
+
+		return String.format("  - Export\t: %,d categories, %,d feeds & %,d article(s) written to %s, %s%s", categories, feeds, articles, path,
+				size < 0 ? "?" : Miscellaneous.bytesToHumanReadable(size),
+				isCompressed() ? " (" + Miscellaneous.bytesToHumanReadable(bytes) + " uncompressed)" : "");
+	}
+
+
+	@Override
+	public void close() {
+		if (finished)
+			return;
+
+		try {
+			channel.close();
+			file.close();
+			Files.deleteIfExists(temporaryPath);
+		} catch (IOException e) {
+			System.err.println("Warning: Could not delete the unfinished export " + temporaryPath + ": " + e.getMessage());
+		}
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Helpers *********************************************************************
+	// **************************************************************************************************************************************************
+	private boolean isCompressed() {
+		return path.getFileName().toString().endsWith(GZIP_EXTENSION);
+	}
+
+
+	// JSON string with the escapes of RFC 8259, null as an empty string like in RSSGuard
+	private void appendString(String value) {
+		json.append('"');
+		if (value != null) {
+			int run = 0; // Start of the characters not escaped yet, appended in one call
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if (c >= 0x20 && c != '"' && c != '\\')
+					continue;
+
+				json.append(value, run, i);
+				run = i + 1;
+				switch (c) {
+					case '"' -> json.append("\\\"");
+					case '\\' -> json.append("\\\\");
+					case '\n' -> json.append("\\n");
+					case '\r' -> json.append("\\r");
+					case '\t' -> json.append("\\t");
+					default -> json.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+				}
+			}
+			json.append(value, run, value.length());
+		}
+		json.append('"');
+	}
+
+
+	// Encodes the builder into the buffer, emptying the buffer into the channel whenever it is full
+	private void write() throws IOException {
+		if (chars.length < json.length())
+			chars = new char[Math.max(json.length(), 2 * chars.length)];
+		json.getChars(0, json.length(), chars, 0);
+		CharBuffer input = CharBuffer.wrap(chars, 0, json.length());
+		encoder.reset();
+
+		for (;;) {
+			int start = buffer.position();
+			CoderResult result = encoder.encode(input, buffer, true);
+			bytes += buffer.position() - start;
+			if (result.isUnderflow())
+				break;
+			if (result.isOverflow())
+				flush();
+			else
+				result.throwException();
+		}
+
+		int start = buffer.position();
+		while (encoder.flush(buffer).isOverflow()) {
+			bytes += buffer.position() - start;
+			flush();
+			start = buffer.position();
+		}
+		bytes += buffer.position() - start;
+
+		json.setLength(0);
+	}
+
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+
+}
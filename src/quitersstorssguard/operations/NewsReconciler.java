@@ -0,0 +1,288 @@
+package quitersstorssguard.operations;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import quitersstorssguard.records.ArticleBatch;
+import quitersstorssguard.utils.Miscellaneous;
+import quitersstorssguard.utils.StringCache;
+
+
+/**
+ * Carries QuiteRSS articles over to an RSSGuard database that already holds an earlier migration: the flag changes of
+ * articles copied before, and the articles created since.
+ * <p>
+ * QuiteRSS keeps no modification time per article, so changes are located per feed. A fingerprint of every feed (number
+ * of non-deleted articles up to the watermark and id-weighted sums of their read and starred flags) is computed inside
+ * SQLite on both sides by one grouped query each, without any row crossing JDBC. Only the feeds whose fingerprints
+ * differ are then compared article by article, with a merge join of both sides ordered by QuiteRSS id.
+ * <p>
+ * Articles inserted by a delta sync get the next free RSSGuard id rather than their QuiteRSS id, which RSSGuard may
+ * have given to one of its own articles in the meantime. The pairs are kept in the {@value #MAP_TABLE_NAME} table.
+ */
+public class NewsReconciler {
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************* Constants ********************************************************************
+	// **************************************************************************************************************************************************
+	public static final String MAP_TABLE_NAME = "QuiteRssMigrationNews";
+
+	private static final String LOAD_QUITERSS_NEWS_QUERY = Miscellaneous.readFileFromResources("resources/load_quiterss_news.sql");
+	private static final String LOAD_QUITERSS_NEWS_FINGERPRINTS_QUERY = Miscellaneous.readFileFromResources("resources/load_quiterss_news_fingerprints.sql");
+	private static final String LOAD_QUITERSS_NEWS_FLAGS_QUERY = Miscellaneous.readFileFromResources("resources/load_quiterss_news_flags.sql");
+	private static final String LOAD_RSSGUARD_MESSAGES_FINGERPRINTS_QUERY = Miscellaneous.readFileFromResources("resources/load_rssguard_messages_fingerprints.sql");
+	private static final String LOAD_RSSGUARD_MESSAGES_FLAGS_QUERY = Miscellaneous.readFileFromResources("resources/load_rssguard_messages_flags.sql");
+	private static final String INSERT_RSSGUARD_MESSAGES_QUERY = Miscellaneous.readFileFromResources("resources/insert_rssguard_messages.sql");
+
+	private static final String UPDATE_FLAGS_QUERY = "UPDATE Messages SET is_read = ?, is_important = ?, is_deleted = 0, is_pdeleted = 0 WHERE id = ?";
+	private static final String MARK_DELETED_QUERY = "UPDATE Messages SET is_deleted = 1 WHERE id = ?";
+	private static final String INSERT_MAPPING_QUERY = "INSERT OR REPLACE INTO " + MAP_TABLE_NAME + " (news_id, message_id) VALUES (?, ?)";
+
+	private static final int MESSAGE_ID_PARAMETER = 6; // Position of Messages.id in insert_rssguard_messages.sql
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private final Connection sourceConnection;
+	private final Connection targetConnection;
+	private final long baseArticleId;
+	private final long syncedArticleId;
+	private long nextMessageId;
+	private List<ArticleTransform> transforms = List.of();
+
+	private long updatedCount;
+	private long deletedCount;
+	private long restoredCount;
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @param sourceConnection Connection to the QuiteRSS database.
+	 * @param targetConnection Connection to the RSSGuard database, which must hold an exclusive lock for the ids handed out to be free.
+	 * @param baseArticleId    Highest {@code news.id} of the full migration, copied with {@code Messages.id = news.id}.
+	 * @param syncedArticleId  Highest {@code news.id} copied by the full migration or a previous delta sync.
+	 */
+	public NewsReconciler(Connection sourceConnection, Connection targetConnection, long baseArticleId, long syncedArticleId) {
+		this.sourceConnection = sourceConnection;
+		this.targetConnection = targetConnection;
+		this.baseArticleId = baseArticleId;
+		this.syncedArticleId = syncedArticleId;
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * Sets the transforms applied to restored articles, like to the articles of the migration.
+	 */
+	public void setTransforms(List<ArticleTransform> transforms) {
+		this.transforms = transforms;
+	}
+
+
+	/**
+	 * Creates the id mapping table when missing and reserves ids after the last RSSGuard article.
+	 */
+	public void prepare() throws SQLException {
+		try (Statement stmt = targetConnection.createStatement()) {
+			stmt.execute("CREATE TABLE IF NOT EXISTS " + MAP_TABLE_NAME + " (news_id INTEGER PRIMARY KEY, message_id INTEGER NOT NULL UNIQUE)");
+
+			try (ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM Messages")) {
+				rs.next();
+				nextMessageId = rs.getLong(1) + 1;
+			}
+		}
+	}
+
+
+	/**
+	 * @return Ids of the feeds whose articles up to the watermark differ between QuiteRSS and RSSGuard, in ascending order.
+	 */
+	public List<Integer> findChangedFeeds() throws SQLException {
+		Map<Integer, long[]> sourceFingerprints = readFingerprints(sourceConnection, LOAD_QUITERSS_NEWS_FINGERPRINTS_QUERY, syncedArticleId);
+		Map<Integer, long[]> targetFingerprints = readFingerprints(targetConnection, LOAD_RSSGUARD_MESSAGES_FINGERPRINTS_QUERY, baseArticleId);
+
+		TreeSet<Integer> changedFeeds = new TreeSet<>();
+		sourceFingerprints.forEach((feedId, fingerprint) -> {
+			if (!Arrays.equals(fingerprint, targetFingerprints.get(feedId)))
+				changedFeeds.add(feedId);
+		});
+		targetFingerprints.keySet().stream().filter(feedId -> !sourceFingerprints.containsKey(feedId)).forEach(changedFeeds::add);
+
+		return new ArrayList<>(changedFeeds);
+	}
+
+
+	/**
+	 * Aligns the RSSGuard articles of one feed with QuiteRSS: read and starred flags are copied, articles deleted in
+	 * QuiteRSS are moved to the RSSGuard recycle bin, and articles restored in QuiteRSS are inserted again. Runs in the
+	 * transaction of the caller.
+	 */
+	public void reconcileFeed(int feedId) throws SQLException {
+		List<Long> restoredIds = new ArrayList<>();
+
+		try (PreparedStatement sourceStmt = sourceConnection.prepareStatement(LOAD_QUITERSS_NEWS_FLAGS_QUERY);
+				PreparedStatement targetStmt = targetConnection.prepareStatement(LOAD_RSSGUARD_MESSAGES_FLAGS_QUERY);
+				PreparedStatement updateStmt = targetConnection.prepareStatement(UPDATE_FLAGS_QUERY);
+				PreparedStatement deleteStmt = targetConnection.prepareStatement(MARK_DELETED_QUERY)) {
+
+			sourceStmt.setInt(1, feedId);
+			sourceStmt.setLong(2, syncedArticleId);
+			targetStmt.setInt(1, feedId);
+			targetStmt.setLong(2, baseArticleId);
+
+			try (ResultSet source = sourceStmt.executeQuery();
+					ResultSet target = targetStmt.executeQuery()) {
+
+				boolean hasSource = source.next();
+				boolean hasTarget = target.next();
+
+				while (hasSource || hasTarget) {
+					long sourceId = hasSource ? source.getLong(1) : Long.MAX_VALUE;
+					long targetId = hasTarget ? target.getLong(1) : Long.MAX_VALUE;
+
+					if (sourceId == targetId) {
+						int read = source.getInt(2) != 0 ? 1 : 0;
+						int starred = source.getInt(3) != 0 ? 1 : 0;
+
+						if (read != target.getInt(3) || starred != target.getInt(4) || target.getInt(5) != 0 || target.getInt(6) != 0) {
+							updateStmt.setInt(1, read);
+							updateStmt.setInt(2, starred);
+							updateStmt.setLong(3, target.getLong(2));
+							updateStmt.addBatch();
+							updatedCount++;
+						}
+						hasSource = source.next();
+						hasTarget = target.next();
+
+					} else if (sourceId < targetId) {
+						restoredIds.add(sourceId); // Deleted in QuiteRSS at the time of the last sync
+						hasSource = source.next();
+
+					} else {
+						if (target.getInt(5) == 0) {
+							deleteStmt.setLong(1, target.getLong(2));
+							deleteStmt.addBatch();
+							deletedCount++;
+						}
+						hasTarget = target.next();
+					}
+				}
+			}
+
+			updateStmt.executeBatch();
+			deleteStmt.executeBatch();
+		}
+
+		if (!restoredIds.isEmpty())
+			insertRestoredArticles(restoredIds);
+	}
+
+
+	/**
+	 * Inserts articles new to RSSGuard under fresh ids and records their QuiteRSS ids. Runs in the transaction of the caller.
+	 */
+	public void insertArticles(ArticleBatch batch) throws SQLException {
+		try (PreparedStatement insertStmt = targetConnection.prepareStatement(INSERT_RSSGUARD_MESSAGES_QUERY);
+				PreparedStatement mappingStmt = targetConnection.prepareStatement(INSERT_MAPPING_QUERY)) {
+
+			for (int row = 0; row < batch.size(); row++) {
+				long messageId = nextMessageId++;
+
+				DatabaseManager.bindArticle(insertStmt, batch, row);
+				insertStmt.setLong(MESSAGE_ID_PARAMETER, messageId);
+				insertStmt.addBatch();
+
+				mappingStmt.setLong(1, batch.id(row));
+				mappingStmt.setLong(2, messageId);
+				mappingStmt.addBatch();
+			}
+
+			insertStmt.executeBatch();
+			mappingStmt.executeBatch();
+		}
+	}
+
+
+	public long getUpdatedCount() {
+		return updatedCount;
+	}
+
+
+	public long getDeletedCount() {
+		return deletedCount;
+	}
+
+
+	public long getRestoredCount() {
+		return restoredCount;
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Helpers *********************************************************************
+	// **************************************************************************************************************************************************
+	private Map<Integer, long[]> readFingerprints(Connection connection, String query, long idParameter) throws SQLException {
+		Map<Integer, long[]> fingerprints = new HashMap<>();
+
+		try (PreparedStatement stmt = connection.prepareStatement(query)) {
+			stmt.setLong(1, idParameter);
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next())
+					fingerprints.put(rs.getInt(1), new long[] { rs.getLong(2), rs.getLong(3), rs.getLong(4), rs.getLong(5) });
+			}
+		}
+
+		return fingerprints;
+	}
+
+
+	private void insertRestoredArticles(List<Long> newsIds) throws SQLException {
+		ArticleBatch batch = new ArticleBatch(newsIds.size());
+		StringCache authors = new StringCache(16);
+
+		try (PreparedStatement stmt = sourceConnection.prepareStatement(LOAD_QUITERSS_NEWS_QUERY)) {
+			for (long newsId : newsIds) {
+				stmt.setLong(1, newsId);
+				stmt.setLong(2, newsId + 1);
+				stmt.setInt(3, 1);
+
+				try (ResultSet rs = stmt.executeQuery()) {
+					if (rs.next())
+						DatabaseManager.readArticle(rs, batch, authors);
+				}
+			}
+		}
+
+		try {
+			for (ArticleTransform transform : transforms)
+				transform.apply(batch);
+		} catch (IOException e) {
+			throw new SQLException("Article transform failed: " + e.getMessage(), e);
+		}
+
+		insertArticles(batch);
+		restoredCount += batch.size();
+	}
+
+
+}
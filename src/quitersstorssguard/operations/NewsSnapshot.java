@@ -0,0 +1,435 @@
+package quitersstorssguard.operations;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.zip.CRC32C;
+
+import quitersstorssguard.records.ArticleBatch;
+import quitersstorssguard.records.Store_QuiteRssFeed;
+import quitersstorssguard.utils.Miscellaneous;
+
+
+/**
+ * Columnar copy of what a migration reads from a QuiteRSS database: the categories and feeds, and the non-deleted
+ * articles with the conversions of {@link DatabaseManager#readArticle} already applied. Written once with
+ * {@code --export-snapshot} (see {@link NewsSnapshotWriter}), it is then given in place of the QuiteRSS database:
+ * re-runs and A/B benchmarks of the RSSGuard settings skip SQLite, JDBC and date parsing on the read side, and the file
+ * can be copied to another machine.
+ * <p>
+ * The file is memory-mapped, never read through a stream. Ids, feed ids, flags and {@code received} (milliseconds
+ * since the epoch) are fixed-width little-endian columns read in place. Author names are dictionary-encoded, the
+ * dictionary being decoded once when the file is opened, so repeated names share one instance. The other texts are
+ * columns of UTF-8 blocks, each preceded by its length in bytes; the offset of every {@value #SEGMENT_ROWS}th block is
+ * kept in an index, so reading can start at any id, and text columns are mapped in windows of whole segments. Each
+ * block is copied once, from the mapping into its string.
+ * <p>
+ * A header of {@value #HEADER_BYTES} bytes holds the counts, the offset of every {@link Section} (each starting on an
+ * 8-byte boundary) and a CRC-32C of everything after the header, checked when the file is opened: a truncated or
+ * damaged copy is refused before anything is written to RSSGuard.
+ */
+public class NewsSnapshot implements AutoCloseable {
+
+	@FunctionalInterface
+	public interface RowListener {
+		void rowAdded() throws SQLException;
+	}
+
+
+	// Sections of the file, in file order, which is also the order of their offsets in the header
+	enum Section {
+		DESCRIPTIONS,      // Block per article, first: written while the articles are read, the other sections after
+		FEEDS,             // Per feed: order, parent id, id, created (long), disableUpdate, layoutDirection, addSingleNewsAnyDateOn, then title, description, URL and icon blocks
+		IDS,               // int per article, ascending
+		FEED_IDS,          // int per article
+		RECEIVED,          // long per article
+		FLAGS,             // byte per article, FLAG_READ and FLAG_STARRED
+		AUTHORS,           // int per article, index into AUTHOR_DICTIONARY
+		AUTHOR_DICTIONARY, // Block per distinct author name
+		GUIDS,             // Block per article
+		TITLES,
+		LINKS,
+		SEGMENT_INDEX      // For each text column: offset of every segment within the column, then its end (long)
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************* Constants ********************************************************************
+	// **************************************************************************************************************************************************
+	static final byte[] MAGIC = "QRSSSNAP".getBytes(StandardCharsets.US_ASCII);
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 256;
+	static final int SEGMENT_ROWS = 1024;
+	static final Section[] TEXT_COLUMNS = { Section.DESCRIPTIONS, Section.GUIDS, Section.TITLES, Section.LINKS };
+	static final int FLAG_READ = 1;
+	static final int FLAG_STARRED = 2;
+	static final int MAX_ARTICLES = Integer.MAX_VALUE / Long.BYTES; // The received column is mapped as one buffer
+
+	// Header fields, after the magic
+	static final int VERSION_POSITION = 8;
+	static final int FEED_COUNT_POSITION = 12;
+	static final int ARTICLE_COUNT_POSITION = 16;
+	static final int AUTHOR_COUNT_POSITION = 20;
+	static final int EXPORTED_POSITION = 32;
+	static final int CHECKSUM_POSITION = 40;
+	static final int OFFSETS_POSITION = 48; // Offset of every section, then the size of the file
+
+	private static final long WINDOW_BYTES = 256L << 20;
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private final Path path;
+	private final FileChannel channel;
+	private final long[] offsets = new long[Section.values().length + 1];
+	private final int feedCount;
+	private final int articleCount;
+	private final long exportedMillis;
+
+	private final IntBuffer ids;
+	private final IntBuffer feedIds;
+	private final LongBuffer received;
+	private final ByteBuffer flags;
+	private final IntBuffer authorCodes;
+	private final String[] authors;
+	private final TextColumn descriptions;
+	private final TextColumn guids;
+	private final TextColumn titles;
+	private final TextColumn links;
+
+	private byte[] scratch = new byte[8192];
+	private long readNanos;
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	private NewsSnapshot(Path path) throws IOException {
+		this.path = path;
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+
+		try {
+			ByteBuffer header = map(0, HEADER_BYTES);
+			byte[] magic = new byte[MAGIC.length];
+			header.get(0, magic);
+			if (!Arrays.equals(magic, MAGIC) || header.getInt(VERSION_POSITION) != VERSION)
+				throw new IOException(path + " is not a snapshot of version " + VERSION + ", export it again with --export-snapshot");
+
+			feedCount = header.getInt(FEED_COUNT_POSITION);
+			articleCount = header.getInt(ARTICLE_COUNT_POSITION);
+			int authorCount = header.getInt(AUTHOR_COUNT_POSITION);
+			exportedMillis = header.getLong(EXPORTED_POSITION);
+			for (int i = 0; i < offsets.length; i++)
+				offsets[i] = header.getLong(OFFSETS_POSITION + i * Long.BYTES);
+
+			if (offsets[offsets.length - 1] != channel.size())
+				throw new IOException(path + " is " + channel.size() + " bytes long instead of " + offsets[offsets.length - 1] + ", the copy is incomplete");
+			if (checksum(channel, HEADER_BYTES, channel.size()) != header.getLong(CHECKSUM_POSITION))
+				throw new IOException(path + " is damaged (checksum mismatch), copy or export it again");
+
+			ids = map(Section.IDS).asIntBuffer();
+			feedIds = map(Section.FEED_IDS).asIntBuffer();
+			received = map(Section.RECEIVED).asLongBuffer();
+			flags = map(Section.FLAGS);
+			authorCodes = map(Section.AUTHORS).asIntBuffer();
+
+			ByteBuffer dictionary = map(Section.AUTHOR_DICTIONARY);
+			authors = new String[authorCount];
+			for (int i = 0; i < authorCount; i++)
+				authors[i] = nextBlock(dictionary);
+
+			LongBuffer segmentIndex = map(Section.SEGMENT_INDEX).asLongBuffer();
+			TextColumn[] columns = new TextColumn[TEXT_COLUMNS.length];
+			for (int i = 0; i < columns.length; i++) {
+				long[] segments = new long[segmentCount(articleCount) + 1];
+				segmentIndex.get(segments);
+				columns[i] = new TextColumn(offsets[TEXT_COLUMNS[i].ordinal()], segments);
+			}
+			descriptions = columns[0];
+			guids = columns[1];
+			titles = columns[2];
+			links = columns[3];
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e instanceof IOException ioException ? ioException : new IOException(path + " is not a valid snapshot: " + e, e);
+		}
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * Maps a snapshot and checks it, which reads the whole file once.
+	 */
+	public static NewsSnapshot open(Path path) throws IOException {
+		return new NewsSnapshot(path.toAbsolutePath());
+	}
+
+
+	/**
+	 * @return {@code true} when {@code path} starts like a snapshot rather than an SQLite database.
+	 */
+	public static boolean isSnapshot(Path path) {
+		try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+			while (magic.hasRemaining() && file.read(magic) >= 0) {
+				// Short reads on some file systems
+			}
+			return Arrays.equals(magic.array(), MAGIC);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+
+	/**
+	 * @return Categories and feeds with an id above {@code afterId}, in the order of the QuiteRSS query.
+	 */
+	public List<Store_QuiteRssFeed> loadFeeds(long afterId) throws SQLException {
+		try {
+			ByteBuffer feeds = map(Section.FEEDS);
+			List<Store_QuiteRssFeed> loaded = new ArrayList<>(feedCount);
+
+			for (int i = 0; i < feedCount; i++) {
+				int order = feeds.getInt();
+				int parentId = feeds.getInt();
+				int id = feeds.getInt();
+				long created = feeds.getLong();
+				int disableUpdate = feeds.getInt();
+				int layoutDirection = feeds.getInt();
+				int addSingleNewsAnyDateOn = feeds.getInt();
+				String title = nextBlock(feeds);
+				String description = nextBlock(feeds);
+				String feedURL = nextBlock(feeds);
+				byte[] icon = new byte[feeds.getInt()];
+				feeds.get(icon);
+
+				if (id > afterId)
+					loaded.add(new Store_QuiteRssFeed(order, parentId, id, title, description, created, feedURL, icon, disableUpdate, layoutDirection,
+							addSingleNewsAnyDateOn));
+			}
+			return loaded;
+		} catch (IOException | RuntimeException e) {
+			throw new SQLException("Cannot read the feeds of the snapshot " + path + ": " + e, e);
+		}
+	}
+
+
+	public long countFeeds(long afterId) throws SQLException {
+		return loadFeeds(afterId).size();
+	}
+
+
+	/**
+	 * @return Number of articles with an id in {@code [fromId, toId)}.
+	 */
+	public long countArticles(long fromId, long toId) {
+		return Math.max(0, firstRow(toId) - firstRow(fromId));
+	}
+
+
+	/**
+	 * @return Lowest article id, {@code 0} without articles, like {@code MIN(id)} of an empty table read as a number.
+	 */
+	public long getFirstId() {
+		return articleCount > 0 ? ids.get(0) : 0;
+	}
+
+
+	/**
+	 * Adds every article of {@code [fromId, toId)} to {@code batch}, in ascending id order, calling {@code listener}
+	 * after each one. Stops early, between two rows, as soon as {@code stopRequested} returns {@code true}.
+	 *
+	 * @return Number of rows added.
+	 */
+	public long read(long fromId, long toId, BooleanSupplier stopRequested, ArticleBatch batch, RowListener listener) throws SQLException {
+		int from = firstRow(fromId);
+		int to = firstRow(toId);
+		long rows = 0;
+
+		try {
+			if (from < to)
+				for (TextColumn column : new TextColumn[] { descriptions, guids, titles, links })
+					column.seek(from);
+
+			for (int row = from; row < to && !stopRequested.getAsBoolean(); row++) {
+				long start = System.nanoTime();
+				int rowFlags = flags.get(row);
+				batch.add(
+						authors[authorCodes.get(row)],
+						descriptions.next(),
+						guids.next(),
+						received.get(row),
+						feedIds.get(row),
+						ids.get(row),
+						0, // Only non-deleted articles are exported
+						(rowFlags & FLAG_STARRED) != 0 ? 1 : 0,
+						(rowFlags & FLAG_READ) != 0 ? 1 : 0,
+						titles.next(),
+						links.next());
+				readNanos += System.nanoTime() - start;
+
+				listener.rowAdded();
+				rows++;
+			}
+		} catch (IOException | RuntimeException e) {
+			throw new SQLException("Cannot read the articles of the snapshot " + path + ": " + e, e);
+		}
+
+		return rows;
+	}
+
+
+	/**
+	 * @return Time spent so far decoding articles from the mapped file, excluding the listener.
+	 */
+	public long getReadNanos() {
+		return readNanos;
+	}
+
+
+	/**
+	 * @return Line for the migration log.
+	 */
+	public String describe() {
+		return String.format("  - Snapshot\t: %,d article(s), %,d categories & feeds, %,d author name(s), %s, exported %s", articleCount, feedCount,
+				authors.length, Miscellaneous.bytesToHumanReadable(offsets[offsets.length - 1]), Instant.ofEpochMilli(exportedMillis));
+	}
+
+
+	/**
+	 * @return CRC-32C of the bytes {@code [from, to)} of {@code file}, read through memory maps.
+	 */
+	static long checksum(FileChannel file, long from, long to) throws IOException {
+		CRC32C crc = new CRC32C();
+		for (long position = from; position < to; position += WINDOW_BYTES)
+			crc.update(file.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_BYTES, to - position)));
+
+		return crc.getValue();
+	}
+
+
+	static int segmentCount(int articles) {
+		return (articles + SEGMENT_ROWS - 1) / SEGMENT_ROWS;
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Helpers *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * One text column, mapped a window of whole segments at a time: a block never spans two windows.
+	 */
+	private final class TextColumn {
+		private final long start;      // Of the column in the file
+		private final long[] segments; // Offsets within the column, then its end
+		private ByteBuffer window;
+		private int nextSegment;       // First segment after the window
+
+		TextColumn(long start, long[] segments) {
+			this.start = start;
+			this.segments = segments;
+		}
+
+		void seek(int row) throws IOException {
+			mapWindow(row / SEGMENT_ROWS);
+			for (int skipped = row % SEGMENT_ROWS; skipped > 0; skipped--)
+				window.position(window.position() + Integer.BYTES + window.getInt(window.position()));
+		}
+
+		String next() throws IOException {
+			if (!window.hasRemaining())
+				mapWindow(nextSegment);
+			return nextBlock(window);
+		}
+
+		private void mapWindow(int segment) throws IOException {
+			if (segment >= segments.length - 1)
+				throw new IOException("Reading past the last article");
+
+			int end = segment + 1;
+			while (end < segments.length - 1 && segments[end + 1] - segments[segment] <= WINDOW_BYTES)
+				end++;
+
+			window = map(start + segments[segment], segments[end] - segments[segment]);
+			nextSegment = end;
+		}
+	}
+
+
+	private ByteBuffer map(Section section) throws IOException {
+		return map(offsets[section.ordinal()], offsets[section.ordinal() + 1] - offsets[section.ordinal()]);
+	}
+
+
+	private ByteBuffer map(long position, long length) throws IOException {
+		if (length > Integer.MAX_VALUE)
+			throw new IOException("Section of " + length + " bytes at " + position + " cannot be mapped at once");
+
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+		return buffer.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+
+	// Length-prefixed UTF-8 block at the position of buffer, which is moved after it
+	private String nextBlock(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length == 0)
+			return "";
+
+		if (scratch.length < length)
+			scratch = new byte[Math.max(length, scratch.length * 2)];
+		buffer.get(scratch, 0, length);
+		return new String(scratch, 0, length, StandardCharsets.UTF_8);
+	}
+
+
+	// Index of the first article with an id of at least id
+	private int firstRow(long id) {
+		int low = 0;
+		int high = articleCount;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (ids.get(middle) < id)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Overrrides ********************************************************************
+	// **************************************************************************************************************************************************
+	@Override
+	public void close() {
+		try {
+			channel.close(); // The mappings stay valid until collected
+		} catch (IOException e) {
+			System.err.println("Warning: Could not close the snapshot " + path + ": " + e.getMessage());
+		}
+	}
+
+
+}
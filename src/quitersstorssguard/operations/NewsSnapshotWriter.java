@@ -0,0 +1,357 @@
+package quitersstorssguard.operations;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sqlite.SQLiteConfig;
+
+import quitersstorssguard.operations.NewsSnapshot.Section;
+import quitersstorssguard.records.ArticleBatch;
+import quitersstorssguard.records.Store_QuiteRssFeed;
+import quitersstorssguard.utils.Miscellaneous;
+import quitersstorssguard.utils.StringCache;
+
+
+/**
+ * Writes the {@link NewsSnapshot} of a QuiteRSS database, for {@code --export-snapshot}.
+ * <p>
+ * The categories, feeds and articles are read in one read transaction, so the snapshot is one consistent state of the
+ * database even while QuiteRSS runs, with the queries and conversions of the migration itself
+ * ({@link DatabaseManager#readFeed}, {@link DatabaseManager#readArticle}): a migration from the snapshot writes exactly
+ * what a migration from the database would have. The descriptions, by far the largest column, are written straight
+ * into the snapshot; the other columns go to temporary files next to it and are appended once every article is read.
+ * The snapshot is written under a temporary name and renamed once complete and synced.
+ */
+public class NewsSnapshotWriter {
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************* Constants ********************************************************************
+	// **************************************************************************************************************************************************
+	private static final String LOAD_QUITERSS_FEEDS_QUERY = Miscellaneous.readFileFromResources("resources/load_quiterss_feeds.sql");
+
+	private static final String TEMPORARY_SUFFIX = ".exporting";
+	private static final int BUFFER_BYTES = 1 << 20;
+	private static final int AUTHOR_CACHE_SIZE = 4096;
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private final Path sourcePath;
+	private final Path snapshotPath;
+
+	private final Map<Section, Column> columns = new EnumMap<>(Section.class);
+	private final Map<String, Integer> authorCodes = new HashMap<>();
+	private final List<String> authors = new ArrayList<>();
+	private int feeds;
+	private int articles;
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	public NewsSnapshotWriter(Path sourcePath, Path snapshotPath) {
+		this.sourcePath = sourcePath.toAbsolutePath();
+		this.snapshotPath = snapshotPath.toAbsolutePath();
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @return Lines describing the snapshot written.
+	 */
+	public List<String> export() throws SQLException, IOException {
+		Instant start = Instant.now();
+		Path temporary = snapshotPath.resolveSibling(snapshotPath.getFileName() + TEMPORARY_SUFFIX);
+
+		SQLiteConfig config = new SQLiteConfig();
+		config.setReadOnly(true);
+
+		try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + sourcePath, config.toProperties());
+				FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE,
+						StandardOpenOption.READ)) {
+			connection.setAutoCommit(false); // One read transaction for every query
+
+			out.position(NewsSnapshot.HEADER_BYTES);
+			columns.put(Section.DESCRIPTIONS, new Column(out, null));
+			for (Section section : Section.values())
+				if (section != Section.DESCRIPTIONS && section != Section.AUTHOR_DICTIONARY && section != Section.SEGMENT_INDEX)
+					columns.put(section, new Column(null, Files.createTempFile(snapshotPath.getParent(), snapshotPath.getFileName() + ".", ".column")));
+
+			writeFeeds(connection);
+			writeArticles(connection);
+			connection.rollback(); // Ends the read transaction, nothing was written
+
+			long[] offsets = assemble(out);
+			writeHeader(out, offsets);
+			out.force(true);
+		} catch (SQLException | IOException | RuntimeException e) {
+			Files.deleteIfExists(temporary);
+			throw e;
+		} finally {
+			for (Column column : columns.values())
+				column.delete();
+		}
+
+		ShadowDatabase.moveDurably(temporary, snapshotPath);
+
+		List<String> lines = new ArrayList<>();
+		lines.add(String.format("Snapshot\t: %,d article(s), %,d categories & feeds, %,d author name(s) written to %s in %s", articles, feeds,
+				authors.size(), snapshotPath, Miscellaneous.durationToHumanReadable(Duration.between(start, Instant.now()))));
+		lines.add(String.format("  - Size\t: %s, the QuiteRSS database takes %s", Miscellaneous.bytesToHumanReadable(Files.size(snapshotPath)),
+				Miscellaneous.bytesToHumanReadable(Files.size(sourcePath))));
+		return lines;
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Helpers *********************************************************************
+	// **************************************************************************************************************************************************
+	private void writeFeeds(Connection connection) throws SQLException, IOException {
+		Column column = columns.get(Section.FEEDS);
+
+		try (PreparedStatement stmt = connection.prepareStatement(LOAD_QUITERSS_FEEDS_QUERY)) {
+			stmt.setLong(1, Long.MIN_VALUE);
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					Store_QuiteRssFeed feed = DatabaseManager.readFeed(rs);
+					column.putInt(feed.order());
+					column.putInt(feed.parentId());
+					column.putInt(feed.id());
+					column.putLong(feed.created());
+					column.putInt(feed.disableUpdate());
+					column.putInt(feed.layoutDirection());
+					column.putInt(feed.addSingleNewsAnyDateOn());
+					column.putBlock(feed.title());
+					column.putBlock(feed.description());
+					column.putBlock(feed.feedURL());
+					column.putBlock(feed.icon());
+					feeds++;
+				}
+			}
+		}
+	}
+
+
+	private void writeArticles(Connection connection) throws SQLException, IOException {
+		ArticleBatch batch = new ArticleBatch(1);
+		StringCache authorCache = new StringCache(AUTHOR_CACHE_SIZE);
+		KeysetNewsReader reader = new KeysetNewsReader(connection, 0, 0); // A single cursor, the transaction is held anyway
+
+		try {
+			reader.read(Long.MIN_VALUE, Long.MAX_VALUE, () -> false, rs -> {
+				if (articles == NewsSnapshot.MAX_ARTICLES)
+					throw new SQLException("QuiteRSS database holds more than " + NewsSnapshot.MAX_ARTICLES + " articles, too many for a snapshot");
+
+				DatabaseManager.readArticle(rs, batch, authorCache);
+				try {
+					writeArticle(batch);
+				} catch (IOException e) {
+					throw new SQLException("Cannot write the snapshot: " + e.getMessage(), e);
+				}
+				batch.clear();
+			});
+		} catch (SQLException e) {
+			if (e.getCause() instanceof IOException ioException)
+				throw ioException;
+			throw e;
+		}
+
+		for (Section section : NewsSnapshot.TEXT_COLUMNS)
+			columns.get(section).markSegment(); // End of the column
+	}
+
+
+	private void writeArticle(ArticleBatch batch) throws IOException {
+		if (articles % NewsSnapshot.SEGMENT_ROWS == 0)
+			for (Section section : NewsSnapshot.TEXT_COLUMNS)
+				columns.get(section).markSegment();
+
+		Integer author = authorCodes.get(batch.author_name(0));
+		if (author == null) {
+			author = authors.size();
+			authorCodes.put(batch.author_name(0), author);
+			authors.add(batch.author_name(0));
+		}
+
+		columns.get(Section.DESCRIPTIONS).putBlock(batch.description(0));
+		columns.get(Section.IDS).putInt(batch.id(0));
+		columns.get(Section.FEED_IDS).putInt(batch.feedId(0));
+		columns.get(Section.RECEIVED).putLong(batch.received(0));
+		columns.get(Section.FLAGS).putByte((batch.read(0) != 0 ? NewsSnapshot.FLAG_READ : 0) | (batch.starred(0) != 0 ? NewsSnapshot.FLAG_STARRED : 0));
+		columns.get(Section.AUTHORS).putInt(author);
+		columns.get(Section.GUIDS).putBlock(batch.guid(0));
+		columns.get(Section.TITLES).putBlock(batch.title(0));
+		columns.get(Section.LINKS).putBlock(batch.link_href(0));
+		articles++;
+	}
+
+
+	/**
+	 * Appends every section after the descriptions, in file order, each on an 8-byte boundary.
+	 *
+	 * @return Offset of every section, then the size of the file.
+	 */
+	private long[] assemble(FileChannel out) throws IOException {
+		long[] offsets = new long[Section.values().length + 1];
+		offsets[Section.DESCRIPTIONS.ordinal()] = NewsSnapshot.HEADER_BYTES;
+		columns.get(Section.DESCRIPTIONS).flush();
+
+		for (Section section : Section.values()) {
+			if (section == Section.DESCRIPTIONS)
+				continue;
+
+			Column column = new Column(out, null);
+			column.align();
+			column.flush();
+			offsets[section.ordinal()] = out.position();
+
+			switch (section) {
+				case AUTHOR_DICTIONARY -> {
+					for (String author : authors)
+						column.putBlock(author);
+				}
+				case SEGMENT_INDEX -> {
+					for (Section text : NewsSnapshot.TEXT_COLUMNS)
+						for (long segment : columns.get(text).segments)
+							column.putLong(segment);
+				}
+				default -> columns.get(section).appendTo(out);
+			}
+			column.flush();
+		}
+
+		offsets[offsets.length - 1] = out.position();
+		return offsets;
+	}
+
+
+	private void writeHeader(FileChannel out, long[] offsets) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(NewsSnapshot.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		header.put(NewsSnapshot.MAGIC);
+		header.putInt(NewsSnapshot.VERSION_POSITION, NewsSnapshot.VERSION);
+		header.putInt(NewsSnapshot.FEED_COUNT_POSITION, feeds);
+		header.putInt(NewsSnapshot.ARTICLE_COUNT_POSITION, articles);
+		header.putInt(NewsSnapshot.AUTHOR_COUNT_POSITION, authors.size());
+		header.putLong(NewsSnapshot.EXPORTED_POSITION, System.currentTimeMillis());
+		header.putLong(NewsSnapshot.CHECKSUM_POSITION, NewsSnapshot.checksum(out, NewsSnapshot.HEADER_BYTES, offsets[offsets.length - 1]));
+		for (int i = 0; i < offsets.length; i++)
+			header.putLong(NewsSnapshot.OFFSETS_POSITION + i * Long.BYTES, offsets[i]);
+
+		header.clear();
+		while (header.hasRemaining())
+			out.write(header, header.position());
+	}
+
+
+	/**
+	 * Buffered little-endian writer of one section, either straight into the snapshot or into a temporary file.
+	 */
+	private static final class Column {
+		private final FileChannel channel;
+		private final Path file;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		private final long start;
+		private final List<Long> segments = new ArrayList<>(); // Text columns: offset of every segment, then the end
+
+		Column(FileChannel channel, Path file) throws IOException {
+			this.channel = channel != null ? channel : FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.READ);
+			this.file = file;
+			this.start = this.channel.position();
+		}
+
+		void putInt(int value) throws IOException {
+			ensure(Integer.BYTES);
+			buffer.putInt(value);
+		}
+
+		void putLong(long value) throws IOException {
+			ensure(Long.BYTES);
+			buffer.putLong(value);
+		}
+
+		void putByte(int value) throws IOException {
+			ensure(1);
+			buffer.put((byte) value);
+		}
+
+		void putBlock(String value) throws IOException {
+			putBlock(value.getBytes(StandardCharsets.UTF_8));
+		}
+
+		void putBlock(byte[] value) throws IOException {
+			putInt(value.length);
+			if (value.length <= buffer.capacity()) {
+				ensure(value.length);
+				buffer.put(value);
+			} else {
+				flush();
+				ByteBuffer large = ByteBuffer.wrap(value);
+				while (large.hasRemaining())
+					channel.write(large);
+			}
+		}
+
+		void markSegment() throws IOException {
+			segments.add(channel.position() + buffer.position() - start);
+		}
+
+		// Pads with zeros up to the next multiple of 8 bytes of the file
+		void align() throws IOException {
+			while ((channel.position() + buffer.position()) % Long.BYTES != 0)
+				putByte(0);
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			buffer.clear();
+		}
+
+		void appendTo(FileChannel out) throws IOException {
+			flush();
+			long size = channel.size();
+			for (long position = 0; position < size;)
+				position += channel.transferTo(position, size - position, out);
+		}
+
+		void delete() throws IOException {
+			if (file != null) {
+				channel.close();
+				Files.deleteIfExists(file);
+			}
+		}
+
+		private void ensure(int bytes) throws IOException {
+			if (buffer.remaining() < bytes)
+				flush();
+		}
+	}
+
+
+}
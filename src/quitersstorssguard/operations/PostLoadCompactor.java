@@ -0,0 +1,299 @@
+package quitersstorssguard.operations;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+
+
+/**
+ * Last stage of a full migration, in place of the blocking {@code VACUUM} it used to end with: refreshes the query
+ * planner statistics of the RSSGuard database, then compacts the file only when something would be gained.
+ * <p>
+ * Two figures are measured first. The free ratio is the share of pages on the freelist. The fragmentation is the share
+ * of b-tree pages (tables, indexes and overflow chains, in the order a scan reads them) that are neither the next page
+ * of the file nor a few pages after it. A database loaded in id order, and even more so with {@code --bulk-load},
+ * has next to no free page and long runs of consecutive pages: rewriting it costs a full copy and gains nothing, so
+ * it is kept as it is. Free pages alone are released with {@code PRAGMA incremental_vacuum} when the database was
+ * created with {@code auto_vacuum=INCREMENTAL}. Otherwise the database is written once to a new file next to it with
+ * {@code VACUUM INTO}, which is synced and renamed over the original once the migration connection is closed. Unlike
+ * {@code VACUUM}, which builds the new database in a temporary copy and then writes every page back, the copy is never
+ * held in memory and the original stays intact until the rename; it needs free disk space for the compacted size, and
+ * is not attempted without.
+ */
+public class PostLoadCompactor {
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************* Constants ********************************************************************
+	// **************************************************************************************************************************************************
+	public enum Mode {
+		AUTO,        // Chosen from the measures
+		SKIP,        // Statistics only
+		INCREMENTAL, // Free pages released in place, for auto_vacuum=INCREMENTAL databases
+		REBUILD;     // VACUUM INTO a new file, renamed over the database
+
+		public String label() {
+			return name().toLowerCase(Locale.ROOT);
+		}
+
+		public static Mode parse(String name) {
+			for (Mode mode : values())
+				if (mode.label().equals(name))
+					return mode;
+
+			throw new IllegalArgumentException("--compact takes 'auto', 'skip', 'incremental' or 'rebuild', got '" + name + "'");
+		}
+	}
+
+	public static final String SUFFIX = ".compacting";
+
+	private static final double MIN_FREE_RATIO = 0.10;     // Below, the freelist is reused by RSSGuard soon enough
+	private static final double MIN_FRAGMENTATION = 0.30;  // Below, scans mostly read runs of consecutive pages
+	private static final int MAX_FORWARD_GAP = 8;          // Pages skipped forward still served by the read-ahead of the OS
+	private static final int AUTO_VACUUM_INCREMENTAL = 2;
+	private static final int ANALYSIS_LIMIT = 1000;        // Rows sampled per index by ANALYZE, enough for the planner
+	private static final String OPTIMIZE_ALL_TABLES = "0x10002"; // ANALYZE every table that needs it, not only those queried so far
+
+	private static final String PAGE_ORDER_QUERY = "SELECT name, pageno FROM dbstat"; // B-tree by b-tree, in traversal order
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private final Connection connection;
+	private final Path path;
+	private final Path compactedPath;
+	private final Mode requestedMode;
+
+	private long pageSize;
+	private long pageCount;
+	private long freePages;
+	private long scatteredPages;
+	private long btreePages;
+	private int autoVacuum;
+	private Mode mode = Mode.SKIP;
+	private String reason = "not measured";
+	private long bytesBefore;
+	private long bytesAfter;
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @param connection Open connection to the RSSGuard database (or its shadow copy) at {@code path}.
+	 */
+	public PostLoadCompactor(Connection connection, Path path, Mode requestedMode) {
+		this.connection = connection;
+		this.path = path.toAbsolutePath();
+		this.compactedPath = this.path.resolveSibling(this.path.getFileName() + SUFFIX);
+		this.requestedMode = requestedMode;
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * Lets {@code PRAGMA optimize} run {@code ANALYZE} on every table whose statistics are missing or outdated, with
+	 * a sample limit so that it takes seconds on the largest databases. Run before {@link #compact()}: the statistics
+	 * are stored in {@code sqlite_stat1}, which {@code VACUUM INTO} copies with the rest.
+	 */
+	public void optimize() throws SQLException {
+		try (Statement stmt = connection.createStatement()) {
+			stmt.execute("PRAGMA analysis_limit = " + ANALYSIS_LIMIT);
+			stmt.execute("PRAGMA optimize = " + OPTIMIZE_ALL_TABLES);
+		}
+	}
+
+
+	/**
+	 * Measures the database, chooses what to do and does it, except the rename of a rebuilt file (see
+	 * {@link #swap(String)}).
+	 *
+	 * @return The mode run, never {@link Mode#AUTO}.
+	 */
+	public Mode compact() throws SQLException {
+		measure();
+		choose();
+
+		switch (mode) {
+			case INCREMENTAL -> {
+				try (Statement stmt = connection.createStatement()) {
+					stmt.execute("PRAGMA incremental_vacuum");
+				}
+				bytesAfter = queryLong("PRAGMA page_count") * pageSize;
+			}
+			case REBUILD -> {
+				deleteQuietly(compactedPath); // Left by a run interrupted here, VACUUM INTO refuses to overwrite it
+				try (PreparedStatement stmt = connection.prepareStatement("VACUUM INTO ?")) {
+					stmt.setString(1, compactedPath.toString());
+					stmt.execute();
+					bytesAfter = Files.size(compactedPath);
+				} catch (SQLException | IOException e) {
+					deleteQuietly(compactedPath);
+					choose(Mode.SKIP, "copy failed");
+					throw new SQLException("Could not compact into " + compactedPath + ": " + e.getMessage(), e);
+				}
+			}
+			default -> bytesAfter = bytesBefore;
+		}
+		return mode;
+	}
+
+
+	/**
+	 * @return {@code true} when {@link #compact()} wrote a new file, to be swapped in once the connection is closed.
+	 */
+	public boolean isRebuilt() {
+		return mode == Mode.REBUILD;
+	}
+
+
+	/**
+	 * Gives the rebuilt file the journal mode of the database (a copy made by {@code VACUUM INTO} is never in WAL
+	 * mode), syncs it and renames it over the database. Every connection to the database must be closed. On failure
+	 * the database is left as it was and the rebuilt file is deleted.
+	 *
+	 * @param journalMode Journal mode the database had before the migration.
+	 */
+	public void swap(String journalMode) throws SQLException, IOException {
+		try {
+			if ("WAL".equalsIgnoreCase(journalMode)) {
+				try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + compactedPath);
+						Statement stmt = conn.createStatement()) {
+					stmt.execute("PRAGMA journal_mode = WAL");
+				}
+			}
+
+			try (FileChannel channel = FileChannel.open(compactedPath, StandardOpenOption.WRITE)) {
+				channel.force(true);
+			}
+
+			for (String journal : new String[] { "-wal", "-journal" })
+				if (Files.exists(path.resolveSibling(path.getFileName() + journal)))
+					throw new SQLException(path + " is still open (" + journal + " file present), not replacing it with the compacted copy");
+
+			ShadowDatabase.moveDurably(compactedPath, path);
+		} catch (SQLException | IOException e) {
+			deleteQuietly(compactedPath);
+			throw e;
+		}
+	}
+
+
+	/**
+	 * @return Line for the migration log: the measures, the mode run and why.
+	 */
+	public String describe() {
+		return String.format("  - Compaction\t: %s, %.1f%% free pages, %.1f%% fragmented, %d MB -> %d MB (%s)", mode.label(), 100.0 * getFreeRatio(),
+				100.0 * getFragmentation(), bytesBefore >> 20, bytesAfter >> 20, reason);
+	}
+
+
+	public double getFreeRatio() {
+		return pageCount > 0 ? (double) freePages / pageCount : 0;
+	}
+
+
+	public double getFragmentation() {
+		return btreePages > 0 ? (double) scatteredPages / btreePages : 0;
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Helpers *********************************************************************
+	// **************************************************************************************************************************************************
+	private void measure() throws SQLException {
+		pageSize = queryLong("PRAGMA page_size");
+		pageCount = queryLong("PRAGMA page_count");
+		freePages = queryLong("PRAGMA freelist_count");
+		autoVacuum = (int) queryLong("PRAGMA auto_vacuum");
+		bytesBefore = pageCount * pageSize;
+
+		// Walks every page once, but only parses page headers: about a second per GB
+		String previousName = null;
+		long previousPage = 0;
+		try (Statement stmt = connection.createStatement();
+				ResultSet rs = stmt.executeQuery(PAGE_ORDER_QUERY)) {
+			while (rs.next()) {
+				String name = rs.getString(1);
+				long page = rs.getLong(2);
+				if (name.equals(previousName) && (page <= previousPage || page > previousPage + MAX_FORWARD_GAP))
+					scatteredPages++;
+				btreePages++;
+				previousName = name;
+				previousPage = page;
+			}
+		}
+	}
+
+
+	private void choose() {
+		boolean incremental = autoVacuum == AUTO_VACUUM_INCREMENTAL;
+		boolean bloated = getFreeRatio() >= MIN_FREE_RATIO;
+		boolean fragmented = getFragmentation() >= MIN_FRAGMENTATION;
+
+		switch (requestedMode) {
+			case SKIP -> choose(Mode.SKIP, "requested");
+			case INCREMENTAL -> choose(incremental ? Mode.INCREMENTAL : Mode.SKIP, incremental ? "requested" : "auto_vacuum is not INCREMENTAL");
+			case REBUILD -> choose(Mode.REBUILD, "requested");
+			default -> {
+				if (!bloated && !fragmented)
+					choose(Mode.SKIP, "already compact");
+				else if (!fragmented && incremental)
+					choose(Mode.INCREMENTAL, "free pages only");
+				else if (!hasSpaceForCopy())
+					choose(incremental ? Mode.INCREMENTAL : Mode.SKIP, "not enough free disk space for a compacted copy");
+				else
+					choose(Mode.REBUILD, fragmented ? "fragmented" : "free pages");
+			}
+		}
+	}
+
+
+	private void choose(Mode mode, String reason) {
+		this.mode = mode;
+		this.reason = reason;
+	}
+
+
+	private boolean hasSpaceForCopy() {
+		try {
+			return Files.getFileStore(path).getUsableSpace() > (pageCount - freePages) * pageSize;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+
+	private long queryLong(String query) throws SQLException {
+		try (Statement stmt = connection.createStatement();
+				ResultSet rs = stmt.executeQuery(query)) {
+			return rs.next() ? rs.getLong(1) : 0;
+		}
+	}
+
+
+	private static void deleteQuietly(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			System.err.println("Warning: Could not delete " + file + ": " + e.getMessage());
+		}
+	}
+
+
+}
@@ -0,0 +1,160 @@
+package quitersstorssguard.operations;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import org.sqlite.SQLiteConfig;
+
+
+/**
+ * Named sets of SQLite pragmas for the QuiteRSS connections (read-only) and the RSSGuard connection, picked with
+ * {@code --profile} and overridden one by one with {@code --pragma} and {@code --source-pragma}.
+ * <ul>
+ * <li>{@link #SAFE}: every commit durable ({@code WAL}, {@code SYNCHRONOUS=FULL}) and nothing memory-mapped, for
+ * network-mounted home directories and disks of doubtful health. The exclusive lock keeps the WAL index in process
+ * memory, so no shared-memory file is needed on the network share.</li>
+ * <li>{@link #BALANCED}: a crash cannot corrupt the database ({@code WAL}, {@code SYNCHRONOUS=NORMAL}), with fewer and
+ * larger checkpoints and memory-mapped reads of both databases. The former {@code --crash-safe}.</li>
+ * <li>{@link #TURBO}: no journal and no synchronous writes, the historical settings of the migration, plus
+ * memory-mapped reads of QuiteRSS and larger pages for an RSSGuard database without articles yet. For local SSDs and tmpfs.</li>
+ * </ul>
+ */
+public enum PragmaProfile {
+
+	SAFE(Map.of("mmap_size", "0"),
+			Map.of("synchronous", "FULL", "journal_mode", "WAL", "wal_autocheckpoint", "1000", "mmap_size", "0")),
+	BALANCED(Map.of("mmap_size", Long.toString(256L << 20)),
+			Map.of("synchronous", "NORMAL", "journal_mode", "WAL", "wal_autocheckpoint", "10000", "mmap_size", Long.toString(256L << 20), "page_size", "8192")),
+	TURBO(Map.of("mmap_size", Long.toString(256L << 20)),
+			Map.of("synchronous", "OFF", "journal_mode", "OFF", "page_size", "16384"));
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************* Constants ********************************************************************
+	// **************************************************************************************************************************************************
+	// Settings shared by every profile, before those of the profile
+	private static final Map<String, String> COMMON_SOURCE_PRAGMAS = Map.of("cache_size", "20000", "temp_store", "MEMORY", "busy_timeout", "30000");
+	private static final Map<String, String> COMMON_TARGET_PRAGMAS = Map.of("cache_size", "-81920", "page_size", "4096", "temp_store", "MEMORY",
+			"locking_mode", "EXCLUSIVE", "busy_timeout", "30000"); // Cache in KB, 80 MB whatever the page size
+
+	// Pragmas that may be set, the QuiteRSS connections being read-only
+	private static final Set<String> SOURCE_PRAGMAS = Set.of("cache_size", "mmap_size", "temp_store", "busy_timeout");
+	private static final Set<String> TARGET_PRAGMAS = Set.of("synchronous", "journal_mode", "wal_autocheckpoint", "journal_size_limit", "cache_size",
+			"mmap_size", "page_size", "temp_store", "locking_mode", "busy_timeout");
+	private static final Set<String> CONNECTION_PRAGMAS = Set.of("wal_autocheckpoint"); // Not known to SQLiteConfig, run once connected
+	private static final Set<String> FILE_PRAGMAS = Set.of("page_size"); // Rewrite the file, only applied to an RSSGuard database without articles
+
+	private static final Pattern VALUE_PATTERN = Pattern.compile("-?\\d+|[A-Za-z]+");
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private final Map<String, String> sourcePragmas; // Besides the common ones
+	private final Map<String, String> targetPragmas;
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	PragmaProfile(Map<String, String> sourcePragmas, Map<String, String> targetPragmas) {
+		this.sourcePragmas = sourcePragmas;
+		this.targetPragmas = targetPragmas;
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @return Pragmas of the QuiteRSS connections, by lower-case name.
+	 */
+	public Map<String, String> getSourcePragmas() {
+		return merge(COMMON_SOURCE_PRAGMAS, sourcePragmas);
+	}
+
+
+	/**
+	 * @return Pragmas of the RSSGuard connection, by lower-case name.
+	 */
+	public Map<String, String> getTargetPragmas() {
+		return merge(COMMON_TARGET_PRAGMAS, targetPragmas);
+	}
+
+
+	public String label() {
+		return name().toLowerCase(Locale.ROOT);
+	}
+
+
+	public static PragmaProfile parse(String name) {
+		for (PragmaProfile profile : values())
+			if (profile.label().equals(name))
+				return profile;
+
+		throw new IllegalArgumentException("--profile takes 'safe', 'balanced' or 'turbo', got '" + name + "'");
+	}
+
+
+	/**
+	 * Checks a pragma given on the command line.
+	 *
+	 * @param source {@code true} for the QuiteRSS connections, which only accept the settings of a reader.
+	 */
+	public static void checkPragma(String name, String value, boolean source) {
+		if (!(source ? SOURCE_PRAGMAS : TARGET_PRAGMAS).contains(name))
+			throw new IllegalArgumentException("Pragma '" + name + "' cannot be set on the " + (source ? "QuiteRSS" : "RSS Guard") + " connection, only "
+					+ String.join(", ", new TreeSet<>(source ? SOURCE_PRAGMAS : TARGET_PRAGMAS)));
+		if (!VALUE_PATTERN.matcher(value).matches())
+			throw new IllegalArgumentException("Pragma '" + name + "' takes a number or a keyword, got '" + value + "'");
+	}
+
+
+	/**
+	 * Adds {@code pragmas} to the settings of a connection, except those SQLite only takes once connected (see
+	 * {@link #applyConnectionPragmas(Connection, Map)}) and the page size, which the migration only changes when the
+	 * database is still empty.
+	 */
+	public static SQLiteConfig configure(SQLiteConfig config, Map<String, String> pragmas) {
+		pragmas.forEach((name, value) -> {
+			if (!CONNECTION_PRAGMAS.contains(name) && !FILE_PRAGMAS.contains(name))
+				config.setPragma(SQLiteConfig.Pragma.valueOf(name.toUpperCase(Locale.ROOT)), value);
+		});
+		return config;
+	}
+
+
+	/**
+	 * Runs the pragmas of {@code pragmas} that {@link SQLiteConfig} does not know, on a connection just opened.
+	 */
+	public static void applyConnectionPragmas(Connection connection, Map<String, String> pragmas) throws SQLException {
+		try (Statement stmt = connection.createStatement()) {
+			for (Map.Entry<String, String> pragma : pragmas.entrySet())
+				if (CONNECTION_PRAGMAS.contains(pragma.getKey()))
+					stmt.execute("PRAGMA " + pragma.getKey() + " = " + pragma.getValue());
+		}
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Helpers *********************************************************************
+	// **************************************************************************************************************************************************
+	private static Map<String, String> merge(Map<String, String> common, Map<String, String> specific) {
+		Map<String, String> pragmas = new TreeMap<>(common); // Sorted, for stable logs and reports
+		pragmas.putAll(specific);
+		return Collections.unmodifiableMap(pragmas);
+	}
+
+
+}
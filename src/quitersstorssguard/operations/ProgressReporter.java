@@ -0,0 +1,208 @@
+package quitersstorssguard.operations;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import quitersstorssguard.utils.Miscellaneous;
+
+
+/**
+ * Reports the progress of the current phase (rows done out of a total counted up front, current rows/s and bytes/s,
+ * ETA) from its own thread at a fixed interval.
+ * <p>
+ * The reader and writer threads only update counters they already maintain, the reporter samples them: nothing is
+ * printed from the hot path, so a slow terminal or a full pipe can stall this thread but never the writer. On a
+ * terminal the report is one line rewritten in place; otherwise (redirected output) one line is printed per interval,
+ * and in machine-readable mode every line is a set of {@code key=value} pairs starting with {@code progress}.
+ */
+public class ProgressReporter implements AutoCloseable {
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************* Constants ********************************************************************
+	// **************************************************************************************************************************************************
+	private static final double SMOOTHING = 0.5; // Weight of the last interval in the rates used for the ETA
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private final Duration interval;
+	private final boolean machineReadable;
+	private final boolean terminal;
+	private final PrintStream out;
+	private ScheduledExecutorService scheduler;
+	private ScheduledFuture<?> task;
+
+	// Current phase, guarded by this
+	private String phase;
+	private long total;
+	private LongSupplier done;
+	private LongSupplier bytes;
+	private long baseDone;
+	private long baseBytes;
+	private long phaseStartNanos;
+	private long lastNanos;
+	private long lastDone;
+	private long lastBytes;
+	private double rowsPerSecond = -1;
+	private double bytesPerSecond = -1;
+	private int lineLength;
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @param interval        Time between two reports.
+	 * @param machineReadable {@code true} for {@code key=value} lines, {@code false} for human-readable ones.
+	 * @param out             Stream the reports are printed to.
+	 */
+	public ProgressReporter(Duration interval, boolean machineReadable, PrintStream out) {
+		this.interval = interval;
+		this.machineReadable = machineReadable;
+		this.terminal = !machineReadable && System.console() != null;
+		this.out = out;
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * Starts reporting a new phase, ending the previous one if needed.
+	 *
+	 * @param phase Name of the phase, e.g. {@code articles}.
+	 * @param total Rows expected, from the pre-scan.
+	 * @param done  Counter of the rows done, read from the reporter thread; only its increase during the phase counts.
+	 * @param bytes Counter of the bytes done, {@code null} when not tracked.
+	 */
+	public synchronized void startPhase(String phase, long total, LongSupplier done, LongSupplier bytes) {
+		if (this.phase != null)
+			finishPhase();
+
+		this.phase = phase;
+		this.total = total;
+		this.done = done;
+		this.bytes = bytes;
+		phaseStartNanos = lastNanos = System.nanoTime();
+		baseDone = done.getAsLong();
+		baseBytes = bytes != null ? bytes.getAsLong() : 0;
+		lastDone = lastBytes = 0;
+		rowsPerSecond = bytesPerSecond = -1;
+
+		if (scheduler == null) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "migration-progress");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		long millis = interval.toMillis();
+		task = scheduler.scheduleAtFixedRate(this::report, millis, millis, TimeUnit.MILLISECONDS);
+	}
+
+
+	/**
+	 * Prints the last report of the current phase, with its average rates.
+	 */
+	public synchronized void finishPhase() {
+		if (phase == null)
+			return;
+
+		task.cancel(false);
+
+		double seconds = Math.max(1e-3, (System.nanoTime() - phaseStartNanos) / 1e9);
+		long doneNow = done.getAsLong() - baseDone;
+		rowsPerSecond = doneNow / seconds;
+		bytesPerSecond = bytes != null ? (bytes.getAsLong() - baseBytes) / seconds : -1;
+		print(doneNow, true);
+
+		phase = null;
+	}
+
+
+	@Override
+	public synchronized void close() {
+		finishPhase();
+
+		if (scheduler != null)
+			scheduler.shutdownNow();
+		scheduler = null;
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Helpers *********************************************************************
+	// **************************************************************************************************************************************************
+	private synchronized void report() {
+		if (phase == null)
+			return;
+
+		long now = System.nanoTime();
+		long doneNow = done.getAsLong() - baseDone;
+		long bytesNow = bytes != null ? bytes.getAsLong() - baseBytes : 0;
+		double seconds = Math.max(1e-3, (now - lastNanos) / 1e9);
+
+		rowsPerSecond = smooth(rowsPerSecond, (doneNow - lastDone) / seconds);
+		if (bytes != null)
+			bytesPerSecond = smooth(bytesPerSecond, (bytesNow - lastBytes) / seconds);
+
+		lastNanos = now;
+		lastDone = doneNow;
+		lastBytes = bytesNow;
+		print(doneNow, false);
+	}
+
+
+	private void print(long doneNow, boolean last) {
+		double percent = total > 0 ? Math.min(100.0, 100.0 * doneNow / total) : 100.0;
+		long remaining = Math.max(0, total - doneNow);
+		long etaSeconds = last || remaining == 0 ? 0 : rowsPerSecond > 0 ? (long) Math.ceil(remaining / rowsPerSecond) : -1;
+		Duration elapsed = Duration.ofMillis((System.nanoTime() - phaseStartNanos) / 1_000_000);
+
+		if (machineReadable) {
+			out.println(String.format(Locale.ROOT, "progress phase=%s done=%d total=%d percent=%.1f rows_per_second=%.0f bytes_per_second=%.0f elapsed_seconds=%d eta_seconds=%d final=%b",
+					phase, doneNow, total, percent, rowsPerSecond, bytes != null ? bytesPerSecond : 0.0, elapsed.toSeconds(), etaSeconds, last));
+			return;
+		}
+
+		String line = String.format("%-10s %5.1f%%  %,d / %,d  %,.0f rows/s%s  %s",
+				capitalize(phase), percent, doneNow, total, rowsPerSecond,
+				bytes != null ? "  " + Miscellaneous.bytesToHumanReadable((long) bytesPerSecond) + "/s" : "",
+				last ? "done in " + Miscellaneous.durationToHumanReadable(elapsed)
+						: "ETA " + (etaSeconds < 0 ? "unknown" : Miscellaneous.durationToHumanReadable(Duration.ofSeconds(etaSeconds))));
+
+		if (!terminal) {
+			out.println(line);
+			return;
+		}
+
+		// Rewrite the line in place, padding over the end of a longer previous one
+		out.print("\r" + line + " ".repeat(Math.max(0, lineLength - line.length())) + (last ? System.lineSeparator() : ""));
+		out.flush();
+		lineLength = last ? 0 : line.length();
+	}
+
+
+	private static double smooth(double previous, double current) {
+		return previous < 0 ? current : SMOOTHING * current + (1 - SMOOTHING) * previous;
+	}
+
+
+	private static String capitalize(String text) {
+		return text.isEmpty() ? text : Character.toUpperCase(text.charAt(0)) + text.substring(1);
+	}
+
+
+}
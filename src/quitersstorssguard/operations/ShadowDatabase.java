@@ -0,0 +1,164 @@
+package quitersstorssguard.operations;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+
+/**
+ * Copy of the RSSGuard database a migration writes to instead of the real file, next to it and named after it with
+ * the {@value #SUFFIX} suffix.
+ * <p>
+ * The copy is taken from the destination with {@code VACUUM INTO} before anything is written, so it has the schema,
+ * the account and the settings (page size, auto vacuum) of the user's file. It can then be loaded with the journal and
+ * synchronous writes turned off: a crash can only damage the copy. Once the migration is complete the copy is
+ * flushed to disk, checked with {@code PRAGMA integrity_check} and renamed over the destination in one atomic step,
+ * so the destination is always either the untouched original or the complete result.
+ */
+public class ShadowDatabase {
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************* Constants ********************************************************************
+	// **************************************************************************************************************************************************
+	public static final String SUFFIX = ".migrating";
+
+	private static final String JDBC_SQLITE_PREFIX = "jdbc:sqlite:";
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private final Path destination;
+	private final Path path;
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @param destination RSSGuard database the copy eventually replaces.
+	 */
+	public ShadowDatabase(Path destination) {
+		this.destination = destination.toAbsolutePath();
+		this.path = this.destination.resolveSibling(this.destination.getFileName() + SUFFIX);
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * Creates the copy for a new run, or checks that the copy of the interrupted run is there when resuming.
+	 */
+	public void prepare(boolean resume) throws SQLException {
+		checkDestinationIdle();
+
+		if (resume) {
+			if (!Files.exists(path))
+				throw new SQLException("No shadow copy " + path + " to resume, the interrupted run did not use --shadow");
+			return;
+		}
+
+		if (Files.exists(path))
+			throw new SQLException(path + " is left by an interrupted migration, run again with --resume to continue it, or delete it to start over");
+
+		// Not opened read-only: a read-only connection to a WAL database cannot remove the -wal and -shm files it creates
+		try (Connection conn = DriverManager.getConnection(JDBC_SQLITE_PREFIX + destination);
+				PreparedStatement stmt = conn.prepareStatement("VACUUM INTO ?")) {
+			stmt.setString(1, path.toString());
+			stmt.execute();
+		} catch (SQLException e) {
+			deleteQuietly(path);
+			throw e;
+		}
+	}
+
+
+	/**
+	 * @return File the migration writes to.
+	 */
+	public Path getPath() {
+		return path;
+	}
+
+
+	/**
+	 * Flushes the copy to disk, checks it and renames it over the destination. Every connection to the copy must be
+	 * closed. On failure the destination is left as it was and the copy stays for inspection.
+	 */
+	public void swap() throws SQLException, IOException {
+		for (String journal : new String[] { "-wal", "-journal" })
+			if (Files.exists(path.resolveSibling(path.getFileName() + journal)))
+				throw new SQLException("Shadow copy " + path + " is still open (" + journal + " file present), not swapping it in");
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			channel.force(true); // Written without synchronous writes: make sure every page is on disk before the rename
+		}
+
+		try (Connection conn = DriverManager.getConnection(JDBC_SQLITE_PREFIX + path);
+				Statement stmt = conn.createStatement();
+				ResultSet rs = stmt.executeQuery("PRAGMA integrity_check(1)")) {
+			String result = rs.next() ? rs.getString(1) : "no result";
+			if (!"ok".equalsIgnoreCase(result))
+				throw new SQLException("Shadow copy " + path + " failed its integrity check (" + result + "), " + destination + " was left untouched");
+		}
+
+		checkDestinationIdle();
+		moveDurably(path, destination);
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Helpers *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * Renames {@code file} over {@code destination} in one atomic step and syncs their directory, so that after a
+	 * crash the destination is either the old or the new file. {@code file} must already be on disk.
+	 */
+	static void moveDurably(Path file, Path destination) throws IOException {
+		Files.move(file, destination, StandardCopyOption.ATOMIC_MOVE);
+
+		try (FileChannel directory = FileChannel.open(destination.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+			directory.force(true); // Makes the rename itself durable
+		} catch (IOException e) {
+			// Directories cannot be opened or synced on every platform (Windows), the rename is still atomic there
+		}
+	}
+
+
+	/**
+	 * A write-ahead log or rollback journal next to the destination means RSSGuard (or a crashed writer) still has
+	 * changes that belong to the original file: swapping the file under them would mix them into the new one.
+	 */
+	private void checkDestinationIdle() throws SQLException {
+		for (String journal : new String[] { "-wal", "-journal" }) {
+			Path file = destination.resolveSibling(destination.getFileName() + journal);
+			if (Files.exists(file))
+				throw new SQLException(destination + " is in use (" + file.getFileName() + " present), close RSS Guard first");
+		}
+	}
+
+
+	private static void deleteQuietly(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			System.err.println("Warning: Could not delete " + file + ": " + e.getMessage());
+		}
+	}
+
+
+}
@@ -0,0 +1,325 @@
+package quitersstorssguard.operations;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+import org.sqlite.SQLiteConfig;
+
+import quitersstorssguard.operations.DatabaseManager.BatchProcessor;
+import quitersstorssguard.records.ArticleBatch;
+import quitersstorssguard.utils.Miscellaneous;
+import quitersstorssguard.utils.StringCache;
+
+
+/**
+ * Reads the QuiteRSS {@code news} table with several read-only connections in parallel.
+ * <p>
+ * The {@code news.id} space is split into contiguous key ranges (see {@link #splitKeyRange(Connection, int)}), one per
+ * shard, each read in keyset pages by a {@link KeysetNewsReader}. Paged shards only hold a read transaction for the
+ * duration of a page. Without paging every shard connection opens its read
+ * transaction before any row is decoded and the shards only start once they all observe the same {@code MAX(id)} and
+ * schema version, so the ranges are read from one consistent state of the file even if QuiteRSS is still running.
+ * Decoded batches from every shard are handed to the same {@link BatchProcessor}, which must therefore be thread-safe
+ * (typically a {@link BatchPipeline} feeding the single RSSGuard writer). Each batch is tagged with the index of its
+ * range and its rows are in ascending {@code id} order, so the writer can checkpoint every range on its own.
+ * <p>
+ * Ranges may also come from different QuiteRSS databases, one per range, when several of them are merged: each
+ * database is then read by its own thread, and the snapshot check only compares connections to the same file.
+ */
+public class ShardedNewsReader {
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************* Constants ********************************************************************
+	// **************************************************************************************************************************************************
+	private static final int SNAPSHOT_ATTEMPTS = 5;
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private final List<String> quiteRSS_DB_URLs;
+	private final SQLiteConfig sourceConfig;
+	private final int pageSize;
+	private final int fetchSize;
+	private final AdaptiveBatchController batchController;
+	private final int authorCacheSize;
+	private final MigrationMetrics metrics;
+	private final BooleanSupplier stopRequested;
+
+	private final AtomicLong totalProcessed = new AtomicLong();
+	private final LongAdder allocatedBytes = new LongAdder();
+	private final AtomicBoolean failed = new AtomicBoolean();
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @param quiteRSS_DB_URLs JDBC URL of the QuiteRSS database read by each range, or a single one read by all of them.
+	 * @param sourceConfig    Configuration of the source connections, must be read-only.
+	 * @param pageSize        Rows per keyset page, {@code 0} to read every range with one cursor from a shared snapshot.
+	 * @param fetchSize       Fetch size hint given to the driver, {@code 0} for its default.
+	 * @param batchController Decides when a batch is handed over to the processor, shared by all shards.
+	 * @param authorCacheSize Number of distinct author names each shard keeps as shared instances.
+	 * @param metrics         Receives the read and decode time of every batch.
+	 * @param stopRequested   Polled between rows; once it returns {@code true} every shard hands over its current batch and stops.
+	 */
+	public ShardedNewsReader(List<String> quiteRSS_DB_URLs, SQLiteConfig sourceConfig, int pageSize, int fetchSize, AdaptiveBatchController batchController, int authorCacheSize,
+			MigrationMetrics metrics, BooleanSupplier stopRequested) {
+		this.quiteRSS_DB_URLs = List.copyOf(quiteRSS_DB_URLs);
+		this.sourceConfig = sourceConfig;
+		this.pageSize = pageSize;
+		this.fetchSize = fetchSize;
+		this.batchController = batchController;
+		this.authorCacheSize = authorCacheSize;
+		this.metrics = metrics;
+		this.stopRequested = stopRequested;
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * Reads the non-deleted articles of every range {@code [fromIds[i], toIds[i])} and hands them in batches to
+	 * {@code processor}, one thread and connection per range.
+	 *
+	 * @return Number of articles read.
+	 */
+	public long read(BatchProcessor<ArticleBatch> processor, long[] fromIds, long[] toIds) throws SQLException {
+
+		List<Connection> connections = pageSize > 0 ? openConnections(fromIds.length) : openSnapshot(fromIds.length);
+		ExecutorService executor = Executors.newFixedThreadPool(connections.size(), runnable -> new Thread(runnable, "quiterss-shard-reader"));
+
+		try {
+			List<Future<?>> futures = new ArrayList<>(connections.size());
+			for (int shard = 0; shard < connections.size(); shard++) {
+				Connection connection = connections.get(shard);
+				int range = shard;
+				futures.add(executor.submit(() -> {
+					readRange(connection, range, fromIds[range], toIds[range], processor);
+					return null;
+				}));
+			}
+
+			for (Future<?> future : futures)
+				awaitShard(future);
+
+			return totalProcessed.get();
+
+		} finally {
+			executor.shutdownNow();
+			for (Connection connection : connections)
+				closeSnapshot(connection);
+		}
+	}
+
+
+
+	/**
+	 * @return Bytes allocated by all shard threads while reading, or a negative value when unsupported by the JVM.
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes.sum();
+	}
+
+
+	/**
+	 * Splits {@code [MIN(id), MAX(id)]} into {@code shards} contiguous half-open ranges of equal width.
+	 *
+	 * @return {@code shards + 1} ascending bounds, range {@code i} being {@code [bounds[i], bounds[i + 1])}.
+	 */
+	static long[] splitKeyRange(Connection connection, int shards) throws SQLException {
+
+		long minId = 0;
+		long maxId = -1;
+
+		try (Statement stmt = connection.createStatement();
+				ResultSet rs = stmt.executeQuery("SELECT MIN(id), MAX(id) FROM news")) {
+			if (rs.next() && rs.getObject(1) != null) {
+				minId = rs.getLong(1);
+				maxId = rs.getLong(2);
+			}
+		}
+
+		long[] bounds = new long[shards + 1];
+		long width = Math.max(1, (maxId - minId + 1 + shards - 1) / shards);
+
+		for (int i = 0; i < shards; i++)
+			bounds[i] = Math.min(minId + i * width, maxId + 1);
+
+		bounds[shards] = maxId + 1;
+		return bounds;
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Helpers *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * Opens one connection per shard in auto-commit mode, so that every page is a transaction of its own.
+	 */
+	private List<Connection> openConnections(int shardCount) throws SQLException {
+		List<Connection> connections = new ArrayList<>(shardCount);
+
+		try {
+			for (int shard = 0; shard < shardCount; shard++)
+				connections.add(DriverManager.getConnection(urlOf(shard), sourceConfig.toProperties()));
+		} catch (SQLException e) {
+			connections.forEach(this::closeSnapshot);
+			throw e;
+		}
+
+		return connections;
+	}
+
+
+	/**
+	 * Opens one connection per shard and starts a read transaction on each. SQLite has no way to share a snapshot
+	 * between connections, so the snapshot is considered consistent when every connection to the same database sees the
+	 * same last article and schema; otherwise a commit slipped in between and the whole set is opened again.
+	 */
+	private List<Connection> openSnapshot(int shardCount) throws SQLException {
+
+		for (int attempt = 1; attempt <= SNAPSHOT_ATTEMPTS; attempt++) {
+			List<Connection> connections = new ArrayList<>(shardCount);
+			boolean consistent = true;
+			Map<String, String> references = new HashMap<>(); // State seen by the first connection to each database
+
+			try {
+				for (int shard = 0; shard < shardCount; shard++) {
+					Connection connection = DriverManager.getConnection(urlOf(shard), sourceConfig.toProperties());
+					connections.add(connection);
+					connection.setAutoCommit(false);
+
+					String state = readSnapshotState(connection);
+					String reference = references.putIfAbsent(urlOf(shard), state);
+					if (reference != null && !reference.equals(state))
+						consistent = false;
+				}
+			} catch (SQLException e) {
+				connections.forEach(this::closeSnapshot);
+				throw e;
+			}
+
+			if (consistent)
+				return connections;
+
+			connections.forEach(this::closeSnapshot);
+			System.err.println("Warning: QuiteRSS database changed while opening shard snapshots, retrying (" + attempt + "/" + SNAPSHOT_ATTEMPTS + ")");
+		}
+
+		throw new SQLException("Could not open a consistent read snapshot over " + shardCount + " connections, is QuiteRSS still writing to its database?");
+	}
+
+
+	/**
+	 * Runs a cheap read that acquires the shared lock (or the WAL read mark) for the open transaction.
+	 */
+	private String readSnapshotState(Connection connection) throws SQLException {
+		try (Statement stmt = connection.createStatement();
+				ResultSet rs = stmt.executeQuery("SELECT (SELECT MAX(id) FROM news), (SELECT schema_version FROM pragma_schema_version)")) {
+			rs.next();
+			return rs.getLong(1) + "/" + rs.getLong(2);
+		}
+	}
+
+
+	private String urlOf(int range) {
+		return quiteRSS_DB_URLs.get(quiteRSS_DB_URLs.size() == 1 ? 0 : range);
+	}
+
+
+	private void readRange(Connection connection, int range, long fromId, long toId, BatchProcessor<ArticleBatch> processor) throws SQLException {
+
+		if (fromId >= toId)
+			return;
+
+		long allocatedBefore = Miscellaneous.currentThreadAllocatedBytes();
+
+		try {
+			KeysetNewsReader reader = new KeysetNewsReader(connection, pageSize, fetchSize);
+			ArticleBatch batch = new ArticleBatch(AdaptiveBatchController.MAX_ROWS);
+			batch.setRange(range);
+			StringCache authors = new StringCache(authorCacheSize);
+			MigrationMetrics.ReaderClock clock = metrics.newReaderClock(reader::getReadNanos);
+
+			reader.read(fromId, toId, () -> failed.get() || stopRequested.getAsBoolean(), rs -> {
+				long start = System.nanoTime();
+				DatabaseManager.readArticle(rs, batch, authors);
+				clock.addDecode(System.nanoTime() - start);
+
+				if (batchController.isComplete(batch))
+					handOver(batch, processor, clock);
+			});
+
+			if (!batch.isEmpty() && !failed.get())
+				handOver(batch, processor, clock);
+
+		} catch (SQLException | RuntimeException e) {
+			failed.set(true); // Stop the other shards early
+			throw e;
+		} finally {
+			allocatedBytes.add(Miscellaneous.currentThreadAllocatedBytes() - allocatedBefore);
+		}
+	}
+
+
+	private void handOver(ArticleBatch batch, BatchProcessor<ArticleBatch> processor, MigrationMetrics.ReaderClock clock) throws SQLException {
+		clock.batchHandedOver();
+		processor.processBatch(batch);
+		totalProcessed.addAndGet(batch.size());
+		batch.clear();
+	}
+
+
+	private void awaitShard(Future<?> future) throws SQLException {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while reading QuiteRSS shards", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SQLException sqlException)
+				throw sqlException;
+
+			throw new SQLException("QuiteRSS shard reader failed: " + e.getCause().getMessage(), e.getCause());
+		}
+	}
+
+
+	private void closeSnapshot(Connection connection) {
+		try {
+			if (!connection.getAutoCommit())
+				connection.rollback(); // Read-only, only releases the snapshot
+		} catch (SQLException e) {
+			// Ignored, the connection is being discarded
+		}
+
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			System.err.println("Error closing resource: " + e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,415 @@
+package quitersstorssguard.operations;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.sqlite.SQLiteConfig;
+
+import quitersstorssguard.utils.Miscellaneous;
+
+
+/**
+ * Writes a synthetic but realistic QuiteRSS database, and an empty RSSGuard (schema_version=10) database next to it, for
+ * end-to-end load tests of {@link DatabaseManager#performFullMigration()} without any user data.
+ * <p>
+ * The output only depends on the scale and the seed. It contains nested categories, feed icons (some duplicated, some
+ * oversized, some corrupt), a skewed (Zipf) number of articles per feed, log-normally distributed description sizes
+ * with rare multi-megabyte outliers, embedded base64 images, duplicated GUIDs across feeds, and ISO timestamps in the
+ * shapes QuiteRSS writes.
+ */
+public class SyntheticDatabaseGenerator {
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************* Constants ********************************************************************
+	// **************************************************************************************************************************************************
+	private static final String CREATE_QUITERSS_SCHEMA = Miscellaneous.readFileFromResources("resources/create_quiterss_schema.sql");
+	private static final String CREATE_RSSGUARD_SCHEMA = Miscellaneous.readFileFromResources("resources/create_rssguard_schema.sql");
+
+	private static final String INSERT_FEED_QUERY = """
+			INSERT INTO feeds (id, text, title, description, xmlUrl, htmlUrl, image, hasChildren, parentId, rowToParent, created, updated,
+			                   addSingleNewsAnyDateOn, avoidedOldSingleNewsDate, layoutDirection, disableUpdate)
+			VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)""";
+	private static final String INSERT_NEWS_QUERY = """
+			INSERT INTO news (id, feedId, guid, description, title, published, received, author_name, author_email, category,
+			                  new, read, starred, deleted, link_href)
+			VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)""";
+	private static final String UPDATE_FEED_COUNTERS_QUERY = """
+			UPDATE feeds SET
+			  unread = (SELECT COUNT(*) FROM news WHERE news.feedId = feeds.id AND read = 0 AND deleted = 0),
+			  newCount = (SELECT COUNT(*) FROM news WHERE news.feedId = feeds.id AND new = 1 AND deleted = 0),
+			  undeleteCount = (SELECT COUNT(*) FROM news WHERE news.feedId = feeds.id AND deleted = 0)
+			WHERE xmlUrl != ''""";
+
+	private static final int COMMIT_EVERY = 20000;
+	private static final int ARTICLES_PER_FEED = 2000; // Average, when the feed count is not given
+	private static final double ZIPF_EXPONENT = 1.1;
+
+	private static final String[] WORDS = ("lorem ipsum dolor sit amet consectetur adipiscing elit sed do eiusmod tempor incididunt ut labore et "
+			+ "dolore magna aliqua release kernel update security browser privacy linux desktop server network storage python java rust "
+			+ "report market climate energy science research space mission launch review analysis interview opinion").split(" ");
+	private static final String[] AUTHORS = { null, "", "John Doe", "Jane Roe", "Editorial Team", "admin", "Max Mustermann", "Ana Silva",
+			"Li Wei", "Guest Author", "news@example.org", "Staff Writer" };
+	private static final DateTimeFormatter ISO_SECONDS = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+	private static final DateTimeFormatter ISO_MILLIS = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS");
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private final long articleCount;
+	private final int feedCount;
+	private final Random random;
+
+	private final String textPool;
+	private final List<String> embeddedImages = new ArrayList<>();
+	private final List<byte[]> icons = new ArrayList<>();
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @param articleCount Number of rows in {@code news}, deleted ones included.
+	 * @param feedCount    Number of feeds (categories excluded), or {@code 0} to derive it from the article count.
+	 * @param seed         Seed of every random choice; equal parameters give identical databases.
+	 */
+	public SyntheticDatabaseGenerator(long articleCount, int feedCount, long seed) {
+		this.articleCount = articleCount;
+		this.feedCount = feedCount > 0 ? feedCount : (int) Math.max(10, Math.min(50_000, articleCount / ARTICLES_PER_FEED));
+		this.random = new Random(seed);
+		this.textPool = buildTextPool(1 << 20);
+		buildImagePools();
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * Creates both database files, which must not exist yet.
+	 *
+	 * @return Human-readable summary of what was generated.
+	 */
+	public List<String> generate(Path quiteRssPath, Path rssGuardPath) throws SQLException, IOException {
+
+		if (Files.exists(quiteRssPath) || Files.exists(rssGuardPath))
+			throw new IOException("Refusing to overwrite an existing database: " + (Files.exists(quiteRssPath) ? quiteRssPath : rssGuardPath));
+
+		List<String> log = new ArrayList<>();
+		Instant start = Instant.now();
+
+		SQLiteConfig config = new SQLiteConfig();
+		config.setPragma(SQLiteConfig.Pragma.SYNCHRONOUS, "OFF");
+		config.setPragma(SQLiteConfig.Pragma.JOURNAL_MODE, "OFF");
+		config.setPragma(SQLiteConfig.Pragma.CACHE_SIZE, "20000");
+
+		try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + quiteRssPath, config.toProperties())) {
+			executeScript(connection, CREATE_QUITERSS_SCHEMA);
+			connection.setAutoCommit(false);
+
+			int[] feedIds = insertFeeds(connection);
+			long articles = insertNews(connection, feedIds);
+
+			try (Statement stmt = connection.createStatement()) {
+				stmt.executeUpdate(UPDATE_FEED_COUNTERS_QUERY);
+			}
+			connection.commit();
+
+			log.add(String.format("QuiteRSS\t: %s (%d feeds, %d articles, %s)", quiteRssPath, feedIds.length, articles,
+					Miscellaneous.bytesToHumanReadable(Files.size(quiteRssPath))));
+		}
+
+		try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + rssGuardPath)) {
+			executeScript(connection, CREATE_RSSGUARD_SCHEMA);
+			log.add("RSSGuard\t: " + rssGuardPath + " (empty, schema_version=10)");
+		}
+
+		log.add("Generated in " + Miscellaneous.durationToHumanReadable(Duration.between(start, Instant.now())));
+		return log;
+	}
+
+
+	/**
+	 * Runs every statement of a script made of {@code ;}-terminated statements.
+	 */
+	static void executeScript(Connection connection, String script) throws SQLException {
+		try (Statement stmt = connection.createStatement()) {
+			for (String sql : Miscellaneous.splitSqlStatements(script))
+				stmt.execute(sql);
+		}
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Helpers *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * Inserts about one category per 20 feeds, nested up to three levels, then the feeds spread over them.
+	 *
+	 * @return Ids of the feeds (categories excluded).
+	 */
+	private int[] insertFeeds(Connection connection) throws SQLException {
+
+		int categoryCount = Math.max(1, feedCount / 20);
+		int[] feedIds = new int[feedCount];
+		int[] categoryDepth = new int[categoryCount + 1];
+		int[] childCount = new int[categoryCount + feedCount + 1];
+
+		try (PreparedStatement stmt = connection.prepareStatement(INSERT_FEED_QUERY)) {
+			for (int id = 1; id <= categoryCount + feedCount; id++) {
+				boolean isCategory = id <= categoryCount;
+
+				// Parent: root or an earlier category not deeper than 2 (so at most 3 levels)
+				int parentId = 0;
+				if (id > 1 && random.nextInt(isCategory ? 2 : 5) != 0) {
+					parentId = 1 + random.nextInt(Math.min(id - 1, categoryCount));
+					while (parentId != 0 && categoryDepth[parentId] >= 2)
+						parentId = parentId == 1 ? 0 : 1 + random.nextInt(parentId - 1);
+				}
+				if (isCategory)
+					categoryDepth[id] = parentId == 0 ? 0 : categoryDepth[parentId] + 1;
+
+				String name = isCategory ? "Category " + id : capitalize(words(2 + random.nextInt(4))) + " " + id;
+				String host = "feed" + id + ".example." + (random.nextBoolean() ? "org" : "com");
+
+				stmt.setInt(1, id);
+				stmt.setString(2, random.nextInt(10) == 0 ? "  " + name + " " : name);
+				stmt.setString(3, name);
+				stmt.setString(4, isCategory || random.nextInt(4) == 0 ? null : words(5 + random.nextInt(20)));
+				stmt.setString(5, isCategory ? "" : "https://" + host + "/rss.xml");
+				stmt.setString(6, isCategory ? null : "https://" + host + "/");
+				stmt.setBytes(7, isCategory ? null : randomIcon());
+				stmt.setInt(8, 0);
+				stmt.setInt(9, parentId);
+				stmt.setInt(10, childCount[parentId]++);
+				stmt.setString(11, timestamp(Instant.parse("2012-01-01T00:00:00Z").plusSeconds(random.nextInt(300_000_000))));
+				stmt.setString(12, timestamp(Instant.parse("2024-01-01T00:00:00Z").plusSeconds(random.nextInt(30_000_000))));
+				stmt.setInt(13, random.nextInt(2));
+				stmt.setString(14, null);
+				stmt.setInt(15, random.nextInt(50) == 0 ? 1 : 0);
+				stmt.setInt(16, random.nextInt(15) == 0 ? 1 : 0);
+				stmt.addBatch();
+
+				if (!isCategory)
+					feedIds[id - categoryCount - 1] = id;
+			}
+			stmt.executeBatch();
+		}
+
+		try (Statement stmt = connection.createStatement()) {
+			stmt.executeUpdate("UPDATE feeds SET hasChildren = 1 WHERE id IN (SELECT parentId FROM feeds)");
+		}
+		connection.commit();
+
+		return feedIds;
+	}
+
+
+	private long insertNews(Connection connection, int[] feedIds) throws SQLException {
+
+		double[] cumulativeWeights = zipfWeights(feedIds.length);
+		int[] feedsByPopularity = feedIds.clone();
+		for (int i = feedsByPopularity.length - 1; i > 0; i--) { // Shuffled, the busiest feed is not always the first one
+			int j = random.nextInt(i + 1);
+			int swap = feedsByPopularity[i];
+			feedsByPopularity[i] = feedsByPopularity[j];
+			feedsByPopularity[j] = swap;
+		}
+
+		long firstReceived = Instant.parse("2014-01-01T00:00:00Z").getEpochSecond();
+		long span = Instant.parse("2025-06-01T00:00:00Z").getEpochSecond() - firstReceived;
+		String[] recentGuids = new String[256];
+
+		try (PreparedStatement stmt = connection.prepareStatement(INSERT_NEWS_QUERY)) {
+			for (long id = 1; id <= articleCount; id++) {
+				int feedId = feedsByPopularity[pick(cumulativeWeights)];
+				Instant received = Instant.ofEpochSecond(firstReceived + span * id / (articleCount + 1) + random.nextInt(3600));
+
+				// ~2% re-published under another feed or re-fetched with the same GUID
+				String link = "https://feed" + feedId + ".example.org/" + received.atZone(ZoneOffset.UTC).getYear() + "/" + Long.toHexString(id * 2654435761L);
+				String guid = random.nextInt(50) == 0 && recentGuids[(int) (id & 255)] != null ? recentGuids[(int) (id & 255)] : link;
+				recentGuids[(int) (id & 255)] = guid;
+
+				int deleted = random.nextInt(100);
+				stmt.setLong(1, id);
+				stmt.setInt(2, feedId);
+				stmt.setString(3, random.nextInt(20) == 0 ? null : guid);
+				stmt.setString(4, description());
+				stmt.setString(5, random.nextInt(500) == 0 ? null : capitalize(words(3 + random.nextInt(10))));
+				stmt.setString(6, timestamp(received.minusSeconds(random.nextInt(86_400))));
+				stmt.setString(7, timestamp(received));
+				stmt.setString(8, AUTHORS[random.nextInt(AUTHORS.length)]);
+				stmt.setString(9, random.nextInt(10) == 0 ? "author@example.org" : null);
+				stmt.setString(10, random.nextInt(3) == 0 ? words(1) : null);
+				stmt.setInt(11, id > articleCount - articleCount / 50 ? 1 : 0);
+				stmt.setInt(12, id < articleCount * 0.8 ? (random.nextInt(10) == 0 ? 0 : 1) : random.nextInt(2));
+				stmt.setInt(13, random.nextInt(40) == 0 ? 1 : 0);
+				stmt.setInt(14, deleted < 8 ? 1 : deleted < 10 ? 2 : 0);
+				stmt.setString(15, random.nextInt(100) == 0 ? null : link);
+				stmt.addBatch();
+
+				if (id % COMMIT_EVERY == 0) {
+					stmt.executeBatch();
+					connection.commit();
+					System.out.printf("Generated %d articles...%n", id);
+				}
+			}
+
+			stmt.executeBatch();
+			connection.commit();
+		}
+
+		return articleCount;
+	}
+
+
+	/**
+	 * Description of 200 bytes to a few hundred KB (log-normal), with rare multi-megabyte outliers and about 3% of
+	 * embedded base64 images drawn from a small pool, as pasted logos repeat a lot.
+	 */
+	private String description() {
+		int size;
+		if (random.nextInt(50_000) == 0)
+			size = (1 + random.nextInt(4)) << 20;
+		else
+			size = (int) Math.min(400_000, Math.max(200, Math.exp(7.3 + 1.1 * random.nextGaussian())));
+
+		StringBuilder html = new StringBuilder(size + 64);
+		while (html.length() < size) {
+			int length = Math.min(size - html.length(), 200 + random.nextInt(1200));
+			int offset = random.nextInt(textPool.length() - length);
+			html.append("<p>").append(textPool, offset, offset + length).append("</p>\n");
+
+			if (random.nextInt(100) < 3)
+				html.append("<img src=\"data:image/png;base64,").append(embeddedImages.get(random.nextInt(embeddedImages.size()))).append("\" alt=\"\">\n");
+		}
+		return html.toString();
+	}
+
+
+	/**
+	 * Icon of a feed: mostly small PNGs shared by several feeds, a few oversized ones, some corrupt bytes, or none.
+	 */
+	private byte[] randomIcon() {
+		int roll = random.nextInt(100);
+		if (roll < 10)
+			return null;
+		if (roll < 13)
+			return Arrays.copyOf(icons.get(random.nextInt(icons.size())), 20); // Truncated, not decodable
+		if (roll < 18)
+			return png(256 + random.nextInt(256), random.nextInt());
+
+		return icons.get(random.nextInt(icons.size()));
+	}
+
+
+	private void buildImagePools() {
+		for (int i = 0; i < 40; i++)
+			icons.add(png(i % 2 == 0 ? 16 : 32, random.nextInt()));
+
+		for (int i = 0; i < 25; i++)
+			embeddedImages.add(Base64.getEncoder().encodeToString(png(40 + random.nextInt(200), random.nextInt())));
+	}
+
+
+	private static byte[] png(int size, int seed) {
+		Random shapes = new Random(seed);
+		BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D graphics = image.createGraphics();
+
+		for (int i = 0; i < 12; i++) {
+			graphics.setColor(new Color(shapes.nextInt(0xFFFFFF)));
+			graphics.fillOval(shapes.nextInt(size), shapes.nextInt(size), 1 + shapes.nextInt(size), 1 + shapes.nextInt(size));
+		}
+		graphics.dispose();
+
+		try (ByteArrayOutputStream output = new ByteArrayOutputStream()) {
+			ImageIO.write(image, "png", output);
+			return output.toByteArray();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+
+	private String buildTextPool(int size) {
+		StringBuilder text = new StringBuilder(size + 32);
+		while (text.length() < size)
+			text.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(12) == 0 ? ". " : " ");
+		return text.toString();
+	}
+
+
+	private String words(int count) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < count; i++)
+			text.append(i == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+		return text.toString();
+	}
+
+
+	private static String capitalize(String text) {
+		return text.isEmpty() ? text : Character.toUpperCase(text.charAt(0)) + text.substring(1);
+	}
+
+
+	/**
+	 * Timestamp in one of the shapes found in QuiteRSS databases: local ISO (most), UTC with {@code Z}, or with millis.
+	 */
+	private String timestamp(Instant instant) {
+		LocalDateTime dateTime = LocalDateTime.ofInstant(instant, ZoneOffset.UTC);
+		int roll = random.nextInt(20);
+		if (roll < 14)
+			return dateTime.format(ISO_SECONDS);
+		if (roll < 19)
+			return dateTime.format(ISO_SECONDS) + "Z";
+		return dateTime.format(ISO_MILLIS);
+	}
+
+
+	private static double[] zipfWeights(int count) {
+		double[] cumulative = new double[count];
+		double total = 0;
+		for (int rank = 0; rank < count; rank++) {
+			total += 1 / Math.pow(rank + 1, ZIPF_EXPONENT);
+			cumulative[rank] = total;
+		}
+		for (int rank = 0; rank < count; rank++)
+			cumulative[rank] /= total;
+		return cumulative;
+	}
+
+
+	private int pick(double[] cumulativeWeights) {
+		int index = Arrays.binarySearch(cumulativeWeights, random.nextDouble());
+		return Math.min(cumulativeWeights.length - 1, index >= 0 ? index : -index - 1);
+	}
+
+}
@@ -0,0 +1,271 @@
+package quitersstorssguard.records;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Mutable, column-oriented buffer holding a batch of QuiteRSS articles.
+ * <p>
+ * One instance is filled, handed over and cleared again for every batch, instead of allocating one
+ * {@link Store_QuiteRSS} per row. Values are normalized exactly like the {@link Store_QuiteRSS} compact constructor.
+ */
+public final class ArticleBatch {
+
+	private static final int FIXED_ROW_BYTES = 64; // The eight numeric parameters of a row, bound as 64-bit integers
+
+	private final String[] author_name;
+	private final String[] description;
+	private final String[] guid;
+	private final long[] received;
+	private final int[] feedId;
+	private final int[] id;
+	private final int[] deleted;
+	private final int[] starred;
+	private final int[] read;
+	private final String[] title;
+	private final String[] link_href;
+
+	private int size;
+	private int range; // Key range of news.id the rows were read from, kept across clear()
+	private long byteSize;
+	private int lastId = -1; // Id of the last row added, kept when rows are removed
+
+
+	public ArticleBatch(int capacity) {
+		author_name = new String[capacity];
+		description = new String[capacity];
+		guid = new String[capacity];
+		received = new long[capacity];
+		feedId = new int[capacity];
+		id = new int[capacity];
+		deleted = new int[capacity];
+		starred = new int[capacity];
+		read = new int[capacity];
+		title = new String[capacity];
+		link_href = new String[capacity];
+	}
+
+
+	// Appends one row, same parameter order as Store_QuiteRSS
+	public void add(String author_name, String description, String guid, long received, int feedId, int id,
+			int deleted, int starred, int read, String title, String link_href) {
+		int row = size++;
+		this.author_name[row] = Objects.requireNonNullElse(author_name, "");
+		this.description[row] = Objects.requireNonNullElse(description, "");
+		this.guid[row] = Objects.requireNonNullElse(guid, "");
+		this.received[row] = received;
+		this.feedId[row] = feedId;
+		this.id[row] = id;
+		this.deleted[row] = deleted;
+		this.starred[row] = starred;
+		this.read[row] = read != 0 ? 1 : 0;
+		this.title[row] = Objects.requireNonNullElse(title, "");
+		this.link_href[row] = Objects.requireNonNullElse(link_href, "");
+		this.lastId = id;
+		byteSize += FIXED_ROW_BYTES + this.author_name[row].length() + this.description[row].length() + this.guid[row].length()
+				+ this.title[row].length() + this.link_href[row].length();
+	}
+
+
+	// Replaces the description of one row, e.g. after an ArticleTransform rewrote it
+	public void setDescription(int row, String description) {
+		if (row >= size)
+			throw new IndexOutOfBoundsException("Row " + row + " of a batch of " + size);
+
+		String value = Objects.requireNonNullElse(description, "");
+		byteSize += value.length() - this.description[row].length();
+		this.description[row] = value;
+	}
+
+
+	// Removes the rows flagged in drop, the others keep their order
+	public void removeRows(boolean[] drop) {
+		int kept = 0;
+
+		for (int row = 0; row < size; row++) {
+			if (drop[row]) {
+				byteSize -= FIXED_ROW_BYTES + author_name[row].length() + description[row].length() + guid[row].length()
+						+ title[row].length() + link_href[row].length();
+				continue;
+			}
+
+			if (kept != row) {
+				author_name[kept] = author_name[row];
+				description[kept] = description[row];
+				guid[kept] = guid[row];
+				received[kept] = received[row];
+				feedId[kept] = feedId[row];
+				id[kept] = id[row];
+				deleted[kept] = deleted[row];
+				starred[kept] = starred[row];
+				read[kept] = read[row];
+				title[kept] = title[row];
+				link_href[kept] = link_href[row];
+			}
+			kept++;
+		}
+
+		Arrays.fill(author_name, kept, size, null);
+		Arrays.fill(description, kept, size, null);
+		Arrays.fill(guid, kept, size, null);
+		Arrays.fill(title, kept, size, null);
+		Arrays.fill(link_href, kept, size, null);
+		size = kept;
+	}
+
+
+	// Moves every row to the feed given by feedIds and shifts its id by idOffset, e.g. when merging several QuiteRSS databases
+	public void remapIds(IntUnaryOperator feedIds, int idOffset) {
+		for (int row = 0; row < size; row++) {
+			feedId[row] = feedIds.applyAsInt(feedId[row]);
+			id[row] += idOffset;
+		}
+
+		if (lastId >= 0)
+			lastId += idOffset;
+	}
+
+
+	// Replaces the content of this batch with a copy of another one
+	public void copyFrom(ArticleBatch other) {
+		if (other.size > capacity())
+			throw new IllegalArgumentException("Batch of " + other.size + " rows does not fit into " + capacity());
+
+		clear();
+		System.arraycopy(other.author_name, 0, author_name, 0, other.size);
+		System.arraycopy(other.description, 0, description, 0, other.size);
+		System.arraycopy(other.guid, 0, guid, 0, other.size);
+		System.arraycopy(other.received, 0, received, 0, other.size);
+		System.arraycopy(other.feedId, 0, feedId, 0, other.size);
+		System.arraycopy(other.id, 0, id, 0, other.size);
+		System.arraycopy(other.deleted, 0, deleted, 0, other.size);
+		System.arraycopy(other.starred, 0, starred, 0, other.size);
+		System.arraycopy(other.read, 0, read, 0, other.size);
+		System.arraycopy(other.title, 0, title, 0, other.size);
+		System.arraycopy(other.link_href, 0, link_href, 0, other.size);
+		size = other.size;
+		range = other.range;
+		byteSize = other.byteSize;
+		lastId = other.lastId;
+	}
+
+
+	// Empties the batch and drops the string references so they can be collected
+	public void clear() {
+		Arrays.fill(author_name, 0, size, null);
+		Arrays.fill(description, 0, size, null);
+		Arrays.fill(guid, 0, size, null);
+		Arrays.fill(title, 0, size, null);
+		Arrays.fill(link_href, 0, size, null);
+		size = 0;
+		byteSize = 0;
+		lastId = -1;
+	}
+
+
+	public int size() {
+		return size;
+	}
+
+
+	public int capacity() {
+		return id.length;
+	}
+
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+
+	public boolean isFull() {
+		return size == id.length;
+	}
+
+
+	// Approximate size of the bound columns of all rows, strings counted one byte per character
+	public long byteSize() {
+		return byteSize;
+	}
+
+
+	// Id of the last row read into the batch, even when removeRows() dropped it, -1 when empty since clear()
+	public int lastId() {
+		return lastId;
+	}
+
+
+	public int range() {
+		return range;
+	}
+
+
+	public void setRange(int range) {
+		this.range = range;
+	}
+
+
+	// Column accessors
+	public String author_name(int row) {
+		return author_name[row];
+	}
+
+
+	public String description(int row) {
+		return description[row];
+	}
+
+
+	public String guid(int row) {
+		return guid[row];
+	}
+
+
+	public long received(int row) {
+		return received[row];
+	}
+
+
+	public int feedId(int row) {
+		return feedId[row];
+	}
+
+
+	public int id(int row) {
+		return id[row];
+	}
+
+
+	public int deleted(int row) {
+		return deleted[row];
+	}
+
+
+	public int starred(int row) {
+		return starred[row];
+	}
+
+
+	public int read(int row) {
+		return read[row];
+	}
+
+
+	public String title(int row) {
+		return title[row];
+	}
+
+
+	public String link_href(int row) {
+		return link_href[row];
+	}
+
+
+	// Materializes one row, for code paths outside the hot loop
+	public Store_QuiteRSS toRecord(int row) {
+		return new Store_QuiteRSS(author_name[row], description[row], guid[row], received[row], feedId[row], id[row],
+				deleted[row], starred[row], read[row], title[row], link_href[row]);
+	}
+
+}
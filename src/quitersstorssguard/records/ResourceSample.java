@@ -0,0 +1,15 @@
+package quitersstorssguard.records;
+
+/**
+ * Heap, garbage collection and progress figures taken at one point of a run by {@code MigrationMetrics}.
+ * Collection counts and times are totals since the start of the JVM.
+ */
+public record ResourceSample(
+        long elapsedMillis,
+        long heapUsedBytes,
+        long heapCommittedBytes,
+        long gcCollections,
+        long gcMillis,
+        long articles,
+        long articleBytes
+    ) {}
@@ -0,0 +1,53 @@
+package quitersstorssguard.records;
+
+import quitersstorssguard.utils.IntIntMap;
+
+/**
+ * Where the rows of one QuiteRSS database go when several of them are merged into one RSSGuard database.
+ * <p>
+ * Categories and feeds share one id space in QuiteRSS: every id is looked up in {@code feedIds}, built when the feeds
+ * are migrated. Article ids only need to stay unique and in order, they are shifted by {@code articleOffset}, the sum of
+ * the highest article ids of the databases merged before this one.
+ */
+public record SourceIdMapping(
+		IntIntMap feedIds,
+		int articleOffset
+		) {
+
+	public static final int ROOT_ID = 0; // parentId of the top-level categories and feeds
+	private static final int UNMAPPED = Integer.MIN_VALUE;
+
+
+	/**
+	 * @throws IllegalArgumentException when {@code sourceFeedId} did not exist when the feeds were migrated.
+	 */
+	public int feedId(int sourceFeedId) {
+		int feedId = feedIds.get(sourceFeedId, UNMAPPED);
+		if (feedId == UNMAPPED)
+			throw new IllegalArgumentException("Feed " + sourceFeedId + " was added to the QuiteRSS database after its feeds were migrated");
+
+		return feedId;
+	}
+
+
+	// Parents missing from the database become the root, so their children stay visible
+	public int parentId(int sourceParentId) {
+		return sourceParentId == ROOT_ID ? ROOT_ID : feedIds.get(sourceParentId, ROOT_ID);
+	}
+
+
+	public int articleId(long sourceArticleId) {
+		return Math.toIntExact(sourceArticleId + articleOffset);
+	}
+
+
+	public Store_QuiteRssFeed apply(Store_QuiteRssFeed feed) {
+		return feed.withIds(feedId(feed.id()), parentId(feed.parentId()));
+	}
+
+
+	public void apply(ArticleBatch batch) {
+		batch.remapIds(this::feedId, articleOffset);
+	}
+
+}
@@ -31,6 +31,18 @@ public record Store_QuiteRssFeed(
 	}
 
 
+	// Copy with another icon
+	public Store_QuiteRssFeed withIcon(byte[] icon) {
+		return new Store_QuiteRssFeed(order, parentId, id, title, description, created, feedURL, icon, disableUpdate, layoutDirection, addSingleNewsAnyDateOn);
+	}
+
+
+	// Copy moved to other ids, e.g. when merging several QuiteRSS databases
+	public Store_QuiteRssFeed withIds(int id, int parentId) {
+		return new Store_QuiteRssFeed(order, parentId, id, title, description, created, feedURL, icon, disableUpdate, layoutDirection, addSingleNewsAnyDateOn);
+	}
+
+
 	// Derived property
 	public boolean isCategory() {
 		return feedURL.isBlank();
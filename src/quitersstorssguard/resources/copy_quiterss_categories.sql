@@ -0,0 +1,20 @@
+INSERT INTO main.Categories (
+                    ordr,
+                    parent_id,
+                    id,
+                    title,
+                    date_created,
+                    account_id,
+                    custom_id
+                  )
+SELECT ifnull(CAST(rowToParent AS INTEGER), 0),
+       CASE WHEN id = 122 THEN -1 ELSE ifnull(CAST(parentId AS INTEGER), 0) END,
+       id,
+       quiterss_strip(text),
+       quiterss_timestamp(created),
+       1,
+       ''
+FROM quiterss.feeds
+WHERE id > ?
+  AND quiterss_is_category(xmlUrl)
+ORDER BY id;
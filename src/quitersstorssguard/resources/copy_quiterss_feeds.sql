@@ -0,0 +1,54 @@
+INSERT INTO main.Feeds (
+                    id,
+                    ordr,
+                    title,
+                    description,
+                    date_created,
+                    icon,
+                    category,
+                    source,
+                    update_type,
+                    update_interval,
+                    is_off,
+                    is_quiet,
+                    is_rtl,
+                    add_any_datetime_articles,
+                    datetime_to_avoid,
+                    keep_article_customize,
+                    keep_article_count,
+                    keep_unread_articles,
+                    keep_starred_articles,
+                    recycle_articles,
+                    open_articles,
+                    account_id,
+                    custom_id,
+                    custom_data
+                    )
+SELECT id,
+       ifnull(CAST(rowToParent AS INTEGER), 0),
+       quiterss_strip(text),
+       quiterss_strip(description),
+       quiterss_timestamp(created),
+       CAST(ifnull(image, x'') AS BLOB),
+       ifnull(CAST(parentId AS INTEGER), 0),
+       quiterss_strip(xmlUrl),
+       1,
+       900,
+       ifnull(CAST(disableUpdate AS INTEGER), 0),
+       0,
+       ifnull(CAST(layoutDirection AS INTEGER), 0),
+       ifnull(CAST(addSingleNewsAnyDateOn AS INTEGER), 0),
+       0,
+       0,
+       0,
+       1,
+       1,
+       1,
+       0,
+       1,
+       id,
+       ''
+FROM quiterss.feeds
+WHERE id > ?
+  AND NOT quiterss_is_category(xmlUrl)
+ORDER BY id;
@@ -0,0 +1,34 @@
+INSERT INTO main.Messages (
+                      author,
+                      contents,
+                      custom_id,
+                      date_created,
+                      feed,
+                      id,
+                      is_deleted,
+                      is_pdeleted,
+                      is_important,
+                      is_read,
+                      title,
+                      url,
+                      account_id
+                      )
+SELECT ifnull(author_name, ''),
+       ifnull(description, ''),
+       ifnull(guid, ''),
+       quiterss_timestamp(received),
+       ifnull(CAST(feedId AS INTEGER), 0),
+       id,
+       ifnull(CAST(deleted AS INTEGER), 0),
+       0,
+       ifnull(CAST(starred AS INTEGER), 0),
+       CASE WHEN ifnull(CAST(read AS INTEGER), 0) != 0 THEN 1 ELSE 0 END,
+       ifnull(title, ''),
+       ifnull(link_href, ''),
+       1
+FROM quiterss.news
+WHERE deleted = 0
+  AND id >= ?
+  AND id < ?
+ORDER BY id
+LIMIT ?;
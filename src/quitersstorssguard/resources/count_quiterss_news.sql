@@ -0,0 +1 @@
+SELECT COUNT(*) FROM news WHERE deleted = 0 AND id >= ? AND id < ?;
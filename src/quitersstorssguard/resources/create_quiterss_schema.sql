@@ -0,0 +1,71 @@
+CREATE TABLE feeds (
+                    id integer primary key,
+                    text varchar,
+                    title varchar,
+                    description varchar,
+                    xmlUrl varchar,
+                    htmlUrl varchar,
+                    language varchar,
+                    author_name varchar,
+                    pubdate varchar,
+                    lastBuildDate varchar,
+                    image blob,
+                    unread integer,
+                    newCount integer,
+                    currentNews integer,
+                    label varchar,
+                    undeleteCount integer,
+                    tags varchar,
+                    hasChildren integer default 0,
+                    parentId integer default 0,
+                    rowToParent integer,
+                    updateIntervalEnable int,
+                    updateInterval int,
+                    updateIntervalType varchar,
+                    updateOnStartup int,
+                    displayOnStartup int,
+                    created varchar,
+                    updated varchar,
+                    lastDisplayed varchar,
+                    addSingleNewsAnyDateOn int,
+                    avoidedOldSingleNewsDateOn int,
+                    avoidedOldSingleNewsDate varchar,
+                    typeFeed int,
+                    layoutDirection int,
+                    disableUpdate int,
+                    status integer default 0
+                    );
+CREATE TABLE news (
+                    id integer primary key,
+                    feedId integer,
+                    guid varchar,
+                    guidislink varchar default 'true',
+                    description varchar,
+                    content varchar,
+                    title varchar,
+                    published varchar,
+                    modified varchar,
+                    received varchar,
+                    author_name varchar,
+                    author_uri varchar,
+                    author_email varchar,
+                    category varchar,
+                    label varchar,
+                    new integer default 1,
+                    read integer default 0,
+                    starred integer default 0,
+                    deleted integer default 0,
+                    attachment varchar,
+                    comments varchar,
+                    enclosure_length,
+                    enclosure_type,
+                    enclosure_url,
+                    base varchar,
+                    lang varchar,
+                    status integer default 0,
+                    link_href varchar,
+                    link_alternate varchar,
+                    deleteDate varchar
+                    );
+CREATE INDEX feedId ON news(feedId);
+CREATE INDEX feedId_deleted ON news(feedId, deleted);
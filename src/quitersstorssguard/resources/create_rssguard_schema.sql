@@ -0,0 +1,100 @@
+CREATE TABLE Information (
+                    inf_key TEXT NOT NULL UNIQUE CHECK (inf_key != ''),
+                    inf_value TEXT
+                    );
+INSERT INTO Information VALUES ('schema_version', '10');
+CREATE TABLE Accounts (
+                    id INTEGER PRIMARY KEY,
+                    ordr INTEGER NOT NULL CHECK (ordr >= 0),
+                    type TEXT NOT NULL CHECK (type != ''),
+                    proxy_type INTEGER NOT NULL DEFAULT 0 CHECK (proxy_type >= 0),
+                    proxy_host TEXT,
+                    proxy_port INTEGER,
+                    proxy_username TEXT,
+                    proxy_password TEXT,
+                    custom_data TEXT
+                    );
+INSERT INTO Accounts (id, ordr, type) VALUES (1, 0, 'std-rss');
+CREATE TABLE Categories (
+                    id INTEGER PRIMARY KEY,
+                    parent_id INTEGER NOT NULL CHECK (parent_id >= -1),
+                    ordr INTEGER NOT NULL CHECK (ordr >= 0),
+                    title VARCHAR(100) NOT NULL,
+                    description TEXT,
+                    date_created BIGINT,
+                    icon BLOB,
+                    account_id INTEGER NOT NULL,
+                    custom_id TEXT,
+                    FOREIGN KEY (account_id) REFERENCES Accounts (id) ON DELETE CASCADE
+                    );
+CREATE TABLE Feeds (
+                    id INTEGER PRIMARY KEY,
+                    ordr INTEGER NOT NULL CHECK (ordr >= 0),
+                    title TEXT NOT NULL,
+                    description TEXT,
+                    date_created BIGINT,
+                    icon BLOB,
+                    category INTEGER NOT NULL CHECK (category >= -1),
+                    source TEXT,
+                    update_type INTEGER NOT NULL CHECK (update_type >= 0),
+                    update_interval INTEGER NOT NULL DEFAULT 900 CHECK (update_interval >= 1),
+                    is_off INTEGER NOT NULL DEFAULT 0 CHECK (is_off >= 0 AND is_off <= 1),
+                    is_quiet INTEGER NOT NULL DEFAULT 0 CHECK (is_quiet >= 0 AND is_quiet <= 1),
+                    is_rtl INTEGER NOT NULL DEFAULT 0,
+                    add_any_datetime_articles INTEGER NOT NULL DEFAULT 0,
+                    datetime_to_avoid BIGINT NOT NULL DEFAULT 0 CHECK (datetime_to_avoid >= 0),
+                    keep_article_customize INTEGER NOT NULL DEFAULT 0,
+                    keep_article_count INTEGER NOT NULL DEFAULT 0,
+                    keep_unread_articles INTEGER NOT NULL DEFAULT 0,
+                    keep_starred_articles INTEGER NOT NULL DEFAULT 0,
+                    recycle_articles INTEGER NOT NULL DEFAULT 0,
+                    open_articles INTEGER NOT NULL DEFAULT 0,
+                    account_id INTEGER NOT NULL,
+                    custom_id TEXT NOT NULL CHECK (custom_id != ''),
+                    custom_data TEXT,
+                    FOREIGN KEY (account_id) REFERENCES Accounts (id) ON DELETE CASCADE
+                    );
+CREATE TABLE Messages (
+                    id INTEGER PRIMARY KEY,
+                    is_read INTEGER NOT NULL DEFAULT 0 CHECK (is_read >= 0 AND is_read <= 1),
+                    is_important INTEGER NOT NULL DEFAULT 0 CHECK (is_important >= 0 AND is_important <= 1),
+                    is_deleted INTEGER NOT NULL DEFAULT 0 CHECK (is_deleted >= 0 AND is_deleted <= 1),
+                    is_pdeleted INTEGER NOT NULL DEFAULT 0 CHECK (is_pdeleted >= 0 AND is_pdeleted <= 1),
+                    feed TEXT NOT NULL,
+                    title TEXT NOT NULL,
+                    url TEXT,
+                    author TEXT,
+                    date_created BIGINT NOT NULL CHECK (date_created >= 0),
+                    contents TEXT,
+                    enclosures TEXT,
+                    score REAL NOT NULL DEFAULT 0 CHECK (score >= 0.0 AND score <= 100.0),
+                    account_id INTEGER NOT NULL,
+                    custom_id TEXT,
+                    custom_hash TEXT,
+                    labels TEXT NOT NULL DEFAULT '.',
+                    FOREIGN KEY (account_id) REFERENCES Accounts (id) ON DELETE CASCADE
+                    );
+CREATE TABLE MessageFilters (
+                    id INTEGER PRIMARY KEY,
+                    name TEXT NOT NULL CHECK (name != ''),
+                    script TEXT NOT NULL CHECK (script != ''),
+                    is_enabled INTEGER NOT NULL DEFAULT 1 CHECK (is_enabled >= 0 AND is_enabled <= 1),
+                    ordr INTEGER NOT NULL DEFAULT 0
+                    );
+CREATE TABLE MessageFiltersInFeeds (
+                    filter INTEGER NOT NULL,
+                    feed_custom_id TEXT NOT NULL,
+                    account_id INTEGER NOT NULL,
+                    FOREIGN KEY (filter) REFERENCES MessageFilters (id) ON DELETE CASCADE,
+                    FOREIGN KEY (account_id) REFERENCES Accounts (id) ON DELETE CASCADE
+                    );
+CREATE TABLE Labels (
+                    id INTEGER PRIMARY KEY,
+                    name TEXT NOT NULL CHECK (name != ''),
+                    color VARCHAR(7),
+                    custom_id TEXT,
+                    account_id INTEGER NOT NULL,
+                    FOREIGN KEY (account_id) REFERENCES Accounts (id) ON DELETE CASCADE
+                    );
+CREATE INDEX idx_Messages_feed ON Messages (account_id, feed);
+CREATE INDEX idx_Messages_state ON Messages (account_id, is_deleted, is_pdeleted, is_read);
@@ -0,0 +1,11 @@
+WITH RECURSIVE news_feeds(id) AS (
+    SELECT MIN(feedId) FROM news
+    UNION ALL
+    SELECT (SELECT MIN(feedId) FROM news WHERE feedId > news_feeds.id)
+    FROM news_feeds
+    WHERE news_feeds.id IS NOT NULL
+)
+SELECT id FROM feeds
+UNION
+SELECT id FROM news_feeds WHERE id IS NOT NULL
+ORDER BY 1;
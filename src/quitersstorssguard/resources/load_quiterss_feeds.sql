@@ -10,4 +10,5 @@ SELECT rowToParent,
        layoutDirection,
        addSingleNewsAnyDateOn,
        avoidedOldSingleNewsDate
-FROM feeds;
+FROM feeds
+WHERE id > ?;
@@ -10,4 +10,8 @@ SELECT author_name,
        title,
        link_href
 FROM news
-WHERE deleted = 0;
+WHERE deleted = 0
+  AND id >= ?
+  AND id < ?
+ORDER BY id
+LIMIT ?;
@@ -0,0 +1,9 @@
+SELECT feedId,
+       COUNT(*),
+       SUM(id),
+       SUM(CASE WHEN read != 0 THEN id ELSE 0 END),
+       SUM(CASE WHEN starred != 0 THEN id ELSE 0 END)
+FROM news
+WHERE deleted = 0
+  AND id <= ?
+GROUP BY feedId;
@@ -0,0 +1,8 @@
+SELECT id,
+       read,
+       starred
+FROM news
+WHERE feedId = ?
+  AND deleted = 0
+  AND id <= ?
+ORDER BY id;
@@ -0,0 +1,28 @@
+SELECT CAST(feed AS INTEGER) AS feedId,
+       COUNT(*),
+       SUM(news_id),
+       SUM(CASE WHEN is_read != 0 THEN news_id ELSE 0 END),
+       SUM(CASE WHEN is_important != 0 THEN news_id ELSE 0 END)
+FROM (
+       SELECT id AS news_id,
+              feed,
+              is_read,
+              is_important,
+              is_deleted,
+              is_pdeleted
+       FROM Messages
+       WHERE id <= ?
+         AND id NOT IN (SELECT message_id FROM QuiteRssMigrationNews)
+       UNION ALL
+       SELECT n.news_id,
+              m.feed,
+              m.is_read,
+              m.is_important,
+              m.is_deleted,
+              m.is_pdeleted
+       FROM QuiteRssMigrationNews n
+       JOIN Messages m ON m.id = n.message_id
+     )
+WHERE is_deleted = 0
+  AND is_pdeleted = 0
+GROUP BY feedId;
@@ -0,0 +1,31 @@
+SELECT news_id,
+       message_id,
+       is_read,
+       is_important,
+       is_deleted,
+       is_pdeleted
+FROM (
+       SELECT id AS news_id,
+              id AS message_id,
+              is_read,
+              is_important,
+              is_deleted,
+              is_pdeleted
+       FROM Messages
+       WHERE account_id = 1
+         AND feed = ?1
+         AND id <= ?2
+         AND id NOT IN (SELECT message_id FROM QuiteRssMigrationNews)
+       UNION ALL
+       SELECT n.news_id,
+              m.id,
+              m.is_read,
+              m.is_important,
+              m.is_deleted,
+              m.is_pdeleted
+       FROM QuiteRssMigrationNews n
+       JOIN Messages m ON m.id = n.message_id
+       WHERE m.account_id = 1
+         AND m.feed = ?1
+     )
+ORDER BY news_id;
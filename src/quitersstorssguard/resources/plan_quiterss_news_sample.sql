@@ -0,0 +1,12 @@
+SELECT length(CAST(ifnull(description, '') AS BLOB)),
+       length(CAST(ifnull(author_name, '') AS BLOB))
+           + length(CAST(ifnull(description, '') AS BLOB))
+           + length(CAST(ifnull(guid, '') AS BLOB))
+           + length(CAST(ifnull(received, '') AS BLOB))
+           + length(CAST(ifnull(title, '') AS BLOB))
+           + length(CAST(ifnull(link_href, '') AS BLOB))
+FROM news
+WHERE deleted = 0
+  AND id >= ?
+ORDER BY id
+LIMIT 1;
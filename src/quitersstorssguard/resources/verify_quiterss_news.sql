@@ -0,0 +1,15 @@
+SELECT author_name,
+       description,
+       guid,
+       received,
+       feedId,
+       id,
+       deleted,
+       starred,
+       read,
+       title,
+       link_href
+FROM news
+WHERE feedId = ?
+  AND deleted = 0
+ORDER BY id;
@@ -0,0 +1,14 @@
+SELECT id,
+       author,
+       contents,
+       custom_id,
+       date_created,
+       is_deleted,
+       is_important,
+       is_read,
+       title,
+       url
+FROM Messages
+WHERE account_id = 1
+  AND feed = ?
+ORDER BY id;
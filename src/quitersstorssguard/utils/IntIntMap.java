@@ -0,0 +1,173 @@
+package quitersstorssguard.utils;
+
+import java.util.Arrays;
+
+
+/**
+ * Map from {@code int} to {@code int}, such as the ids of one QuiteRSS database to those given to them in RSSGuard.
+ * <p>
+ * Open addressing with linear probing over two parallel arrays of keys and values: no boxing and no entry objects, 8
+ * to 16 bytes per entry depending on the fill. The tables double when three quarters full. Key {@code 0} marks a free
+ * slot and is kept apart. Not thread-safe while written; once filled it can be read from any number of threads.
+ */
+public class IntIntMap {
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************* Constants ********************************************************************
+	// **************************************************************************************************************************************************
+	private static final int FREE_KEY = 0;
+	private static final int MIN_CAPACITY = 16;
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private int[] keys;
+	private int[] values;
+	private int mask;
+	private int shift; // 32 - log2(slots), keeps the high bits of the product
+	private int size; // Entries in the tables, key 0 not included
+
+	private boolean hasFreeKey;
+	private int freeKeyValue;
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @param expectedSize Number of entries expected, the tables are sized so they fit without growing.
+	 */
+	public IntIntMap(int expectedSize) {
+		allocate(slotsFor(expectedSize));
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * Maps {@code key} to {@code value}, replacing the previous value if any.
+	 */
+	public void put(int key, int value) {
+		if (key == FREE_KEY) {
+			hasFreeKey = true;
+			freeKeyValue = value;
+			return;
+		}
+
+		if (insert(key, value) && ++size > keys.length / 4 * 3)
+			resize(keys.length * 2);
+	}
+
+
+	/**
+	 * @return Value of {@code key}, or {@code defaultValue} when it is not in the map.
+	 */
+	public int get(int key, int defaultValue) {
+		if (key == FREE_KEY)
+			return hasFreeKey ? freeKeyValue : defaultValue;
+
+		for (int slot = slot(key);; slot = (slot + 1) & mask) {
+			if (keys[slot] == key)
+				return values[slot];
+			if (keys[slot] == FREE_KEY)
+				return defaultValue;
+		}
+	}
+
+
+	public boolean containsKey(int key) {
+		if (key == FREE_KEY)
+			return hasFreeKey;
+
+		for (int slot = slot(key);; slot = (slot + 1) & mask) {
+			if (keys[slot] == key)
+				return true;
+			if (keys[slot] == FREE_KEY)
+				return false;
+		}
+	}
+
+
+	public int size() {
+		return size + (hasFreeKey ? 1 : 0);
+	}
+
+
+	/**
+	 * @return Every key of the map, in ascending order.
+	 */
+	public int[] keys() {
+		int[] result = new int[size()];
+		int count = 0;
+
+		if (hasFreeKey)
+			result[count++] = FREE_KEY;
+		for (int key : keys)
+			if (key != FREE_KEY)
+				result[count++] = key;
+
+		Arrays.sort(result);
+		return result;
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Helpers *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @return {@code true} when {@code key} was not in the tables yet.
+	 */
+	private boolean insert(int key, int value) {
+		for (int slot = slot(key);; slot = (slot + 1) & mask) {
+			if (keys[slot] == key) {
+				values[slot] = value;
+				return false;
+			}
+
+			if (keys[slot] == FREE_KEY) {
+				keys[slot] = key;
+				values[slot] = value;
+				return true;
+			}
+		}
+	}
+
+
+	// Ids are mostly consecutive: Fibonacci hashing spreads them over the whole table
+	private int slot(int key) {
+		return (key * 0x9E3779B9) >>> shift;
+	}
+
+
+	private void resize(int slots) {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(slots);
+
+		for (int i = 0; i < oldKeys.length; i++)
+			if (oldKeys[i] != FREE_KEY)
+				insert(oldKeys[i], oldValues[i]);
+	}
+
+
+	// Smallest power of two keeping expectedSize entries under three quarters of the slots
+	private static int slotsFor(int expectedSize) {
+		return Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, expectedSize / 3 * 4)) << 1);
+	}
+
+
+	private void allocate(int slots) {
+		keys = new int[slots];
+		values = new int[slots];
+		mask = slots - 1;
+		shift = Integer.numberOfLeadingZeros(slots) + 1;
+	}
+
+
+}
@@ -0,0 +1,117 @@
+package quitersstorssguard.utils;
+
+/**
+ * Fixed-bucket histogram of durations, with the bucket bounds of a Prometheus histogram so it can be exported as is.
+ * <p>
+ * Samples are recorded once per batch (or once per operation), not per row, so a monitor is cheap enough even when
+ * several reader threads share one histogram.
+ */
+public final class LatencyHistogram {
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************* Constants ********************************************************************
+	// **************************************************************************************************************************************************
+	/** Upper bounds of the buckets in seconds, the last bucket ({@code +Inf}) being implicit. */
+	public static final double[] BUCKET_BOUNDS = { 0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60,
+			300 };
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private final long[] bucketCounts = new long[BUCKET_BOUNDS.length + 1];
+	private long count;
+	private long sumNanos;
+	private long minNanos = Long.MAX_VALUE;
+	private long maxNanos;
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	public LatencyHistogram() {
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	public synchronized void record(long nanos) {
+		if (nanos < 0)
+			return;
+
+		double seconds = nanos / 1e9;
+		int bucket = 0;
+		while (bucket < BUCKET_BOUNDS.length && seconds > BUCKET_BOUNDS[bucket])
+			bucket++;
+
+		bucketCounts[bucket]++;
+		count++;
+		sumNanos += nanos;
+		minNanos = Math.min(minNanos, nanos);
+		maxNanos = Math.max(maxNanos, nanos);
+	}
+
+
+	public synchronized long getCount() {
+		return count;
+	}
+
+
+	public synchronized long getSumNanos() {
+		return sumNanos;
+	}
+
+
+	public synchronized long getMinNanos() {
+		return count == 0 ? 0 : minNanos;
+	}
+
+
+	public synchronized long getMaxNanos() {
+		return maxNanos;
+	}
+
+
+	/**
+	 * @return Number of samples in each bucket (not cumulative), the last one being {@code +Inf}.
+	 */
+	public synchronized long[] getBucketCounts() {
+		return bucketCounts.clone();
+	}
+
+
+	/**
+	 * Estimates a quantile by linear interpolation inside the bucket holding it, clamped to the observed minimum and
+	 * maximum.
+	 *
+	 * @param quantile Between 0 and 1.
+	 * @return Estimated duration in nanoseconds, 0 without samples.
+	 */
+	public synchronized long quantileNanos(double quantile) {
+		if (count == 0)
+			return 0;
+
+		double rank = quantile * count;
+		long seen = 0;
+
+		for (int bucket = 0; bucket < bucketCounts.length; bucket++) {
+			if (bucketCounts[bucket] == 0 || seen + bucketCounts[bucket] < rank) {
+				seen += bucketCounts[bucket];
+				continue;
+			}
+
+			double lower = bucket == 0 ? 0 : BUCKET_BOUNDS[bucket - 1] * 1e9;
+			double upper = bucket < BUCKET_BOUNDS.length ? BUCKET_BOUNDS[bucket] * 1e9 : maxNanos;
+			double estimate = lower + (upper - lower) * (rank - seen) / bucketCounts[bucket];
+			return Math.max(minNanos, Math.min(maxNanos, (long) estimate));
+		}
+
+		return maxNanos;
+	}
+
+
+}
@@ -5,7 +5,13 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
@@ -24,6 +30,12 @@ public class Miscellaneous {
 	// ****************************************************************** Declarations ******************************************************************
 	// **************************************************************************************************************************************************
 	final static int BUFFER_SIZE = 8192;
+	final static long NOT_PARSED = Long.MIN_VALUE;
+	public final static long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+	final static long FNV_PRIME = 0x100000001B3L;
+	final static long WORD_PRIME_1 = 0x9E3779B97F4A7C15L;
+	final static long WORD_PRIME_2 = 0xBF58476D1CE4E5B9L;
+	final static VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
 
 
 
@@ -50,7 +62,100 @@ public class Miscellaneous {
 	}
 
 
+	/**
+	 * Splits a script made of {@code ;}-terminated statements (statements must not contain a {@code ;} themselves).
+	 */
+	public static List<String> splitSqlStatements(String script) {
+		final List<String> statements = new ArrayList<>();
+
+		for (String statement : script.split(";\\s*(\\R|$)")) {
+			if (!statement.isBlank())
+				statements.add(statement.strip());
+		}
+
+		return statements;
+	}
+
+
+	/**
+	 * @return The value without leading and trailing white space, or an empty string for {@code null}.
+	 */
+	public static String stripToEmpty(String input) {
+		return input == null ? "" : input.strip();
+	}
+
+
+	/**
+	 * Adds {@code value} to a 64-bit FNV-1a hash, to be started from {@link #FNV_OFFSET_BASIS} and finished with
+	 * {@link #mix64(long)}. Fast enough for hundreds of megabytes of article text, but not a cryptographic hash.
+	 */
+	public static long fnv1a64(long hash, CharSequence value) {
+		for (int i = 0; i < value.length(); i++)
+			hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+
+		return hash;
+	}
+
+
+	public static long fnv1a64(long hash, long value) {
+		return (hash ^ value) * FNV_PRIME;
+	}
+
+
+	/**
+	 * 64-bit hash of {@code bytes}, taken eight bytes at a time: several times faster than {@link #fnv1a64(long, CharSequence)}
+	 * on long values such as article contents. Not a cryptographic hash, {@code null} hashes like an empty array.
+	 */
+	public static long hash64(byte[] bytes) {
+		if (bytes == null)
+			bytes = new byte[0];
+
+		long hash = FNV_OFFSET_BASIS ^ bytes.length * WORD_PRIME_1;
+		int i = 0;
+		for (; i + Long.BYTES <= bytes.length; i += Long.BYTES)
+			hash = Long.rotateLeft(hash ^ (long) LONGS.get(bytes, i) * WORD_PRIME_1, 29) * WORD_PRIME_2;
+
+		if (i < bytes.length) {
+			long tail = 0;
+			for (int shift = 0; i < bytes.length; i++, shift += 8)
+				tail |= (bytes[i] & 0xFFL) << shift;
+			hash = Long.rotateLeft(hash ^ tail * WORD_PRIME_1, 29) * WORD_PRIME_2;
+		}
+
+		return mix64(hash);
+	}
+
+
+	/**
+	 * Final mixing step of MurmurHash3: spreads every input bit over the whole value, which FNV-1a leaves poorly mixed in
+	 * its low bits.
+	 */
+	public static long mix64(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		return hash ^ hash >>> 33;
+	}
+
+
+	/**
+	 * Converts a QuiteRSS date (e.g. {@code received}, {@code created}) into milliseconds since the epoch, UTC.
+	 * <p>
+	 * The formats QuiteRSS writes ({@code yyyy-MM-ddTHH:mm:ss}, with an optional fraction and an optional trailing
+	 * {@code Z}) are parsed by hand without allocating. Anything else goes through {@code java.time}, with the same
+	 * results and exceptions as before.
+	 */
 	public static long convertToTimestamp(String dateTime) {
+		long timestamp = parseIsoTimestamp(dateTime);
+		if (timestamp != NOT_PARSED)
+			return timestamp;
+
+		return convertToTimestampWithJavaTime(dateTime);
+	}
+
+
+	static long convertToTimestampWithJavaTime(String dateTime) {
 		ZoneOffset zoneOffset = ZoneOffset.UTC; // Convert to UTC-based timestamps
 
 		if (dateTime.endsWith("Z")) { // Handle ISO-8601 format with 'Z' (UTC)
@@ -62,6 +167,140 @@ public class Miscellaneous {
 	}
 
 
+	/**
+	 * Allocation-free parser for {@code yyyy-MM-ddTHH:mm:ss[.fraction][Z]}, read as UTC.
+	 *
+	 * @return Milliseconds since the epoch, or {@link #NOT_PARSED} when the value is not in that exact shape or is out
+	 *         of range, so the caller can fall back to {@code java.time} (lower case 't', leap seconds, offsets...).
+	 */
+	private static long parseIsoTimestamp(String dateTime) {
+		if (dateTime == null)
+			return NOT_PARSED;
+
+		int end = dateTime.length();
+		if (end > 0 && dateTime.charAt(end - 1) == 'Z')
+			end--;
+
+		if (end < 19 || dateTime.charAt(4) != '-' || dateTime.charAt(7) != '-' || dateTime.charAt(10) != 'T'
+				|| dateTime.charAt(13) != ':' || dateTime.charAt(16) != ':')
+			return NOT_PARSED;
+
+		int year = parseDigits(dateTime, 0, 4);
+		int month = parseDigits(dateTime, 5, 2);
+		int day = parseDigits(dateTime, 8, 2);
+		int hour = parseDigits(dateTime, 11, 2);
+		int minute = parseDigits(dateTime, 14, 2);
+		int second = parseDigits(dateTime, 17, 2);
+
+		if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+				|| hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59)
+			return NOT_PARSED;
+
+		// Optional fraction of 1 to 9 digits, truncated to milliseconds like Instant.toEpochMilli()
+		int millis = 0;
+		if (end > 19) {
+			int digits = end - 20;
+			if (dateTime.charAt(19) != '.' || digits < 1 || digits > 9 || parseDigits(dateTime, 20, digits) < 0)
+				return NOT_PARSED;
+
+			millis = parseDigits(dateTime, 20, Math.min(3, digits));
+			for (int i = digits; i < 3; i++)
+				millis *= 10;
+		}
+
+		long epochSecond = epochDay(year, month, day) * 86400L + hour * 3600 + minute * 60 + second;
+		return epochSecond * 1000 + millis;
+	}
+
+
+	private static int parseDigits(String value, int start, int count) {
+		int result = 0;
+		for (int i = start; i < start + count; i++) {
+			int digit = value.charAt(i) - '0';
+			if (digit < 0 || digit > 9)
+				return -1;
+
+			result = result * 10 + digit;
+		}
+		return result;
+	}
+
+
+	private static int lengthOfMonth(int year, int month) {
+		return switch (month) {
+			case 2 -> (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+			case 4, 6, 9, 11 -> 30;
+			default -> 31;
+		};
+	}
+
+
+	// Days since 1970-01-01 in the proleptic Gregorian calendar (same as LocalDate.toEpochDay())
+	private static long epochDay(int year, int month, int day) {
+		long y = month <= 2 ? year - 1 : year;
+		long era = Math.floorDiv(y, 400);
+		long yearOfEra = y - era * 400;
+		long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+
+	/**
+	 * Returns the number of bytes allocated so far by the calling thread, as tracked by the JVM.
+	 *
+	 * @return Allocated bytes, or {@code -1} when the JVM does not support allocation accounting.
+	 */
+	public static long currentThreadAllocatedBytes() {
+		if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threadMXBean
+				&& threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled())
+			return threadMXBean.getCurrentThreadAllocatedBytes();
+
+		return -1;
+	}
+
+
+	/**
+	 * Returns the peak resident set size of this process (high-water mark), read from {@code /proc/self/status}.
+	 *
+	 * @return Peak RSS in bytes, or {@code -1} when not available (non-Linux systems).
+	 */
+	public static long peakResidentSetBytes() {
+		try {
+			for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+				if (line.startsWith("VmHWM:"))
+					return Long.parseLong(line.replaceAll("\\D", "")) * 1024; // Reported in kB
+			}
+		} catch (IOException | RuntimeException e) {
+			// Not available on this system
+		}
+		return -1;
+	}
+
+
+	/**
+	 * Formats a byte count with a binary unit (e.g., "512 B", "1.5 KB", "3.2 GB").
+	 *
+	 * @param bytes The byte count to format.
+	 * @return Formatted string.
+	 */
+	public static String bytesToHumanReadable(long bytes) {
+		if (bytes < 1024 && bytes > -1024)
+			return bytes + " B";
+
+		String units = "KMGTPE";
+		double value = bytes;
+		int unit = -1;
+
+		while ((value >= 1024 || value <= -1024) && unit < units.length() - 1) {
+			value /= 1024;
+			unit++;
+		}
+
+		return String.format("%.1f %sB", value, units.charAt(unit));
+	}
+
+
 	/**
 	 * Formats a Duration into a human-readable string (e.g., "2h 30m 15s 200ms").
 	 * Omits zero-value units unless they are the only component.
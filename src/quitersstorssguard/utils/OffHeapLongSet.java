@@ -0,0 +1,164 @@
+package quitersstorssguard.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+
+/**
+ * Set of {@code long} values stored in direct memory, outside of the Java heap, such as the hashes of tens of millions
+ * of article GUIDs.
+ * <p>
+ * Open addressing with linear probing over a power-of-two table of plain 8-byte slots, {@code 0} marking a free slot:
+ * no boxing and no entry objects, 8 to 16 bytes per value depending on the fill. The table doubles when three quarters
+ * full, and is split into segments of 16M slots so it can grow past the 2 GB limit of a single buffer. Values are
+ * expected to be well-mixed hashes, their low bits are used as the slot. Not thread-safe.
+ */
+public class OffHeapLongSet {
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************* Constants ********************************************************************
+	// **************************************************************************************************************************************************
+	private static final int SEGMENT_BITS = 24; // 16M slots, 128 MB per segment
+	private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+	private static final long ZERO_REPLACEMENT = 0x9E3779B97F4A7C15L; // Stored instead of 0, which marks free slots
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private LongBuffer[] segments;
+	private long capacity;
+	private long mask;
+	private long size;
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @param expectedSize Number of values expected, the table is sized so they fit without growing.
+	 */
+	public OffHeapLongSet(long expectedSize) {
+		allocate(slotsFor(expectedSize));
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @return {@code true} when {@code value} was not in the set yet.
+	 */
+	public boolean add(long value) {
+		if (value == 0)
+			value = ZERO_REPLACEMENT;
+
+		if (!insert(value))
+			return false;
+
+		if (++size > capacity / 4 * 3)
+			resize(capacity * 2);
+		return true;
+	}
+
+
+	public boolean contains(long value) {
+		if (value == 0)
+			value = ZERO_REPLACEMENT;
+
+		for (long slot = value & mask;; slot = (slot + 1) & mask) {
+			long current = get(slot);
+			if (current == value)
+				return true;
+			if (current == 0)
+				return false;
+		}
+	}
+
+
+	/**
+	 * Grows the table at once so that {@code expectedSize} values fit, instead of doubling it several times.
+	 */
+	public void ensureCapacity(long expectedSize) {
+		long slots = slotsFor(expectedSize);
+		if (slots > capacity)
+			resize(slots);
+	}
+
+
+	public long size() {
+		return size;
+	}
+
+
+	/**
+	 * @return Direct memory held by the table, in bytes.
+	 */
+	public long memoryBytes() {
+		return capacity * Long.BYTES;
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Helpers *********************************************************************
+	// **************************************************************************************************************************************************
+	private boolean insert(long value) {
+		for (long slot = value & mask;; slot = (slot + 1) & mask) {
+			long current = get(slot);
+			if (current == value)
+				return false;
+
+			if (current == 0) {
+				segments[(int) (slot >>> SEGMENT_BITS)].put((int) (slot & SEGMENT_MASK), value);
+				return true;
+			}
+		}
+	}
+
+
+	private long get(long slot) {
+		return segments[(int) (slot >>> SEGMENT_BITS)].get((int) (slot & SEGMENT_MASK));
+	}
+
+
+	/**
+	 * Moves every value into a table of {@code slots} slots. The old buffers are released by the garbage collector.
+	 */
+	private void resize(long slots) {
+		LongBuffer[] old = segments;
+		allocate(slots);
+
+		for (LongBuffer segment : old)
+			for (int i = 0; i < segment.capacity(); i++) {
+				long value = segment.get(i);
+				if (value != 0)
+					insert(value);
+			}
+	}
+
+
+	// Smallest power of two keeping expectedSize values under three quarters of the slots
+	private static long slotsFor(long expectedSize) {
+		return Math.max(1024, Long.highestOneBit(Math.max(1, expectedSize / 3 * 4)) << 1);
+	}
+
+
+	private void allocate(long slots) {
+		int segmentSlots = (int) Math.min(slots, 1L << SEGMENT_BITS);
+		LongBuffer[] table = new LongBuffer[(int) (slots / segmentSlots)];
+
+		for (int i = 0; i < table.length; i++)
+			table[i] = ByteBuffer.allocateDirect(segmentSlots * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer(); // Zero-filled
+
+		segments = table;
+		capacity = slots;
+		mask = slots - 1;
+	}
+
+
+}
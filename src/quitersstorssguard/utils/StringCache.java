@@ -0,0 +1,59 @@
+package quitersstorssguard.utils;
+
+
+/**
+ * Small direct-mapped cache returning one shared instance for repeated string values, such as the few hundred distinct
+ * {@code author_name} values spread over millions of QuiteRSS articles.
+ * <p>
+ * Each value hashes to exactly one slot; a miss simply replaces the slot, so lookups never allocate and the memory
+ * footprint is fixed. Not thread-safe, use one instance per reading thread.
+ */
+public class StringCache {
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Declarations ******************************************************************
+	// **************************************************************************************************************************************************
+	private final String[] slots;
+	private final int mask;
+
+
+
+	// **************************************************************************************************************************************************
+	// ****************************************************************** Constructors ******************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @param capacity Number of slots, rounded up to the next power of two.
+	 */
+	public StringCache(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		this.slots = new String[size];
+		this.mask = size - 1;
+	}
+
+
+
+	// **************************************************************************************************************************************************
+	// ******************************************************************** Methods *********************************************************************
+	// **************************************************************************************************************************************************
+	/**
+	 * @return The cached instance equal to {@code value} when there is one, otherwise {@code value} itself (which is
+	 *         cached for the next lookups). {@code null} is returned unchanged.
+	 */
+	public String dedup(String value) {
+		if (value == null)
+			return null;
+
+		int hash = value.hashCode();
+		int slot = (hash ^ (hash >>> 16)) & mask;
+
+		String cached = slots[slot];
+		if (cached != null && cached.equals(value))
+			return cached;
+
+		slots[slot] = value;
+		return value;
+	}
+
+
+}